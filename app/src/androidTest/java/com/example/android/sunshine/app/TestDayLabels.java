@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.test.AndroidTestCase;
+import android.text.format.DateUtils;
+
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+
+/*
+    Checks that the kept day labels read as they did when each was worked out on every call, and
+    that they are dropped when the locale or time zone changes.
+ */
+public class TestDayLabels extends AndroidTestCase {
+
+    private Locale mLocale;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mLocale = Locale.getDefault();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        Locale.setDefault(mLocale);
+        super.tearDown();
+    }
+
+    public void testLabels() {
+        // Twice, the second time from the kept labels, and well past the days that are kept
+        for (int round = 0; round < 2; round++) {
+            int today = Days.today();
+            for (int day = today - 40; day <= today + 40; day++) {
+                // Any time of the day has the label of the day
+                long date = Days.getStartOfDay(day) + 11 * DateUtils.HOUR_IN_MILLIS;
+                assertEquals(getFriendlyDayString(date, true),
+                        Utility.getFriendlyDayString(mContext, date, true));
+                assertEquals(getFriendlyDayString(date, false),
+                        Utility.getFriendlyDayString(mContext, date, false));
+                assertEquals(getFullFriendlyDayString(date),
+                        Utility.getFullFriendlyDayString(mContext, date));
+                assertEquals(getDayName(date), Utility.getDayName(mContext, date));
+            }
+        }
+    }
+
+    public void testLabelsAreKept() {
+        long date = Days.getStartOfDay(Days.today() + 3);
+        assertSame(Utility.getFriendlyDayString(mContext, date, false),
+                Utility.getFriendlyDayString(mContext, date, false));
+    }
+
+    public void testTimeZoneChangeDropsLabels() {
+        long date = Days.getStartOfDay(Days.today() + 3);
+        String label = Utility.getFriendlyDayString(mContext, date, false);
+        Days.onTimeZoneChanged();
+        String again = Utility.getFriendlyDayString(mContext, date, false);
+        assertNotSame(label, again);
+        assertEquals(label, again);
+    }
+
+    public void testLocaleChangeDropsLabels() {
+        Locale other = mLocale.getLanguage().equals("fr") ? Locale.GERMANY : Locale.FRANCE;
+        long date = Days.getStartOfDay(Days.today() + 10);
+        Utility.getFriendlyDayString(mContext, date, false);
+        Locale.setDefault(other);
+        assertEquals(new SimpleDateFormat("EEE MMM dd", other).format(date),
+                Utility.getFriendlyDayString(mContext, date, false));
+    }
+
+    // Utility.getFriendlyDayString before DayLabels
+    private String getFriendlyDayString(long dateInMillis, boolean displayLongToday) {
+        int julianDay = Days.getJulianDay(dateInMillis);
+        int currentJulianDay = Days.today();
+        if (displayLongToday && julianDay == currentJulianDay) {
+            return mContext.getString(R.string.format_full_friendly_date,
+                    mContext.getString(R.string.today), Days.formatMonthDay(dateInMillis));
+        } else if (julianDay < currentJulianDay + 7) {
+            return getDayName(dateInMillis);
+        } else {
+            return Days.formatShortDate(dateInMillis);
+        }
+    }
+
+    // Utility.getFullFriendlyDayString before DayLabels
+    private String getFullFriendlyDayString(long dateInMillis) {
+        return mContext.getString(R.string.format_full_friendly_date,
+                getDayName(dateInMillis), Days.formatMonthDay(dateInMillis));
+    }
+
+    // Utility.getDayName before DayLabels
+    private String getDayName(long dateInMillis) {
+        int julianDay = Days.getJulianDay(dateInMillis);
+        int currentJulianDay = Days.today();
+        if (julianDay == currentJulianDay) {
+            return mContext.getString(R.string.today);
+        } else if (julianDay == currentJulianDay + 1) {
+            return mContext.getString(R.string.tomorrow);
+        } else {
+            return Days.formatDayName(dateInMillis);
+        }
+    }
+}
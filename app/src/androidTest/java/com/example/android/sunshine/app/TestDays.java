@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.test.AndroidTestCase;
+import android.text.format.DateUtils;
+import android.text.format.Time;
+
+import java.text.SimpleDateFormat;
+import java.util.TimeZone;
+
+/*
+    Checks that Days works out the same days and dates that Time and SimpleDateFormat did, in the
+    device's time zone and after the time zone changes.
+ */
+public class TestDays extends AndroidTestCase {
+
+    // Two years from 2016, past two changes to and from daylight saving time in most zones
+    private static final long FIRST_DATE = 1451606400000L;
+    private static final long LAST_DATE = FIRST_DATE + 731 * DateUtils.DAY_IN_MILLIS;
+
+    // Far from the midnights and quarter hours the code cares about
+    private static final long STEP = 37 * DateUtils.MINUTE_IN_MILLIS;
+
+    private TimeZone mTimeZone;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mTimeZone = TimeZone.getDefault();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        TimeZone.setDefault(mTimeZone);
+        Days.onTimeZoneChanged();
+        super.tearDown();
+    }
+
+    public void testToday() {
+        // Unless the day changes between the two
+        int today = Days.today();
+        Time time = new Time();
+        time.setToNow();
+        int expected = Time.getJulianDay(System.currentTimeMillis(), time.gmtoff);
+        assertTrue("Error: Today is " + today + " rather than " + expected,
+                today == expected || today == expected - 1);
+    }
+
+    public void testDays() {
+        assertDays();
+    }
+
+    public void testTimeZoneChange() {
+        String other = mTimeZone.getID().equals("America/New_York") ?
+                "Asia/Kolkata" : "America/New_York";
+        TimeZone.setDefault(TimeZone.getTimeZone(other));
+        Days.onTimeZoneChanged();
+        assertDays();
+    }
+
+    public void testFormats() {
+        SimpleDateFormat dayName = new SimpleDateFormat("EEEE");
+        SimpleDateFormat monthDay = new SimpleDateFormat("MMMM dd");
+        SimpleDateFormat shortDate = new SimpleDateFormat("EEE MMM dd");
+        for (long date = FIRST_DATE; date <= LAST_DATE; date += 13 * STEP) {
+            assertEquals(dayName.format(date), Days.formatDayName(date));
+            assertEquals(monthDay.format(date), Days.formatMonthDay(date));
+            assertEquals(shortDate.format(date), Days.formatShortDate(date));
+        }
+    }
+
+    private void assertDays() {
+        TimeZone timeZone = TimeZone.getDefault();
+        for (long millis = FIRST_DATE; millis <= LAST_DATE; millis += STEP) {
+            assertEquals("Error: Wrong day for " + millis,
+                    Time.getJulianDay(millis, timeZone.getOffset(millis) / 1000),
+                    Days.getJulianDay(millis));
+            assertEquals("Error: Wrong start of the day for " + millis,
+                    normalizeDate(millis), Days.normalize(millis));
+        }
+        Time time = new Time();
+        int firstDay = Days.getJulianDay(FIRST_DATE);
+        for (int day = firstDay; day <= firstDay + 731; day++) {
+            assertEquals("Error: Wrong start of day " + day,
+                    time.setJulianDay(day), Days.getStartOfDay(day));
+        }
+    }
+
+    // WeatherContract.normalizeDate before Days
+    private static long normalizeDate(long startDate) {
+        Time time = new Time();
+        time.set(startDate);
+        int julianDay = Time.getJulianDay(startDate, time.gmtoff);
+        return time.setJulianDay(julianDay);
+    }
+}
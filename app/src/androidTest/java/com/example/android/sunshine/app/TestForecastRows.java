@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.database.MatrixCursor;
+import android.support.v7.widget.RecyclerView;
+import android.test.AndroidTestCase;
+import android.text.format.DateUtils;
+import android.view.ViewGroup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+
+/*
+    Tests that rows are formatted the way the list shows them, that applying a diff's events to
+    the old list of days gives the new one, and that only the days that changed are reported as
+    changed.
+ */
+public class TestForecastRows extends AndroidTestCase {
+
+    // Columns in the order of ForecastFragment.FORECAST_COLUMNS
+    private static final String[] COLUMNS = {"_id", "date", "short_desc", "max", "min",
+            "location_setting", "weather_id", "coord_lat", "coord_long"};
+
+    private static final long LOCATION_ID = 1;
+    private static final long OTHER_LOCATION_ID = 2;
+
+    public void testUnchanged() {
+        ForecastRows rows = rows(LOCATION_ID, 0, 14);
+        assertEquals("Error: Events for a list that didn't change", 0,
+                ForecastRows.diff(rows, rows(LOCATION_ID, 0, 14)).getEventCount());
+    }
+
+    public void testOneDayChanged() {
+        ForecastRows changed =
+                ForecastRows.read(mContext, changeHigh(cursor(LOCATION_ID, 0, 14), 5));
+        assertApplies(rows(LOCATION_ID, 0, 14), changed, 5);
+    }
+
+    public void testNextDay() {
+        // Yesterday is dropped and a new day is added at the end
+        ForecastRows.Diff diff = assertApplies(rows(LOCATION_ID, 0, 14), rows(LOCATION_ID, 1, 14));
+        assertEquals(2, diff.getEventCount());
+    }
+
+    public void testFromAndToEmpty() {
+        assertApplies(null, rows(LOCATION_ID, 0, 14));
+        assertApplies(rows(LOCATION_ID, 0, 14), rows(LOCATION_ID, 0, 0));
+    }
+
+    public void testLocationChanged() {
+        // The same days, but every item id is different
+        assertApplies(rows(LOCATION_ID, 0, 14), rows(OTHER_LOCATION_ID, 0, 14));
+    }
+
+    public void testUnorderedRowsAreNotCompared() {
+        MatrixCursor cursor = new MatrixCursor(COLUMNS);
+        cursor.addRow(row(LOCATION_ID, 1));
+        cursor.addRow(row(LOCATION_ID, 0));
+        assertNull(ForecastRows.diff(rows(LOCATION_ID, 0, 14),
+                ForecastRows.read(mContext, cursor)));
+    }
+
+    public void testRowsAreFormatted() {
+        ForecastRows rows = rows(LOCATION_ID, 0, 2);
+        ForecastRows.Row first = rows.get(0);
+        assertEquals(Utility.getFriendlyDayString(mContext, first.mDate, true), first.mLongDayLabel);
+        assertEquals(Utility.getFriendlyDayString(mContext, first.mDate, false), first.mDayLabel);
+        assertEquals(Utility.formatTemperature(mContext, 75.0), first.mHigh);
+        assertEquals(mContext.getString(R.string.a11y_low_temp,
+                Utility.formatTemperature(mContext, 65.0)), first.mLowA11y);
+        assertEquals(Utility.getStringForWeatherCondition(mContext, 800), first.mDescription);
+        assertEquals(Utility.getIconResourceForWeatherCondition(800), first.mIconResource);
+        assertNull("Error: Only the first row needs the \"today\" label", rows.get(1).mLongDayLabel);
+    }
+
+    /*
+        Applies the diff's events to the ids of the old rows and checks that it gives the ids of
+        the new ones, and that exactly the expected positions were changed.
+     */
+    private static ForecastRows.Diff assertApplies(ForecastRows base, ForecastRows rows,
+                                                   Integer... changedPositions) {
+        final ArrayList<Long> ids = new ArrayList<Long>();
+        for (int i = 0; base != null && i < base.getCount(); i++) {
+            ids.add(base.get(i).mId);
+        }
+        final HashSet<Long> changed = new HashSet<Long>();
+
+        RecyclerView.Adapter adapter = new EmptyAdapter();
+        adapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
+            @Override
+            public void onItemRangeRemoved(int positionStart, int itemCount) {
+                ids.subList(positionStart, positionStart + itemCount).clear();
+            }
+
+            @Override
+            public void onItemRangeInserted(int positionStart, int itemCount) {
+                // The new ids are filled in below
+                ids.addAll(positionStart, Arrays.asList(new Long[itemCount]));
+            }
+
+            @Override
+            public void onItemRangeChanged(int positionStart, int itemCount) {
+                for (int i = positionStart; i < positionStart + itemCount; i++) {
+                    changed.add(ids.get(i));
+                }
+            }
+        });
+        ForecastRows.Diff diff = ForecastRows.diff(base, rows);
+        diff.dispatchTo(adapter);
+
+        assertEquals("Error: Wrong number of items after the events", rows.getCount(), ids.size());
+        for (int i = 0; i < rows.getCount(); i++) {
+            // A kept item must still be at the position of its day
+            if (ids.get(i) != null) {
+                assertEquals("Error: Wrong item at position " + i, rows.get(i).mId, (long) ids.get(i));
+            }
+        }
+        HashSet<Long> expected = new HashSet<Long>();
+        for (int position : changedPositions) {
+            expected.add(rows.get(position).mId);
+        }
+        assertEquals("Error: Wrong items changed", expected, changed);
+        return diff;
+    }
+
+    private ForecastRows rows(long locationId, int firstDay, int days) {
+        return ForecastRows.read(mContext, cursor(locationId, firstDay, days));
+    }
+
+    private static MatrixCursor cursor(long locationId, int firstDay, int days) {
+        MatrixCursor cursor = new MatrixCursor(COLUMNS);
+        for (int day = firstDay; day < firstDay + days; day++) {
+            cursor.addRow(row(locationId, day));
+        }
+        return cursor;
+    }
+
+    private static Object[] row(long locationId, int day) {
+        return new Object[]{locationId * 100000 + day, day * DateUtils.DAY_IN_MILLIS, "Clear",
+                75.0 + day, 65.0, "99705", 800, 64.7488, -147.353};
+    }
+
+    // A copy of the cursor with the high of one row raised
+    private static MatrixCursor changeHigh(MatrixCursor cursor, int position) {
+        MatrixCursor changed = new MatrixCursor(COLUMNS);
+        for (int i = 0; cursor.moveToPosition(i); i++) {
+            Object[] row = new Object[COLUMNS.length];
+            for (int column = 0; column < COLUMNS.length; column++) {
+                row[column] = cursor.getString(column);
+            }
+            if (i == position) {
+                row[ForecastFragment.COL_WEATHER_MAX_TEMP] = cursor.getDouble(
+                        ForecastFragment.COL_WEATHER_MAX_TEMP) + 10;
+            }
+            changed.addRow(row);
+        }
+        return changed;
+    }
+
+    private static class EmptyAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
+        @Override
+        public RecyclerView.ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void onBindViewHolder(RecyclerView.ViewHolder holder, int position) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int getItemCount() {
+            return 0;
+        }
+    }
+}
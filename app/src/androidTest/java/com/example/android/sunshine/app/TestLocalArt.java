@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.graphics.Bitmap;
+import android.test.AndroidTestCase;
+
+/*
+    Checks that the local art is decoded to the size asked for, and decoded once for each size.
+    Bitmaps for widgets, notifications and the watch are copies the cache can't decode into.
+ */
+public class TestLocalArt extends AndroidTestCase {
+
+    private LocalArt mArt;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mArt = LocalArt.get(mContext);
+    }
+
+    public void testDecodedToSize() {
+        for (int size = 1; size <= 300; size += 7) {
+            Bitmap art = mArt.getBitmap(R.drawable.art_storm, size, size);
+            assertNotNull(art);
+            // The art is square
+            assertTrue("Error: " + art.getWidth() + " wide rather than " + size,
+                    Math.abs(art.getWidth() - size) <= 1);
+            assertTrue("Error: " + art.getHeight() + " high rather than " + size,
+                    Math.abs(art.getHeight() - size) <= 1);
+            assertEquals(mContext.getResources().getDisplayMetrics().densityDpi,
+                    art.getDensity());
+        }
+    }
+
+    public void testFittedInside() {
+        Bitmap art = mArt.getBitmap(R.drawable.art_rain, 64, 20);
+        assertTrue(Math.abs(art.getWidth() - 20) <= 1);
+        assertTrue(Math.abs(art.getHeight() - 20) <= 1);
+    }
+
+    public void testDecodedOnce() {
+        Bitmap art = mArt.getBitmap(R.drawable.art_clear, 48, 48);
+        int decodes = mArt.getDecodeCount();
+        int hits = mArt.getHitCount();
+        Bitmap again = mArt.getBitmap(R.drawable.art_clear, 48, 48);
+        assertTrue("Error: The same resource and size gave another image", art.sameAs(again));
+        assertEquals(decodes, mArt.getDecodeCount());
+        assertEquals(hits + 1, mArt.getHitCount());
+        assertFalse(art.sameAs(mArt.getBitmap(R.drawable.art_clear, 96, 96)));
+    }
+
+    // The cached image may be decoded into once it leaves the cache, so it is never handed out
+    public void testBitmapIsACopy() {
+        Bitmap art = mArt.getBitmap(R.drawable.art_clear, 48, 48);
+        Bitmap again = mArt.getBitmap(R.drawable.art_clear, 48, 48);
+        assertNotSame(art, again);
+        assertFalse("Error: Handed out the mutable cached image", art.isMutable());
+    }
+
+    public void testNotABitmap() {
+        assertNull(mArt.getBitmap(R.drawable.touch_selector, 48, 48));
+    }
+}
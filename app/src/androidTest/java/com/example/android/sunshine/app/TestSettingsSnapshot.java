@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+/*
+    Tests that the settings snapshot is read once, and replaced when a setting changes.
+ */
+public class TestSettingsSnapshot extends AndroidTestCase {
+
+    private SharedPreferences mPrefs;
+    private String mUnitsKey;
+    private String mUnits;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        mUnitsKey = mContext.getString(R.string.pref_units_key);
+        mUnits = mPrefs.getString(mUnitsKey, null);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mPrefs.edit().putString(mUnitsKey, mUnits).commit();
+        super.tearDown();
+    }
+
+    public void testSnapshotIsShared() {
+        assertSame("Error: Settings read again without a change",
+                SettingsSnapshot.get(mContext), SettingsSnapshot.get(mContext));
+    }
+
+    public void testSnapshotFollowsChanges() {
+        final boolean metric = SettingsSnapshot.get(mContext).isMetric();
+        mPrefs.edit().putString(mUnitsKey, mContext.getString(metric ?
+                R.string.pref_units_imperial : R.string.pref_units_metric)).commit();
+
+        // The listener is called on the main thread
+        new PollingCheck() {
+            @Override
+            protected boolean check() {
+                return SettingsSnapshot.get(mContext).isMetric() != metric;
+            }
+        }.run();
+        assertEquals(!metric, Utility.isMetric(mContext));
+    }
+}
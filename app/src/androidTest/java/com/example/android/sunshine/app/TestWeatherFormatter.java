@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+/*
+    Checks that WeatherFormatter prints exactly what String.format printed with the same
+    resources, and compares the two for speed.  The timings go to the log:
+
+        adb logcat -s TestWeatherFormatter
+ */
+public class TestWeatherFormatter extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestWeatherFormatter.class.getSimpleName();
+
+    private static final int ROUNDS = 20000;
+
+    // Halves, values just either side of them, both zeros and what String.format is left with
+    private static final double[] EDGE_CASES = {0.0, -0.0, 0.5, -0.5, 2.5, -2.5,
+            0.49999999999999994, -0.49999999999999994, 99.5, 1e15, -1e20, Double.NaN,
+            Double.POSITIVE_INFINITY};
+
+    private WeatherFormatter mFormatter;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mFormatter = WeatherFormatter.get(mContext);
+    }
+
+    public void testTemperatures() {
+        for (int tenths = -800; tenths <= 800; tenths++) {
+            assertTemperature(tenths / 10.0);
+            assertTemperature(tenths / 10.0 + 0.05);
+        }
+        for (double temperature : EDGE_CASES) {
+            assertTemperature(temperature);
+        }
+    }
+
+    public void testCachedTemperaturesAreShared() {
+        assertSame(mFormatter.formatTemperature(21.2, true),
+                mFormatter.formatTemperature(20.9, true));
+    }
+
+    public void testWind() {
+        for (int speed = 0; speed <= 600; speed++) {
+            for (int degrees = -45; degrees <= 405; degrees += 5) {
+                assertWind(speed / 4f, degrees + 0.5f);
+            }
+        }
+        assertWind(3f, Float.NaN);
+    }
+
+    public void testHumidityAndPressure() {
+        StringBuilder builder = new StringBuilder();
+        for (int tenths = 0; tenths <= 12000; tenths += 3) {
+            float value = tenths / 10f;
+            builder.setLength(0);
+            assertEquals(mContext.getString(R.string.format_humidity, value),
+                    mFormatter.appendHumidity(builder, value).toString());
+            builder.setLength(0);
+            assertEquals(mContext.getString(R.string.format_pressure, value),
+                    mFormatter.appendPressure(builder, value).toString());
+        }
+    }
+
+    public void testBenchmark() {
+        StringBuilder builder = new StringBuilder();
+        // Warm both up first
+        run(builder, ROUNDS / 10, false);
+        run(builder, ROUNDS / 10, true);
+
+        long start = System.nanoTime();
+        run(builder, ROUNDS, false);
+        long utilityNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        run(builder, ROUNDS, true);
+        long formatterNanos = System.nanoTime() - start;
+
+        Log.i(LOG_TAG, String.format("%d rounds of a temperature, wind, humidity and pressure: " +
+                        "String.format %.0f ns, WeatherFormatter %.0f ns per round",
+                ROUNDS, (double) utilityNanos / ROUNDS, (double) formatterNanos / ROUNDS));
+    }
+
+    // Formats a spread of values the old way or the new one and sums up the lengths
+    private int run(StringBuilder builder, int rounds, boolean formatter) {
+        int length = 0;
+        for (int round = 0; round < rounds; round++) {
+            double temperature = (round % 700) / 10.0 - 20;
+            float value = (round % 1000) / 10f;
+            if (formatter) {
+                length += mFormatter.formatTemperature(temperature, true).length();
+                builder.setLength(0);
+                mFormatter.appendWind(builder, value, round % 360, true);
+                mFormatter.appendHumidity(builder, value);
+                mFormatter.appendPressure(builder, value + 1000);
+                length += builder.length();
+            } else {
+                length += formatTemperature(temperature, true).length();
+                length += getFormattedWind(value, round % 360, true).length();
+                length += mContext.getString(R.string.format_humidity, value).length();
+                length += mContext.getString(R.string.format_pressure, value + 1000).length();
+            }
+        }
+        return length;
+    }
+
+    private void assertTemperature(double temperature) {
+        assertEquals(formatTemperature(temperature, true),
+                mFormatter.formatTemperature(temperature, true));
+        assertEquals(formatTemperature(temperature, false),
+                mFormatter.formatTemperature(temperature, false));
+    }
+
+    private void assertWind(float speed, float degrees) {
+        assertEquals(getFormattedWind(speed, degrees, true), mFormatter
+                .appendWind(new StringBuilder(), speed, degrees, true).toString());
+        assertEquals(getFormattedWind(speed, degrees, false), mFormatter
+                .appendWind(new StringBuilder(), speed, degrees, false).toString());
+    }
+
+    // Utility.formatTemperature before WeatherFormatter
+    private String formatTemperature(double temperature, boolean metric) {
+        if (!metric) {
+            temperature = (temperature * 1.8) + 32;
+        }
+        return String.format(mContext.getString(R.string.format_temperature), temperature);
+    }
+
+    // Utility.getFormattedWind before WeatherFormatter
+    private String getFormattedWind(float windSpeed, float degrees, boolean metric) {
+        int windFormat;
+        if (metric) {
+            windFormat = R.string.format_wind_kmh;
+        } else {
+            windFormat = R.string.format_wind_mph;
+            windSpeed = .621371192237334f * windSpeed;
+        }
+        return String.format(mContext.getString(windFormat), windSpeed,
+                WeatherFormatter.getCompassDirection(degrees));
+    }
+}
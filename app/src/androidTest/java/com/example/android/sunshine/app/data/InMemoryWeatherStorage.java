@@ -0,0 +1,434 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.util.LongSparseArray;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+
+/**
+ * Keeps the forecast in memory, one set of sorted primitive arrays per location.
+ *
+ * Range and point queries are binary searches over the dates of one location, and a day is
+ * upserted by shifting the days after it.  Nothing is written to disk, so whatever is stored is
+ * gone with the process.  Locations still live in the database and are read from it for every
+ * query, since the provider writes them there.
+ *
+ * Only sort orders on the date are supported, which are the only ones the app uses.
+ *
+ * It is only the subject of {@link TestStorageEngineBenchmark} and not a drop-in for the
+ * provider: condition ids are numbered here instead of coming from the condition table, and
+ * days of a deleted or evicted location are never dropped, so a new location that reuses its
+ * _id would see them.
+ */
+final class InMemoryWeatherStorage implements WeatherStorageEngine {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    // Columns that a projection may ask for
+    private static final int COLUMN_ID = 0;
+    private static final int COLUMN_LOC_KEY = 1;
+    private static final int COLUMN_DATE = 2;
+    private static final int COLUMN_CONDITION_KEY = 3;
+    private static final int COLUMN_WEATHER_ID = 4;
+    private static final int COLUMN_MIN_TEMP = 5;
+    private static final int COLUMN_MAX_TEMP = 6;
+    private static final int COLUMN_HUMIDITY = 7;
+    private static final int COLUMN_PRESSURE = 8;
+    private static final int COLUMN_WIND_SPEED = 9;
+    private static final int COLUMN_DEGREES = 10;
+    private static final int COLUMN_SHORT_DESC = 11;
+    // The location's columns, in the order of SQL_LOCATION
+    private static final int COLUMN_LOCATION_ID = 12;
+    private static final int COLUMN_LOCATION_SETTING = 13;
+    private static final int COLUMN_CITY_NAME = 14;
+    private static final int COLUMN_COORD_LAT = 15;
+    private static final int COLUMN_COORD_LONG = 16;
+    private static final int COLUMN_LAST_ACCESSED = 17;
+
+    // The names a column can be asked for by, the same ones the provider's projection map knows
+    private static final HashMap<String, Integer> sColumns = new HashMap<String, Integer>();
+
+    static{
+        putWeatherColumn(WeatherEntry._ID, COLUMN_ID);
+        putWeatherColumn(WeatherEntry.COLUMN_LOC_KEY, COLUMN_LOC_KEY);
+        putWeatherColumn(WeatherEntry.COLUMN_DATE, COLUMN_DATE);
+        putWeatherColumn(WeatherEntry.COLUMN_CONDITION_KEY, COLUMN_CONDITION_KEY);
+        putWeatherColumn(WeatherEntry.COLUMN_WEATHER_ID, COLUMN_WEATHER_ID);
+        putWeatherColumn(WeatherEntry.COLUMN_MIN_TEMP, COLUMN_MIN_TEMP);
+        putWeatherColumn(WeatherEntry.COLUMN_MAX_TEMP, COLUMN_MAX_TEMP);
+        putWeatherColumn(WeatherEntry.COLUMN_HUMIDITY, COLUMN_HUMIDITY);
+        putWeatherColumn(WeatherEntry.COLUMN_PRESSURE, COLUMN_PRESSURE);
+        putWeatherColumn(WeatherEntry.COLUMN_WIND_SPEED, COLUMN_WIND_SPEED);
+        putWeatherColumn(WeatherEntry.COLUMN_DEGREES, COLUMN_DEGREES);
+        sColumns.put(WeatherEntry.COLUMN_SHORT_DESC, COLUMN_SHORT_DESC);
+
+        sColumns.put(LocationEntry.TABLE_NAME + "." + LocationEntry._ID, COLUMN_LOCATION_ID);
+        putLocationColumn(LocationEntry.COLUMN_LOCATION_SETTING, COLUMN_LOCATION_SETTING);
+        putLocationColumn(LocationEntry.COLUMN_CITY_NAME, COLUMN_CITY_NAME);
+        putLocationColumn(LocationEntry.COLUMN_COORD_LAT, COLUMN_COORD_LAT);
+        putLocationColumn(LocationEntry.COLUMN_COORD_LONG, COLUMN_COORD_LONG);
+        putLocationColumn(LocationEntry.COLUMN_LAST_ACCESSED, COLUMN_LAST_ACCESSED);
+    }
+
+    private static void putWeatherColumn(String column, int index) {
+        sColumns.put(column, index);
+        sColumns.put(WeatherEntry.TABLE_NAME + "." + column, index);
+    }
+
+    private static void putLocationColumn(String column, int index) {
+        sColumns.put(column, index);
+        sColumns.put(LocationEntry.TABLE_NAME + "." + column, index);
+    }
+
+    // What a day needs to be stored
+    private static final String[] REQUIRED_COLUMNS = {
+            WeatherEntry.COLUMN_LOC_KEY, WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_SHORT_DESC, WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_MIN_TEMP, WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_HUMIDITY, WeatherEntry.COLUMN_PRESSURE,
+            WeatherEntry.COLUMN_WIND_SPEED, WeatherEntry.COLUMN_DEGREES
+    };
+
+    //SELECT _id, location_setting, city_name, coord_lat, coord_long, last_accessed
+    //FROM location WHERE location_setting = ?
+    private static final String SQL_LOCATION =
+            "SELECT " + LocationEntry._ID + ", " + LocationEntry.COLUMN_LOCATION_SETTING + ", " +
+                    LocationEntry.COLUMN_CITY_NAME + ", " + LocationEntry.COLUMN_COORD_LAT + ", " +
+                    LocationEntry.COLUMN_COORD_LONG + ", " + LocationEntry.COLUMN_LAST_ACCESSED +
+                    " FROM " + LocationEntry.TABLE_NAME +
+                    " WHERE " + LocationEntry.COLUMN_LOCATION_SETTING + " = ?";
+
+    private final SQLiteOpenHelper mOpenHelper;
+
+    // The days of each location, by location id
+    private final LongSparseArray<Days> mDays = new LongSparseArray<Days>();
+
+    // Short descriptions by condition id, which is the index plus one as in the database
+    private final ArrayList<String> mDescriptions = new ArrayList<String>();
+    private final HashMap<String, Integer> mConditionIds = new HashMap<String, Integer>();
+
+    InMemoryWeatherStorage(SQLiteOpenHelper openHelper) {
+        mOpenHelper = openHelper;
+    }
+
+    @Override
+    public synchronized Cursor queryFrom(String locationSetting, long startDate,
+                                         String[] projection, String sortOrder) {
+        boolean descending = isDescending(sortOrder);
+        if (projection == null) projection = WeatherProvider.sWeatherWithLocationDefaultProjection;
+        int[] columns = resolve(projection);
+        MatrixCursor cursor = new MatrixCursor(columnNames(projection));
+
+        Object[] location = queryLocation(locationSetting);
+        Days days = location == null ? null : mDays.get((Long) location[0]);
+        if (days != null) {
+            int from = days.firstOnOrAfter(startDate);
+            if (descending) {
+                for (int i = days.size - 1; i >= from; i--) {
+                    cursor.addRow(row(columns, days, i, location));
+                }
+            } else {
+                for (int i = from; i < days.size; i++) {
+                    cursor.addRow(row(columns, days, i, location));
+                }
+            }
+        }
+        return cursor;
+    }
+
+    @Override
+    public synchronized Cursor queryPage(String locationSetting, long startDate, int limit,
+                                         String[] projection) {
+        if (projection == null) projection = WeatherProvider.sWeatherWithLocationDefaultProjection;
+        int[] columns = resolve(projection);
+        MatrixCursor cursor = new MatrixCursor(columnNames(projection), limit);
+
+        Object[] location = queryLocation(locationSetting);
+        Days days = location == null ? null : mDays.get((Long) location[0]);
+        if (days != null) {
+            int from = days.firstOnOrAfter(startDate);
+            int to = (int) Math.min((long) from + limit, days.size);
+            for (int i = from; i < to; i++) {
+                cursor.addRow(row(columns, days, i, location));
+            }
+        }
+        return cursor;
+    }
+
+    @Override
+    public synchronized Cursor queryDay(String locationSetting, long date, String[] projection,
+                                        String sortOrder) {
+        // There is at most one day, but an unsupported order should still be rejected
+        isDescending(sortOrder);
+        if (projection == null) projection = WeatherProvider.sWeatherWithLocationDefaultProjection;
+        int[] columns = resolve(projection);
+        MatrixCursor cursor = new MatrixCursor(columnNames(projection), 1);
+
+        Object[] location = queryLocation(locationSetting);
+        Days days = location == null ? null : mDays.get((Long) location[0]);
+        if (days != null) {
+            int index = days.indexOf(date);
+            if (index >= 0) {
+                cursor.addRow(row(columns, days, index, location));
+            }
+        }
+        return cursor;
+    }
+
+    @Override
+    public synchronized int bulkUpsert(ContentValues[] values) {
+        int returnCount = 0;
+        for (ContentValues value : values) {
+            if (!isComplete(value)) {
+                // The weather table's NOT NULL constraints would reject it too
+                continue;
+            }
+            long locationId = value.getAsLong(WeatherEntry.COLUMN_LOC_KEY);
+            long date = value.getAsLong(WeatherEntry.COLUMN_DATE);
+
+            Days days = mDays.get(locationId);
+            if (days == null) {
+                days = new Days();
+                mDays.put(locationId, days);
+            }
+            int index = days.indexOf(date);
+            if (index < 0) {
+                index = -index - 1;
+                days.insertAt(index);
+                days.dates[index] = date;
+            }
+            days.conditions[index] = conditionIdFor(
+                    value.getAsString(WeatherEntry.COLUMN_SHORT_DESC));
+            days.weatherIds[index] = value.getAsInteger(WeatherEntry.COLUMN_WEATHER_ID);
+            days.min[index] = value.getAsDouble(WeatherEntry.COLUMN_MIN_TEMP);
+            days.max[index] = value.getAsDouble(WeatherEntry.COLUMN_MAX_TEMP);
+            days.humidity[index] = value.getAsDouble(WeatherEntry.COLUMN_HUMIDITY);
+            days.pressure[index] = value.getAsDouble(WeatherEntry.COLUMN_PRESSURE);
+            days.wind[index] = value.getAsDouble(WeatherEntry.COLUMN_WIND_SPEED);
+            days.degrees[index] = value.getAsDouble(WeatherEntry.COLUMN_DEGREES);
+            returnCount++;
+        }
+        return returnCount;
+    }
+
+    @Override
+    public synchronized int prune(long lastDate) {
+        int pruned = 0;
+        for (int i = 0; i < mDays.size(); i++) {
+            pruned += mDays.valueAt(i).removeBefore(lastDate + 1);
+        }
+        return pruned;
+    }
+
+    private static boolean isComplete(ContentValues value) {
+        if (value == null) return false;
+        for (String column : REQUIRED_COLUMNS) {
+            if (value.get(column) == null) return false;
+        }
+        return true;
+    }
+
+    private int conditionIdFor(String description) {
+        Integer id = mConditionIds.get(description);
+        if (id == null) {
+            mDescriptions.add(description);
+            id = mDescriptions.size();
+            mConditionIds.put(description, id);
+        }
+        return id;
+    }
+
+    // The location's columns from COLUMN_LOCATION_ID on, or null if it isn't stored
+    private Object[] queryLocation(String locationSetting) {
+        Cursor cursor = mOpenHelper.getReadableDatabase().rawQuery(
+                SQL_LOCATION, new String[]{locationSetting});
+        try {
+            if (!cursor.moveToFirst()) {
+                return null;
+            }
+            return new Object[]{cursor.getLong(0), cursor.getString(1), cursor.getString(2),
+                    cursor.getDouble(3), cursor.getDouble(4), cursor.getLong(5)};
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private Object[] row(int[] columns, Days days, int index, Object[] location) {
+        long locationId = (Long) location[0];
+        Object[] row = new Object[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            switch (columns[i]) {
+                case COLUMN_ID:
+                    row[i] = WeatherEntry.buildWeatherId(locationId, days.dates[index]);
+                    break;
+                case COLUMN_LOC_KEY:
+                    row[i] = locationId;
+                    break;
+                case COLUMN_DATE:
+                    row[i] = days.dates[index];
+                    break;
+                case COLUMN_CONDITION_KEY:
+                    row[i] = days.conditions[index];
+                    break;
+                case COLUMN_WEATHER_ID:
+                    row[i] = days.weatherIds[index];
+                    break;
+                case COLUMN_MIN_TEMP:
+                    row[i] = days.min[index];
+                    break;
+                case COLUMN_MAX_TEMP:
+                    row[i] = days.max[index];
+                    break;
+                case COLUMN_HUMIDITY:
+                    row[i] = days.humidity[index];
+                    break;
+                case COLUMN_PRESSURE:
+                    row[i] = days.pressure[index];
+                    break;
+                case COLUMN_WIND_SPEED:
+                    row[i] = days.wind[index];
+                    break;
+                case COLUMN_DEGREES:
+                    row[i] = days.degrees[index];
+                    break;
+                case COLUMN_SHORT_DESC:
+                    row[i] = mDescriptions.get(days.conditions[index] - 1);
+                    break;
+                default:
+                    row[i] = location[columns[i] - COLUMN_LOCATION_ID];
+                    break;
+            }
+        }
+        return row;
+    }
+
+    private static int[] resolve(String[] projection) {
+        int[] columns = new int[projection.length];
+        for (int i = 0; i < projection.length; i++) {
+            Integer column = sColumns.get(projection[i]);
+            if (column == null) {
+                throw new IllegalArgumentException("Invalid column " + projection[i]);
+            }
+            columns[i] = column;
+        }
+        return columns;
+    }
+
+    // SQLite names a qualified column by its bare name, the cursor does the same
+    private static String[] columnNames(String[] projection) {
+        String[] names = new String[projection.length];
+        for (int i = 0; i < projection.length; i++) {
+            names[i] = projection[i].substring(projection[i].lastIndexOf('.') + 1);
+        }
+        return names;
+    }
+
+    private static boolean isDescending(String sortOrder) {
+        if (sortOrder == null) {
+            return false;
+        }
+        String[] terms = sortOrder.trim().toLowerCase(Locale.US).split("\\s+");
+        String column = terms[0];
+        if (column.equals(WeatherEntry.COLUMN_DATE) ||
+                column.equals(WeatherEntry.TABLE_NAME + "." + WeatherEntry.COLUMN_DATE)) {
+            if (terms.length == 1 || (terms.length == 2 && terms[1].equals("asc"))) {
+                return false;
+            }
+            if (terms.length == 2 && terms[1].equals("desc")) {
+                return true;
+            }
+        }
+        throw new UnsupportedOperationException("Unsupported sort order: " + sortOrder);
+    }
+
+    /*
+        The days of one location, sorted by date.  Each column is an array of its own, so that
+        a day costs no object and a range is read from consecutive elements.
+     */
+    private static final class Days {
+        int size;
+        long[] dates = new long[INITIAL_CAPACITY];
+        int[] conditions = new int[INITIAL_CAPACITY];
+        int[] weatherIds = new int[INITIAL_CAPACITY];
+        double[] min = new double[INITIAL_CAPACITY];
+        double[] max = new double[INITIAL_CAPACITY];
+        double[] humidity = new double[INITIAL_CAPACITY];
+        double[] pressure = new double[INITIAL_CAPACITY];
+        double[] wind = new double[INITIAL_CAPACITY];
+        double[] degrees = new double[INITIAL_CAPACITY];
+
+        // As Arrays.binarySearch(), the insertion point is returned as -(point + 1)
+        int indexOf(long date) {
+            return Arrays.binarySearch(dates, 0, size, date);
+        }
+
+        int firstOnOrAfter(long date) {
+            int index = indexOf(date);
+            return index >= 0 ? index : -index - 1;
+        }
+
+        // Opens a gap for one day at the index
+        void insertAt(int index) {
+            if (size == dates.length) {
+                int capacity = size * 2;
+                dates = Arrays.copyOf(dates, capacity);
+                conditions = Arrays.copyOf(conditions, capacity);
+                weatherIds = Arrays.copyOf(weatherIds, capacity);
+                min = Arrays.copyOf(min, capacity);
+                max = Arrays.copyOf(max, capacity);
+                humidity = Arrays.copyOf(humidity, capacity);
+                pressure = Arrays.copyOf(pressure, capacity);
+                wind = Arrays.copyOf(wind, capacity);
+                degrees = Arrays.copyOf(degrees, capacity);
+            }
+            move(index, index + 1, size - index);
+            size++;
+        }
+
+        // Removes every day before the date and returns how many there were
+        int removeBefore(long date) {
+            int count = firstOnOrAfter(date);
+            if (count > 0) {
+                move(count, 0, size - count);
+                size -= count;
+            }
+            return count;
+        }
+
+        private void move(int from, int to, int length) {
+            System.arraycopy(dates, from, dates, to, length);
+            System.arraycopy(conditions, from, conditions, to, length);
+            System.arraycopy(weatherIds, from, weatherIds, to, length);
+            System.arraycopy(min, from, min, to, length);
+            System.arraycopy(max, from, max, to, length);
+            System.arraycopy(humidity, from, humidity, to, length);
+            System.arraycopy(pressure, from, pressure, to, length);
+            System.arraycopy(wind, from, wind, to, length);
+            System.arraycopy(degrees, from, degrees, to, length);
+        }
+    }
+}
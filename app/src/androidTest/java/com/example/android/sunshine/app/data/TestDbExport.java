@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Bundle;
+import android.test.AndroidTestCase;
+import android.text.format.DateUtils;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/*
+    Tests that an export read into another database gives back the same locations and forecasts,
+    that it merges with locations that are already there, and that anything else is rejected
+    without writing a row.  An import through the provider has to show in its cached results.
+ */
+public class TestDbExport extends AndroidTestCase {
+
+    private static final int DAYS = 14;
+
+    // What the provider returns for a location's forecast, without the row ids
+    private static final String SQL_FORECAST = "SELECT location_setting, city_name, coord_lat," +
+            " coord_long, date, description, weather_id, min, max, humidity, pressure, wind," +
+            " degrees FROM weather INNER JOIN location ON weather.location_id = location._id" +
+            " INNER JOIN condition USING (condition_id) ORDER BY location_setting, date";
+
+    private SQLiteDatabase mSource;
+    private SQLiteDatabase mTarget;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mSource = SQLiteDatabase.create(null);
+        new WeatherDbHelper(mContext).onCreate(mSource);
+        mTarget = SQLiteDatabase.create(null);
+        new WeatherDbHelper(mContext).onCreate(mTarget);
+
+        insertForecast(mSource, TestUtilities.TEST_LOCATION, "Clear");
+        insertForecast(mSource, "94043", "Rain");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mSource.close();
+        mTarget.close();
+        super.tearDown();
+    }
+
+    public void testRoundTrip() throws IOException {
+        assertEquals(2 * DAYS, WeatherDbExport.read(mTarget, export(mSource)));
+        assertEquals("Error: Imported forecast differs from the exported one",
+                dump(mSource), dump(mTarget));
+    }
+
+    public void testImportMergesLocations() throws IOException {
+        // The target already knows one location, under another row id and with older weather
+        mTarget.insert(LocationEntry.TABLE_NAME, null, TestUtilities.createNorthPoleLocationValues());
+        insertForecast(mTarget, TestUtilities.TEST_LOCATION, "Snow");
+
+        WeatherDbExport.read(mTarget, export(mSource));
+        assertEquals("Error: Location imported twice", 2,
+                DatabaseUtils.queryNumEntries(mTarget, LocationEntry.TABLE_NAME));
+        assertEquals("Error: Stored days weren't replaced by the imported ones",
+                dump(mSource), dump(mTarget));
+    }
+
+    public void testRejectsOtherData() {
+        try {
+            WeatherDbExport.read(mTarget, new ByteArrayInputStream(new byte[]{1, 2, 3, 4, 5, 6}));
+            fail("Error: Read something that isn't an export");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    public void testTruncatedExportWritesNothing() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        WeatherDbExport.write(mSource, out);
+        byte[] bytes = out.toByteArray();
+        try {
+            WeatherDbExport.read(mTarget, new ByteArrayInputStream(bytes, 0, bytes.length / 2));
+            fail("Error: Read half an export");
+        } catch (IOException e) {
+            // expected
+        }
+        assertEquals(0, DatabaseUtils.queryNumEntries(mTarget, WeatherEntry.TABLE_NAME));
+        assertEquals(0, DatabaseUtils.queryNumEntries(mTarget, LocationEntry.TABLE_NAME));
+    }
+
+    public void testImportThroughProviderDropsCachedResults() throws IOException {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        File file = new File(mContext.getCacheDir(), "test-" + WeatherBackupAgent.EXPORT_NAME);
+        try {
+            // Cache the empty forecast
+            assertEquals(0, countForecast());
+
+            FileOutputStream out = new FileOutputStream(file);
+            try {
+                WeatherDbExport.write(mSource, out);
+            } finally {
+                out.close();
+            }
+            Bundle result = mContext.getContentResolver().call(WeatherContract.BASE_CONTENT_URI,
+                    WeatherContract.METHOD_IMPORT, file.getPath(), null);
+            assertEquals(2 * DAYS, result.getInt(WeatherContract.EXTRA_IMPORTED_DAYS));
+            assertEquals("Error: The forecast cached before the import was returned",
+                    DAYS, countForecast());
+        } finally {
+            file.delete();
+            mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+            mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        }
+    }
+
+    private int countForecast() {
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION),
+                null, null, null, null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static ByteArrayInputStream export(SQLiteDatabase db) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(2 * DAYS, WeatherDbExport.write(db, out));
+        return new ByteArrayInputStream(out.toByteArray());
+    }
+
+    // Inserts the location if needed and two weeks of weather for it
+    private static void insertForecast(SQLiteDatabase db, String setting, String description) {
+        long locationId;
+        Cursor cursor = db.query(LocationEntry.TABLE_NAME, new String[]{LocationEntry._ID},
+                LocationEntry.COLUMN_LOCATION_SETTING + " = ?", new String[]{setting},
+                null, null, null);
+        try {
+            if (cursor.moveToFirst()) {
+                locationId = cursor.getLong(0);
+            } else {
+                ContentValues location = TestUtilities.createNorthPoleLocationValues();
+                location.put(LocationEntry.COLUMN_LOCATION_SETTING, setting);
+                locationId = db.insert(LocationEntry.TABLE_NAME, null, location);
+            }
+        } finally {
+            cursor.close();
+        }
+
+        for (int day = 0; day < DAYS; day++) {
+            ContentValues weather = TestUtilities.createWeatherValues(locationId);
+            weather.put(WeatherEntry.COLUMN_DATE, WeatherContract.normalizeDate(
+                    TestUtilities.TEST_DATE + day * DateUtils.DAY_IN_MILLIS));
+            weather.put(WeatherEntry.COLUMN_SHORT_DESC, description);
+            weather.put(WeatherEntry.COLUMN_MAX_TEMP, 75 + day);
+            db.insert(WeatherEntry.TABLE_NAME, null, ConditionDictionary.encode(db, weather, null));
+        }
+    }
+
+    private static String dump(SQLiteDatabase db) {
+        StringBuilder builder = new StringBuilder();
+        Cursor cursor = db.rawQuery(SQL_FORECAST, null);
+        try {
+            while (cursor.moveToNext()) {
+                for (int i = 0; i < cursor.getColumnCount(); i++) {
+                    builder.append(cursor.getString(i)).append(' ');
+                }
+                builder.append('\n');
+            }
+        } finally {
+            cursor.close();
+        }
+        return builder.toString();
+    }
+}
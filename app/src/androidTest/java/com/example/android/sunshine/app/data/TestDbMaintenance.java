@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.test.AndroidTestCase;
+import android.text.format.DateUtils;
+
+import com.example.android.sunshine.app.data.WeatherContract.MaintenanceEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/*
+    Tests that a maintenance run gives the pages freed by deleted weather back, switches older
+    databases over to incremental vacuuming, and logs what it did.
+ */
+public class TestDbMaintenance extends AndroidTestCase {
+
+    private static final int DAYS = 2000;
+
+    private SQLiteDatabase mDb;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDb = SQLiteDatabase.create(null);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mDb.close();
+        super.tearDown();
+    }
+
+    public void testIncrementalVacuumReleasesFreePages() {
+        // What WeatherDbHelper.onConfigure does for every new database
+        mDb.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+        new WeatherDbHelper(mContext).onCreate(mDb);
+        fillAndDeleteWeather();
+
+        ContentValues run = WeatherDbMaintenance.run(mDb, null, true);
+        assertTrue("Error: Deleting the weather should have freed pages",
+                run.getAsLong(MaintenanceEntry.COLUMN_FREE_PAGES_BEFORE) > 0);
+        assertEquals("Error: Free pages left after the vacuum", 0,
+                (long) run.getAsLong(MaintenanceEntry.COLUMN_FREE_PAGES_AFTER));
+        assertEquals(1, (int) run.getAsInteger(MaintenanceEntry.COLUMN_INTEGRITY_OK));
+    }
+
+    public void testFullVacuumConvertsOldDatabases() {
+        new WeatherDbHelper(mContext).onCreate(mDb);
+        fillAndDeleteWeather();
+        assertEquals(0, DatabaseUtils.longForQuery(mDb, "PRAGMA auto_vacuum", null));
+
+        WeatherDbMaintenance.run(mDb, null, true);
+        assertEquals("Error: Database wasn't switched to incremental vacuum", 2,
+                DatabaseUtils.longForQuery(mDb, "PRAGMA auto_vacuum", null));
+        assertEquals("Error: Free pages left after the vacuum", 0,
+                DatabaseUtils.longForQuery(mDb, "PRAGMA freelist_count", null));
+    }
+
+    public void testRunsAreLogged() {
+        mDb.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+        new WeatherDbHelper(mContext).onCreate(mDb);
+        WeatherDbMaintenance.run(mDb, null, false);
+        WeatherDbMaintenance.run(mDb, null, false);
+
+        Cursor cursor = mDb.query(MaintenanceEntry.TABLE_NAME, null, null, null, null, null,
+                MaintenanceEntry._ID + " ASC");
+        try {
+            assertEquals("Error: Expected one log row per run", 2, cursor.getCount());
+            while (cursor.moveToNext()) {
+                assertTrue(cursor.getLong(cursor.getColumnIndex(
+                        MaintenanceEntry.COLUMN_STARTED)) > 0);
+                assertTrue(cursor.getLong(cursor.getColumnIndex(
+                        MaintenanceEntry.COLUMN_DURATION)) >= 0);
+                assertEquals(0, cursor.getInt(cursor.getColumnIndex(
+                        MaintenanceEntry.COLUMN_CHECKPOINTED)));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        // and ANALYZE has left statistics for the planner
+        assertEquals("Error: No statistics table after the run", 1,
+                DatabaseUtils.queryNumEntries(mDb, "sqlite_master", "name = 'sqlite_stat1'"));
+    }
+
+    // Fills the weather table with several years of days, then deletes all of them
+    private void fillAndDeleteWeather() {
+        long conditionId = ConditionDictionary.idFor(mDb, "Clear");
+        SQLiteStatement insert = mDb.compileStatement("INSERT INTO " + WeatherEntry.TABLE_NAME +
+                " (location_id, date, condition_id, weather_id, min, max, humidity, pressure," +
+                " wind, degrees) VALUES (1, ?, ?, 800, 65, 75, 1.2, 1.3, 5.5, 1.1)");
+        mDb.beginTransaction();
+        try {
+            for (int day = 0; day < DAYS; day++) {
+                insert.bindLong(1, TestUtilities.TEST_DATE + day * DateUtils.DAY_IN_MILLIS);
+                insert.bindLong(2, conditionId);
+                insert.executeInsert();
+            }
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+            insert.close();
+        }
+        mDb.delete(WeatherEntry.TABLE_NAME, null, null);
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+
+import java.util.TreeSet;
+
+/*
+    Checks every pair of schema versions: a database created at the older version and migrated
+    to the newer one has to end up with the same tables, columns and indexes as a database that
+    was created at the newer version, and it has to keep its rows.
+
+    When you bump WeatherDbHelper.DATABASE_VERSION, add the schema of the version you are leaving
+    to SCHEMAS below.
+ */
+public class TestDbMigrations extends AndroidTestCase {
+
+    // The CREATE statements of every version that has shipped, indexed by version.  The current
+    // version is not listed, it comes from WeatherDbHelper.onCreate.
+    private static final String[][] SCHEMAS = new String[WeatherDbHelper.DATABASE_VERSION][];
+
+    static {
+        SCHEMAS[2] = new String[]{
+                "CREATE TABLE location (_id INTEGER PRIMARY KEY," +
+                        "location_setting TEXT UNIQUE NOT NULL, city_name TEXT NOT NULL, " +
+                        "coord_lat REAL NOT NULL, coord_long REAL NOT NULL  );",
+                "CREATE TABLE weather (_id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                        "location_id INTEGER NOT NULL, date INTEGER NOT NULL, " +
+                        "short_desc TEXT NOT NULL, weather_id INTEGER NOT NULL," +
+                        "min REAL NOT NULL, max REAL NOT NULL, humidity REAL NOT NULL, " +
+                        "pressure REAL NOT NULL, wind REAL NOT NULL, degrees REAL NOT NULL, " +
+                        " FOREIGN KEY (location_id) REFERENCES location (_id), " +
+                        " UNIQUE (date, location_id) ON CONFLICT REPLACE);"
+        };
+        SCHEMAS[3] = new String[]{
+                "CREATE TABLE location (_id INTEGER PRIMARY KEY," +
+                        "location_setting TEXT UNIQUE NOT NULL, city_name TEXT NOT NULL, " +
+                        "coord_lat REAL NOT NULL, coord_long REAL NOT NULL  );",
+                "CREATE TABLE weather (_id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                        "location_id INTEGER NOT NULL, date INTEGER NOT NULL, " +
+                        "short_desc TEXT NOT NULL, weather_id INTEGER NOT NULL," +
+                        "min REAL NOT NULL, max REAL NOT NULL, humidity REAL NOT NULL, " +
+                        "pressure REAL NOT NULL, wind REAL NOT NULL, degrees REAL NOT NULL, " +
+                        " FOREIGN KEY (location_id) REFERENCES location (_id), " +
+                        " UNIQUE (location_id, date) ON CONFLICT REPLACE);",
+                "CREATE INDEX weather_date_idx ON weather (date);"
+        };
+        SCHEMAS[4] = new String[]{
+                SCHEMAS[3][0],
+                SCHEMAS[3][1],
+                SCHEMAS[3][2],
+                "CREATE TABLE weather_history (location_id INTEGER NOT NULL, " +
+                        "month INTEGER NOT NULL, granularity INTEGER NOT NULL, " +
+                        "date INTEGER NOT NULL, weather_id INTEGER NOT NULL, " +
+                        "min REAL NOT NULL, max REAL NOT NULL, humidity REAL NOT NULL, " +
+                        "pressure REAL NOT NULL, wind REAL NOT NULL, degrees REAL NOT NULL, " +
+                        "day_count INTEGER NOT NULL, rainy_days INTEGER NOT NULL, " +
+                        "FOREIGN KEY (location_id) REFERENCES location (_id), " +
+                        "PRIMARY KEY (location_id, month, granularity, date)) WITHOUT ROWID;"
+        };
+        SCHEMAS[5] = new String[]{
+                SCHEMAS[4][0],
+                "CREATE TABLE condition (condition_id INTEGER PRIMARY KEY, " +
+                        "description TEXT UNIQUE NOT NULL);",
+                "CREATE TABLE weather (_id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                        "location_id INTEGER NOT NULL, date INTEGER NOT NULL, " +
+                        "condition_id INTEGER NOT NULL, weather_id INTEGER NOT NULL," +
+                        "min REAL NOT NULL, max REAL NOT NULL, humidity REAL NOT NULL, " +
+                        "pressure REAL NOT NULL, wind REAL NOT NULL, degrees REAL NOT NULL, " +
+                        " FOREIGN KEY (location_id) REFERENCES location (_id), " +
+                        " FOREIGN KEY (condition_id) REFERENCES condition (condition_id), " +
+                        " UNIQUE (location_id, date) ON CONFLICT REPLACE);",
+                SCHEMAS[4][2],
+                SCHEMAS[4][3]
+        };
+        SCHEMAS[6] = new String[]{
+                SCHEMAS[5][0],
+                SCHEMAS[5][1],
+                "CREATE TABLE weather (location_id INTEGER NOT NULL, date INTEGER NOT NULL, " +
+                        "condition_id INTEGER NOT NULL, weather_id INTEGER NOT NULL," +
+                        "min REAL NOT NULL, max REAL NOT NULL, humidity REAL NOT NULL, " +
+                        "pressure REAL NOT NULL, wind REAL NOT NULL, degrees REAL NOT NULL, " +
+                        " FOREIGN KEY (location_id) REFERENCES location (_id), " +
+                        " FOREIGN KEY (condition_id) REFERENCES condition (condition_id), " +
+                        " PRIMARY KEY (location_id, date) ON CONFLICT REPLACE) WITHOUT ROWID;",
+                SCHEMAS[5][3],
+                SCHEMAS[5][4]
+        };
+        SCHEMAS[7] = new String[]{
+                "CREATE TABLE location (_id INTEGER PRIMARY KEY," +
+                        "location_setting TEXT UNIQUE NOT NULL, city_name TEXT NOT NULL, " +
+                        "coord_lat REAL NOT NULL, coord_long REAL NOT NULL, " +
+                        "last_accessed INTEGER NOT NULL DEFAULT 0 );",
+                SCHEMAS[6][1],
+                SCHEMAS[6][2],
+                SCHEMAS[6][3],
+                SCHEMAS[6][4]
+        };
+    }
+
+    private static final int TEST_DAYS = 5;
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+
+    public void testMigrationsBetweenAllVersions() {
+        for (int from = WeatherDbMigrations.FIRST_MIGRATABLE_VERSION;
+             from < WeatherDbHelper.DATABASE_VERSION; from++) {
+            for (int to = from + 1; to <= WeatherDbHelper.DATABASE_VERSION; to++) {
+                checkMigration(from, to);
+            }
+        }
+    }
+
+    public void testUnknownVersionIsNotMigrated() {
+        SQLiteDatabase db = SQLiteDatabase.create(null);
+        try {
+            assertFalse("Error: Versions before the first migration should be rebuilt",
+                    WeatherDbMigrations.migrate(db,
+                            WeatherDbMigrations.FIRST_MIGRATABLE_VERSION - 1,
+                            WeatherDbHelper.DATABASE_VERSION));
+        } finally {
+            db.close();
+        }
+    }
+
+    private void checkMigration(int from, int to) {
+        SQLiteDatabase migrated = SQLiteDatabase.create(null);
+        SQLiteDatabase expected = SQLiteDatabase.create(null);
+        try {
+            createSchema(migrated, from);
+            seed(migrated, from);
+
+            migrated.beginTransaction();
+            try {
+                assertTrue("Error: No migration from version " + from + " to " + to,
+                        WeatherDbMigrations.migrate(migrated, from, to));
+                migrated.setTransactionSuccessful();
+            } finally {
+                migrated.endTransaction();
+            }
+
+            createSchema(expected, to);
+            assertEquals("Error: Schema migrated from version " + from + " to " + to +
+                            " doesn't match a newly created one",
+                    describeSchema(expected), describeSchema(migrated));
+
+            assertSeedSurvived(migrated, "from version " + from + " to " + to);
+        } finally {
+            migrated.close();
+            expected.close();
+        }
+    }
+
+    private void createSchema(SQLiteDatabase db, int version) {
+        if (version == WeatherDbHelper.DATABASE_VERSION) {
+            new WeatherDbHelper(mContext).onCreate(db);
+        } else {
+            for (String sql : SCHEMAS[version]) {
+                db.execSQL(sql);
+            }
+        }
+    }
+
+    // Up to version 4 the description was stored in the weather table, from 5 on in condition
+    private void seed(SQLiteDatabase db, int version) {
+        db.execSQL("INSERT INTO location (_id, location_setting, city_name, coord_lat, coord_long)" +
+                " VALUES (1, ?, 'North Pole', 64.7488, -147.353)",
+                new Object[]{TestUtilities.TEST_LOCATION});
+        String description = "short_desc";
+        if (version >= 5) {
+            db.execSQL("INSERT INTO condition (condition_id, description) VALUES (1, 'Clear')");
+            description = "condition_id";
+        }
+        for (int i = 0; i < TEST_DAYS; i++) {
+            db.execSQL("INSERT INTO weather (location_id, date, " + description + ", weather_id, " +
+                    "min, max, humidity, pressure, wind, degrees) " +
+                    "VALUES (1, ?, ?, 800, ?, ?, 1.2, 1.3, 5.5, 1.1)",
+                    new Object[]{TestUtilities.TEST_DATE + i * DAY_IN_MILLIS,
+                            version >= 5 ? (Object) 1 : "Clear", 65 - i, 75 + i});
+        }
+    }
+
+    private void assertSeedSurvived(SQLiteDatabase db, String migration) {
+        Cursor cursor = db.rawQuery("SELECT location_setting, date, max FROM weather" +
+                " INNER JOIN location ON weather.location_id = location._id ORDER BY date", null);
+        try {
+            assertEquals("Error: Weather rows lost migrating " + migration,
+                    TEST_DAYS, cursor.getCount());
+            for (int i = 0; cursor.moveToNext(); i++) {
+                assertEquals(TestUtilities.TEST_LOCATION, cursor.getString(0));
+                assertEquals(TestUtilities.TEST_DATE + i * DAY_IN_MILLIS, cursor.getLong(1));
+                assertEquals(75.0 + i, cursor.getDouble(2));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /*
+        A comparable description of the schema: every column with its type and constraints and
+        every index with its columns.  The CREATE statements themselves can't be compared since
+        the migrations write them differently.
+     */
+    private static TreeSet<String> describeSchema(SQLiteDatabase db) {
+        TreeSet<String> description = new TreeSet<String>();
+        Cursor tables = db.rawQuery("SELECT name FROM sqlite_master WHERE type = 'table'" +
+                " AND name NOT LIKE 'sqlite_%' AND name != 'android_metadata'", null);
+        try {
+            while (tables.moveToNext()) {
+                String table = tables.getString(0);
+                Cursor columns = db.rawQuery("PRAGMA table_info(" + table + ")", null);
+                try {
+                    while (columns.moveToNext()) {
+                        description.add(table + "." +
+                                columns.getString(columns.getColumnIndex("name")) + " " +
+                                columns.getString(columns.getColumnIndex("type")) +
+                                " notnull=" + columns.getInt(columns.getColumnIndex("notnull")) +
+                                " pk=" + columns.getInt(columns.getColumnIndex("pk")));
+                    }
+                } finally {
+                    columns.close();
+                }
+                Cursor indexes = db.rawQuery("PRAGMA index_list(" + table + ")", null);
+                try {
+                    while (indexes.moveToNext()) {
+                        String index = indexes.getString(indexes.getColumnIndex("name"));
+                        StringBuilder entry = new StringBuilder(table).append(" index unique=")
+                                .append(indexes.getInt(indexes.getColumnIndex("unique")))
+                                .append(" (");
+                        Cursor indexColumns = db.rawQuery("PRAGMA index_info(" + index + ")", null);
+                        try {
+                            while (indexColumns.moveToNext()) {
+                                entry.append(indexColumns.getString(
+                                        indexColumns.getColumnIndex("name"))).append(' ');
+                            }
+                        } finally {
+                            indexColumns.close();
+                        }
+                        description.add(entry.append(')').toString());
+                    }
+                } finally {
+                    indexes.close();
+                }
+            }
+        } finally {
+            tables.close();
+        }
+        return description;
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.ConditionEntry;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.io.File;
+
+/*
+    Tests that an in-memory database comes back from its snapshot with the same rows, and that
+    it starts out empty when there is no snapshot it can use.
+ */
+public class TestDbSnapshot extends AndroidTestCase {
+
+    private File mSnapshot;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mSnapshot = new File(mContext.getFilesDir(), "test-" + WeatherDbHelper.SNAPSHOT_NAME);
+        mSnapshot.delete();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mSnapshot.delete();
+        super.tearDown();
+    }
+
+    public void testSnapshotIsRestored() {
+        WeatherDbHelper helper = new WeatherDbHelper(mContext, mSnapshot);
+        SQLiteDatabase db = helper.getWritableDatabase();
+        long locationRowId = db.insert(LocationEntry.TABLE_NAME, null,
+                TestUtilities.createNorthPoleLocationValues());
+        ContentValues weatherValues = TestUtilities.createWeatherValues(locationRowId);
+        assertTrue(db.insert(WeatherEntry.TABLE_NAME, null,
+                ConditionDictionary.encode(db, weatherValues, null)) != -1);
+        helper.snapshot();
+        helper.close();
+
+        helper = new WeatherDbHelper(mContext, mSnapshot);
+        db = helper.getReadableDatabase();
+        try {
+            Cursor cursor = db.query(LocationEntry.TABLE_NAME, null, null, null, null, null, null);
+            TestUtilities.validateCursor("Error: Location not restored from the snapshot",
+                    cursor, TestUtilities.createNorthPoleLocationValues());
+
+            cursor = db.rawQuery("SELECT * FROM " + WeatherEntry.TABLE_NAME +
+                    " INNER JOIN " + ConditionEntry.TABLE_NAME +
+                    " USING (" + ConditionEntry.COLUMN_CONDITION_ID + ")", null);
+            weatherValues.put(ConditionEntry.COLUMN_DESCRIPTION,
+                    weatherValues.getAsString(WeatherEntry.COLUMN_SHORT_DESC));
+            weatherValues.remove(WeatherEntry.COLUMN_SHORT_DESC);
+            TestUtilities.validateCursor("Error: Weather not restored from the snapshot",
+                    cursor, weatherValues);
+        } finally {
+            helper.close();
+        }
+    }
+
+    public void testStartsEmptyWithoutSnapshot() {
+        WeatherDbHelper helper = new WeatherDbHelper(mContext, mSnapshot);
+        try {
+            assertEquals(0, DatabaseUtils.queryNumEntries(
+                    helper.getReadableDatabase(), LocationEntry.TABLE_NAME));
+        } finally {
+            helper.close();
+        }
+    }
+
+    public void testSnapshotOfOtherVersionIsIgnored() {
+        WeatherDbHelper helper = new WeatherDbHelper(mContext, mSnapshot);
+        helper.getWritableDatabase().insert(LocationEntry.TABLE_NAME, null,
+                TestUtilities.createNorthPoleLocationValues());
+        helper.snapshot();
+        helper.close();
+
+        SQLiteDatabase snapshot = SQLiteDatabase.openDatabase(mSnapshot.getPath(), null,
+                SQLiteDatabase.OPEN_READWRITE);
+        snapshot.setVersion(WeatherDbHelper.DATABASE_VERSION - 1);
+        snapshot.close();
+
+        helper = new WeatherDbHelper(mContext, mSnapshot);
+        try {
+            assertEquals("Error: Snapshot of an older schema was restored", 0,
+                    DatabaseUtils.queryNumEntries(
+                            helper.getReadableDatabase(), LocationEntry.TABLE_NAME));
+        } finally {
+            helper.close();
+        }
+    }
+}
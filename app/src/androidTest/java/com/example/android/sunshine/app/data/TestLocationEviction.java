@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.HistoryEntry;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/*
+    Tests that the least recently used locations are evicted with their weather and history,
+    and that the location to keep survives however long ago it was read.
+ */
+public class TestLocationEviction extends AndroidTestCase {
+
+    // Location settings, in the order their weather was last read, oldest first
+    private static final String[] SETTINGS = {"10001", "20002", "30003", "40004", "50005"};
+
+    private SQLiteDatabase mDb;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDb = SQLiteDatabase.create(null);
+        new WeatherDbHelper(mContext).onCreate(mDb);
+
+        long conditionId = ConditionDictionary.idFor(mDb, "Clear");
+        for (int i = 0; i < SETTINGS.length; i++) {
+            long locationId = i + 1;
+            mDb.execSQL("INSERT INTO " + LocationEntry.TABLE_NAME + " (" + LocationEntry._ID + ", " +
+                    LocationEntry.COLUMN_LOCATION_SETTING + ", " + LocationEntry.COLUMN_CITY_NAME + ", " +
+                    LocationEntry.COLUMN_COORD_LAT + ", " + LocationEntry.COLUMN_COORD_LONG + ", " +
+                    LocationEntry.COLUMN_LAST_ACCESSED + ") VALUES (?, ?, 'City', 1.0, 2.0, ?)",
+                    new Object[]{locationId, SETTINGS[i], 1000L * (i + 1)});
+            mDb.execSQL("INSERT INTO " + WeatherEntry.TABLE_NAME + " (" +
+                    WeatherEntry.COLUMN_LOC_KEY + ", " + WeatherEntry.COLUMN_DATE + ", " +
+                    WeatherEntry.COLUMN_CONDITION_KEY + ", " + WeatherEntry.COLUMN_WEATHER_ID + ", " +
+                    WeatherEntry.COLUMN_MIN_TEMP + ", " + WeatherEntry.COLUMN_MAX_TEMP + ", " +
+                    WeatherEntry.COLUMN_HUMIDITY + ", " + WeatherEntry.COLUMN_PRESSURE + ", " +
+                    WeatherEntry.COLUMN_WIND_SPEED + ", " + WeatherEntry.COLUMN_DEGREES +
+                    ") VALUES (?, ?, ?, 800, 65, 75, 1.2, 1.3, 5.5, 1.1)",
+                    new Object[]{locationId, TestUtilities.TEST_DATE, conditionId});
+            mDb.execSQL("INSERT INTO " + HistoryEntry.TABLE_NAME + " (" +
+                    HistoryEntry.COLUMN_LOC_KEY + ", " + HistoryEntry.COLUMN_MONTH + ", " +
+                    HistoryEntry.COLUMN_GRANULARITY + ", " + HistoryEntry.COLUMN_DATE + ", " +
+                    HistoryEntry.COLUMN_WEATHER_ID + ", " + HistoryEntry.COLUMN_MIN_TEMP + ", " +
+                    HistoryEntry.COLUMN_MAX_TEMP + ", " + HistoryEntry.COLUMN_HUMIDITY + ", " +
+                    HistoryEntry.COLUMN_PRESSURE + ", " + HistoryEntry.COLUMN_WIND_SPEED + ", " +
+                    HistoryEntry.COLUMN_DEGREES + ", " + HistoryEntry.COLUMN_DAY_COUNT + ", " +
+                    HistoryEntry.COLUMN_RAINY_DAYS +
+                    ") VALUES (?, 201412, 0, ?, 800, 65, 75, 1.2, 1.3, 5.5, 1.1, 1, 0)",
+                    new Object[]{locationId, TestUtilities.TEST_DATE});
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mDb.close();
+        super.tearDown();
+    }
+
+    public void testEvictsLeastRecentlyUsed() {
+        int evicted = LocationEvictor.evict(mDb, 3, SETTINGS[4]);
+        assertEquals("Error: Wrong number of locations evicted", 2, evicted);
+        assertLocationsLeft(SETTINGS[2], SETTINGS[3], SETTINGS[4]);
+    }
+
+    public void testKeepsLocationToKeep() {
+        // The oldest location is the preferred one, so the next oldest go instead
+        LocationEvictor.evict(mDb, 2, SETTINGS[0]);
+        assertLocationsLeft(SETTINGS[0], SETTINGS[4]);
+    }
+
+    public void testTouchMovesLocationToFront() {
+        LocationEvictor.touch(mDb, SETTINGS[1], 1000L * (SETTINGS.length + 1));
+        LocationEvictor.evict(mDb, 2, SETTINGS[4]);
+        assertLocationsLeft(SETTINGS[4], SETTINGS[1]);
+    }
+
+    public void testNothingEvictedUnderTheCap() {
+        assertEquals(0, LocationEvictor.evict(mDb, SETTINGS.length, SETTINGS[0]));
+        assertLocationsLeft(SETTINGS);
+    }
+
+    // Checks the locations that are left and that weather and history only remain for those
+    private void assertLocationsLeft(String... settings) {
+        Cursor cursor = mDb.query(LocationEntry.TABLE_NAME,
+                new String[]{LocationEntry.COLUMN_LOCATION_SETTING}, null, null, null, null,
+                LocationEntry.COLUMN_LAST_ACCESSED + " ASC");
+        try {
+            assertEquals("Error: Wrong number of locations left", settings.length, cursor.getCount());
+            for (int i = 0; cursor.moveToNext(); i++) {
+                assertEquals(settings[i], cursor.getString(0));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        String orphans = " NOT IN (SELECT " + LocationEntry._ID + " FROM " +
+                LocationEntry.TABLE_NAME + ")";
+        assertEquals("Error: Weather left behind for an evicted location", 0,
+                DatabaseUtils.queryNumEntries(mDb, WeatherEntry.TABLE_NAME,
+                        WeatherEntry.COLUMN_LOC_KEY + orphans));
+        assertEquals("Error: History left behind for an evicted location", 0,
+                DatabaseUtils.queryNumEntries(mDb, HistoryEntry.TABLE_NAME,
+                        HistoryEntry.COLUMN_LOC_KEY + orphans));
+        assertEquals("Error: Weather of a kept location was deleted", settings.length,
+                DatabaseUtils.queryNumEntries(mDb, WeatherEntry.TABLE_NAME));
+    }
+}
@@ -61,6 +61,11 @@ public class TestProvider extends AndroidTestCase {
                 null,
                 null
         );
+        mContext.getContentResolver().delete(
+                WeatherContract.HistoryEntry.CONTENT_URI,
+                null,
+                null
+        );
 
         Cursor cursor = mContext.getContentResolver().query(
                 WeatherEntry.CONTENT_URI,
@@ -170,8 +175,7 @@ public class TestProvider extends AndroidTestCase {
      */
     public void testBasicWeatherQuery() {
         // insert our test records into the database
-        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
-        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        SQLiteDatabase db = TestUtilities.getProviderDatabase(mContext);
 
         ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
         long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
@@ -179,11 +183,10 @@ public class TestProvider extends AndroidTestCase {
         // Fantastic.  Now that we have a location, add some weather!
         ContentValues weatherValues = TestUtilities.createWeatherValues(locationRowId);
 
-        long weatherRowId = db.insert(WeatherEntry.TABLE_NAME, null, weatherValues);
+        long weatherRowId = db.insert(WeatherEntry.TABLE_NAME, null,
+                ConditionDictionary.encode(db, weatherValues, null));
         assertTrue("Unable to Insert WeatherEntry into the Database", weatherRowId != -1);
 
-        db.close();
-
         // Test the basic content provider query
         Cursor weatherCursor = mContext.getContentResolver().query(
                 WeatherEntry.CONTENT_URI,
@@ -204,8 +207,7 @@ public class TestProvider extends AndroidTestCase {
      */
     public void testBasicLocationQueries() {
         // insert our test records into the database
-        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
-        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        SQLiteDatabase db = TestUtilities.getProviderDatabase(mContext);
 
         ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
         long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
@@ -512,4 +514,149 @@ public class TestProvider extends AndroidTestCase {
         }
         cursor.close();
     }
+
+    /*
+        The location based URIs are served from the provider's query cache.  This makes sure that
+        a write through the provider is visible to the next query of the same URI.
+     */
+    public void testQueryCacheInvalidation() {
+        ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, testValues);
+        long locationRowId = ContentUris.parseId(locationUri);
+
+        Uri weatherForLocationUri = WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION);
+
+        // Prime the cache with an empty result
+        Cursor cursor = mContext.getContentResolver().query(weatherForLocationUri,
+                null, null, null, null);
+        assertEquals("Error: Expected no weather before the bulk insert", 0, cursor.getCount());
+        cursor.close();
+
+        ContentValues[] bulkInsertContentValues = createBulkInsertWeatherValues(locationRowId);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, bulkInsertContentValues);
+
+        cursor = mContext.getContentResolver().query(weatherForLocationUri,
+                null, null, null, WeatherEntry.COLUMN_DATE + " ASC");
+        assertEquals("Error: Cached result was not invalidated by bulkInsert",
+                BULK_INSERT_RECORDS_TO_INSERT, cursor.getCount());
+        cursor.close();
+
+        // And a repeated query has to return the same rows
+        cursor = mContext.getContentResolver().query(weatherForLocationUri,
+                null, null, null, WeatherEntry.COLUMN_DATE + " ASC");
+        cursor.moveToFirst();
+        for ( int i = 0; i < BULK_INSERT_RECORDS_TO_INSERT; i++, cursor.moveToNext() ) {
+            TestUtilities.validateCurrentRecord("testQueryCacheInvalidation.  Error validating cached WeatherEntry " + i,
+                    cursor, bulkInsertContentValues[i]);
+        }
+        cursor.close();
+
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        cursor = mContext.getContentResolver().query(weatherForLocationUri,
+                null, null, null, WeatherEntry.COLUMN_DATE + " ASC");
+        assertEquals("Error: Cached result was not invalidated by delete", 0, cursor.getCount());
+        cursor.close();
+    }
+
+    /*
+        Reading a location's weather writes its last_accessed, which the weather/* results carry.
+        A cached result must not keep reporting the value from before the read.  The setting is
+        one no other test reads, so the provider hasn't written it within the hour yet.
+     */
+    public void testLocationTouchIsNotCachedStale() {
+        String locationSetting = "touch_test_location";
+        ContentValues locationValues = TestUtilities.createNorthPoleLocationValues();
+        locationValues.put(LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
+        locationValues.put(LocationEntry.COLUMN_LAST_ACCESSED, 1L);
+        long locationRowId = ContentUris.parseId(
+                mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, locationValues));
+        mContext.getContentResolver().insert(WeatherEntry.CONTENT_URI,
+                TestUtilities.createWeatherValues(locationRowId));
+
+        Uri weatherForLocationUri = WeatherEntry.buildWeatherLocation(locationSetting);
+        String[] projection = {LocationEntry.COLUMN_LAST_ACCESSED};
+        for (int i = 0; i < 2; i++) {
+            Cursor cursor = mContext.getContentResolver().query(weatherForLocationUri,
+                    projection, null, null, null);
+            try {
+                assertTrue(cursor.moveToFirst());
+                assertTrue("Error: Query " + i + " returned a stale last_accessed",
+                        cursor.getLong(0) > 1L);
+            } finally {
+                cursor.close();
+            }
+        }
+    }
+
+    /*
+        The weather table has no rowid, its _ID is derived from the location and the day.  It
+        has to match the inserted URI and survive the row being replaced by the next sync, since
+        the forecast list and the widget use it as a stable id.
+     */
+    public void testWeatherIdIsStable() {
+        long locationRowId = ContentUris.parseId(mContext.getContentResolver().insert(
+                LocationEntry.CONTENT_URI, TestUtilities.createNorthPoleLocationValues()));
+        ContentValues weatherValues = TestUtilities.createWeatherValues(locationRowId);
+
+        Uri weatherUri = mContext.getContentResolver().insert(WeatherEntry.CONTENT_URI,
+                new ContentValues(weatherValues));
+        long expectedId = WeatherEntry.buildWeatherId(locationRowId,
+                WeatherContract.normalizeDate(TestUtilities.TEST_DATE));
+        assertEquals("Error: Inserted URI doesn't carry the derived id",
+                expectedId, ContentUris.parseId(weatherUri));
+
+        // The next sync replaces the day
+        weatherValues.put(WeatherEntry.COLUMN_MAX_TEMP, 80);
+        mContext.getContentResolver().insert(WeatherEntry.CONTENT_URI, weatherValues);
+
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION),
+                new String[]{WeatherEntry._ID, WeatherEntry.COLUMN_MAX_TEMP}, null, null, null);
+        try {
+            assertEquals("Error: Replacing the day should leave one row", 1, cursor.getCount());
+            assertTrue(cursor.moveToFirst());
+            assertEquals("Error: _ID changed when the day was replaced",
+                    expectedId, cursor.getLong(0));
+            assertEquals(80.0, cursor.getDouble(1));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    // Following the pages by the date of their last row returns every day once, in order
+    public void testWeatherPages() {
+        long locationRowId = ContentUris.parseId(mContext.getContentResolver().insert(
+                LocationEntry.CONTENT_URI, TestUtilities.createNorthPoleLocationValues()));
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                createBulkInsertWeatherValues(locationRowId));
+
+        final int pageSize = 4;
+        String[] projection = {WeatherEntry.COLUMN_DATE};
+        Uri pageUri = WeatherEntry.buildWeatherLocationWithStartDate(
+                TestUtilities.TEST_LOCATION, TestUtilities.TEST_DATE, pageSize);
+        long lastDate = -1;
+        int pages = 0;
+        int rows = 0;
+        while (pageUri != null) {
+            Cursor page = mContext.getContentResolver().query(pageUri, projection, null, null, null);
+            try {
+                assertTrue("Error: Page larger than its limit", page.getCount() <= pageSize);
+                while (page.moveToNext()) {
+                    assertTrue("Error: Pages out of order or overlapping",
+                            page.getLong(0) > lastDate);
+                    lastDate = page.getLong(0);
+                    rows++;
+                }
+                pages++;
+                pageUri = page.getCount() < pageSize ? null :
+                        WeatherEntry.buildWeatherLocationPage(
+                                TestUtilities.TEST_LOCATION, lastDate, pageSize);
+            } finally {
+                page.close();
+            }
+        }
+        assertEquals("Error: Pages didn't return every day",
+                BULK_INSERT_RECORDS_TO_INSERT, rows);
+        assertEquals((BULK_INSERT_RECORDS_TO_INSERT + pageSize - 1) / pageSize, pages);
+    }
 }
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/*
+    Runs EXPLAIN QUERY PLAN over every query path of the WeatherProvider and fails if SQLite
+    would scan a whole table or sort the result in a temporary b-tree.  Both grow linearly with
+    the amount of history and the number of locations, so they should never sneak back in.
+ */
+public class TestQueryPlan extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestQueryPlan.class.getSimpleName();
+
+    // The columns the forecast list asks for, which is the widest projection the app uses
+    private static final String[] FORECAST_COLUMNS = {
+            WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            LocationEntry.COLUMN_LOCATION_SETTING,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            LocationEntry.COLUMN_COORD_LAT,
+            LocationEntry.COLUMN_COORD_LONG
+    };
+
+    private static final String SORT_ORDER = WeatherEntry.COLUMN_DATE + " ASC";
+
+    private SQLiteDatabase mDb;
+
+    /*
+        The plans only depend on the schema, so an empty in-memory database will do, and the
+        one the provider shares is left alone.
+     */
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDb = SQLiteDatabase.create(null);
+        new WeatherDbHelper(mContext).onCreate(mDb);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mDb.close();
+        super.tearDown();
+    }
+
+    public void testWeatherWithLocationPlan() {
+        Uri uri = WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION);
+        assertIndexedPlan(WeatherProvider.buildWeatherQuerySql(uri, FORECAST_COLUMNS, SORT_ORDER),
+                new String[]{TestUtilities.TEST_LOCATION});
+    }
+
+    public void testWeatherWithLocationAndStartDatePlan() {
+        Uri uri = WeatherEntry.buildWeatherLocationWithStartDate(
+                TestUtilities.TEST_LOCATION, TestUtilities.TEST_DATE);
+        assertIndexedPlan(WeatherProvider.buildWeatherQuerySql(uri, FORECAST_COLUMNS, SORT_ORDER),
+                new String[]{TestUtilities.TEST_LOCATION,
+                        Long.toString(WeatherEntry.getStartDateFromUri(uri))});
+    }
+
+    public void testWeatherWithLocationAndDatePlan() {
+        Uri uri = WeatherEntry.buildWeatherLocationWithDate(
+                TestUtilities.TEST_LOCATION, TestUtilities.TEST_DATE);
+        assertIndexedPlan(WeatherProvider.buildWeatherQuerySql(uri, FORECAST_COLUMNS, null),
+                new String[]{TestUtilities.TEST_LOCATION,
+                        Long.toString(WeatherEntry.getDateFromUri(uri))});
+    }
+
+    // Every page seeks to the day after the previous one and stops after its limit
+    public void testWeatherPagePlan() {
+        Uri uri = WeatherEntry.buildWeatherLocationPage(
+                TestUtilities.TEST_LOCATION, TestUtilities.TEST_DATE, 10);
+        assertIndexedPlan(WeatherProvider.buildWeatherQuerySql(uri, FORECAST_COLUMNS, null),
+                new String[]{TestUtilities.TEST_LOCATION,
+                        Long.toString(WeatherEntry.getAfterDateFromUri(uri) + 1)});
+    }
+
+    // The sync adapter looks up its location by setting before every insert
+    public void testLocationBySettingPlan() {
+        assertIndexedPlan("SELECT " + LocationEntry._ID + " FROM " + LocationEntry.TABLE_NAME +
+                        " WHERE " + LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                new String[]{TestUtilities.TEST_LOCATION});
+    }
+
+    // ... and prunes old weather by date after every sync
+    public void testPruneByDatePlan() {
+        assertIndexedPlan("DELETE FROM " + WeatherEntry.TABLE_NAME +
+                        " WHERE " + WeatherEntry.COLUMN_DATE + " <= ?",
+                new String[]{Long.toString(TestUtilities.TEST_DATE)});
+    }
+
+    private void assertIndexedPlan(String sql, String[] selectionArgs) {
+        Cursor plan = mDb.rawQuery("EXPLAIN QUERY PLAN " + sql, selectionArgs);
+        try {
+            assertTrue("Error: No query plan returned for " + sql, plan.moveToFirst());
+            int detailIndex = plan.getColumnIndex("detail");
+            do {
+                String detail = plan.getString(detailIndex);
+                Log.d(LOG_TAG, sql + " -> " + detail);
+                assertFalse("Error: Full scan in plan '" + detail + "' for " + sql,
+                        detail.startsWith("SCAN"));
+                assertFalse("Error: Temporary sort in plan '" + detail + "' for " + sql,
+                        detail.contains("TEMP B-TREE"));
+            } while (plan.moveToNext());
+        } finally {
+            plan.close();
+        }
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.test.AndroidTestCase;
+import android.text.format.DateUtils;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/*
+    Runs the same workloads on the SQLite and the in-memory storage engines: a sync's bulk
+    upsert, forecast range queries, single day queries and pruning the days that are over.  The
+    test fails if the engines return different results; the timings go to the log.  Run it on a
+    device to compare:
+
+        adb logcat -s TestStorageEngineBenchmark
+ */
+public class TestStorageEngineBenchmark extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestStorageEngineBenchmark.class.getSimpleName();
+
+    // What the forecast list reads, without the condition id that only the database assigns
+    private static final String[] FORECAST_COLUMNS = {
+            WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            LocationEntry.COLUMN_LOCATION_SETTING,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            LocationEntry.COLUMN_COORD_LAT,
+            LocationEntry.COLUMN_COORD_LONG
+    };
+
+    private static final String SORT_ORDER = WeatherEntry.COLUMN_DATE + " ASC";
+
+    private static final int LOCATIONS = 20;
+    private static final int DAYS = 365;
+    private static final int RANGE_DAYS = 14;
+    private static final int ROUNDS = 50;
+
+    private static final long FIRST_DAY = WeatherContract.normalizeDate(TestUtilities.TEST_DATE);
+
+    private SQLiteOpenHelper mOpenHelper;
+    private String[] mSettings;
+    private ContentValues[] mValues;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAll();
+        mOpenHelper = WeatherDao.getInstance(mContext).getOpenHelper();
+
+        mSettings = new String[LOCATIONS];
+        long[] locationIds = new long[LOCATIONS];
+        for (int location = 0; location < LOCATIONS; location++) {
+            ContentValues values = TestUtilities.createNorthPoleLocationValues();
+            mSettings[location] = TestUtilities.TEST_LOCATION + "-" + location;
+            values.put(LocationEntry.COLUMN_LOCATION_SETTING, mSettings[location]);
+            locationIds[location] = ContentUris.parseId(
+                    mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, values));
+        }
+
+        // Locations are synced one after another, so their days are interleaved on insert
+        mValues = new ContentValues[DAYS * LOCATIONS];
+        for (int day = 0; day < DAYS; day++) {
+            for (int location = 0; location < LOCATIONS; location++) {
+                ContentValues values = TestUtilities.createWeatherValues(locationIds[location]);
+                values.put(WeatherEntry.COLUMN_DATE, dayAt(day));
+                values.put(WeatherEntry.COLUMN_MIN_TEMP, 65 - day % 10);
+                values.put(WeatherEntry.COLUMN_MAX_TEMP, 75 + day % 10);
+                values.put(WeatherEntry.COLUMN_SHORT_DESC, day % 2 == 0 ? "Clear" : "Clouds");
+                mValues[day * LOCATIONS + location] = values;
+            }
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        // Also drops whatever the provider cached while the engines wrote around it
+        deleteAll();
+        super.tearDown();
+    }
+
+    public void testEnginesAgree() {
+        WeatherStorageEngine sqlite = new SqliteWeatherStorage(mOpenHelper);
+        WeatherStorageEngine memory = new InMemoryWeatherStorage(mOpenHelper);
+
+        assertEquals(mValues.length, sqlite.bulkUpsert(mValues));
+        assertEquals(mValues.length, memory.bulkUpsert(mValues));
+        // Writing the same days again replaces them
+        assertEquals(mValues.length, memory.bulkUpsert(mValues));
+
+        for (String setting : mSettings) {
+            assertEquals("Error: Engines returned different forecasts",
+                    dump(sqlite.queryFrom(setting, dayAt(DAYS - RANGE_DAYS), FORECAST_COLUMNS,
+                            SORT_ORDER)),
+                    dump(memory.queryFrom(setting, dayAt(DAYS - RANGE_DAYS), FORECAST_COLUMNS,
+                            SORT_ORDER)));
+            assertEquals("Error: Engines returned different days",
+                    dump(sqlite.queryDay(setting, dayAt(DAYS / 2), FORECAST_COLUMNS, null)),
+                    dump(memory.queryDay(setting, dayAt(DAYS / 2), FORECAST_COLUMNS, null)));
+        }
+
+        assertEquals("Error: Engines pruned different numbers of days",
+                sqlite.prune(dayAt(DAYS / 2)), memory.prune(dayAt(DAYS / 2)));
+        assertEquals("Error: Engines kept different days after pruning",
+                dump(sqlite.queryFrom(mSettings[0], 0, FORECAST_COLUMNS, SORT_ORDER)),
+                dump(memory.queryFrom(mSettings[0], 0, FORECAST_COLUMNS, SORT_ORDER)));
+    }
+
+    public void testWorkloads() {
+        run("sqlite", new SqliteWeatherStorage(mOpenHelper));
+        run("in-memory", new InMemoryWeatherStorage(mOpenHelper));
+    }
+
+    private void run(String name, WeatherStorageEngine engine) {
+        long start = System.nanoTime();
+        engine.bulkUpsert(mValues);
+        long upsertNanos = System.nanoTime() - start;
+
+        long rangeNanos = 0;
+        long dayNanos = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            for (String setting : mSettings) {
+                start = System.nanoTime();
+                readAll(engine.queryFrom(setting, dayAt(DAYS - RANGE_DAYS), FORECAST_COLUMNS,
+                        SORT_ORDER));
+                rangeNanos += System.nanoTime() - start;
+
+                start = System.nanoTime();
+                readAll(engine.queryDay(setting, dayAt(round % DAYS), FORECAST_COLUMNS, null));
+                dayNanos += System.nanoTime() - start;
+            }
+        }
+
+        start = System.nanoTime();
+        engine.prune(dayAt(DAYS - RANGE_DAYS - 1));
+        long pruneNanos = System.nanoTime() - start;
+
+        int queries = ROUNDS * LOCATIONS;
+        Log.i(LOG_TAG, String.format("%s: upsert of %d days %.2f ms, %d-day range %.3f ms, " +
+                        "single day %.3f ms, prune %.2f ms",
+                name, mValues.length, upsertNanos / 1e6, RANGE_DAYS,
+                rangeNanos / 1e6 / queries, dayNanos / 1e6 / queries, pruneNanos / 1e6));
+    }
+
+    private static long dayAt(int day) {
+        return FIRST_DAY + day * DateUtils.DAY_IN_MILLIS;
+    }
+
+    // Every value of every row, as the cursor returns them as strings
+    private static String dump(Cursor cursor) {
+        StringBuilder builder = new StringBuilder();
+        try {
+            while (cursor.moveToNext()) {
+                for (int i = 0; i < cursor.getColumnCount(); i++) {
+                    builder.append(cursor.getColumnName(i)).append('=')
+                            .append(cursor.getString(i)).append(' ');
+                }
+                builder.append('\n');
+            }
+        } finally {
+            cursor.close();
+        }
+        return builder.toString();
+    }
+
+    private static void readAll(Cursor cursor) {
+        try {
+            while (cursor.moveToNext()) {
+                cursor.getLong(1);
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void deleteAll() {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+    }
+}
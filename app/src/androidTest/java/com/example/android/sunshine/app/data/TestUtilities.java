@@ -92,14 +92,21 @@ public class TestUtilities extends AndroidTestCase {
         return testValues;
     }
 
+    /*
+        The database behind the provider, whether it is kept on disk or in memory.  Don't close
+        it, an in-memory database would be gone with its connection.
+     */
+    static SQLiteDatabase getProviderDatabase(Context context) {
+        return WeatherDao.getInstance(context).getOpenHelper().getWritableDatabase();
+    }
+
     /*
         Students: You can uncomment this function once you have finished creating the
         LocationEntry part of the WeatherContract as well as the WeatherDbHelper.
      */
     static long insertNorthPoleLocationValues(Context context) {
         // insert our test records into the database
-        WeatherDbHelper dbHelper = new WeatherDbHelper(context);
-        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        SQLiteDatabase db = getProviderDatabase(context);
         ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
 
         long locationRowId;
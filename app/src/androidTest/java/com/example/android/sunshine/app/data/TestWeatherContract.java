@@ -15,8 +15,16 @@
  */
 package com.example.android.sunshine.app.data;
 
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
 import android.test.AndroidTestCase;
+import android.text.format.DateUtils;
+
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.Calendar;
+import java.util.TimeZone;
 
 /*
     Students: This is NOT a complete test for the WeatherContract --- just for the functions
@@ -42,4 +50,82 @@ public class TestWeatherContract extends AndroidTestCase {
                 locationUri.toString(),
                 "content://com.example.android.sunshine.app/weather/%2FNorth%20Pole");
     }
+
+    public void testBuildWeatherLocationPage() {
+        Uri pageUri = WeatherContract.WeatherEntry.buildWeatherLocationPage(
+                TEST_WEATHER_LOCATION, TEST_WEATHER_DATE, 7);
+        assertEquals("Error: Weather location not properly appended to the page Uri",
+                TEST_WEATHER_LOCATION,
+                WeatherContract.WeatherEntry.getLocationSettingFromUri(pageUri));
+        assertEquals(TEST_WEATHER_DATE,
+                WeatherContract.WeatherEntry.getAfterDateFromUri(pageUri));
+        assertEquals(7, WeatherContract.WeatherEntry.getLimitFromUri(pageUri));
+
+        Uri locationUri = WeatherContract.WeatherEntry.buildWeatherLocation(TEST_WEATHER_LOCATION);
+        assertEquals("Error: Plain weather location Uri should not be paged",
+                0, WeatherContract.WeatherEntry.getLimitFromUri(locationUri));
+        assertEquals(-1, WeatherContract.WeatherEntry.getAfterDateFromUri(locationUri));
+    }
+
+    /*
+        The _ID of a weather row is derived from its day.  In Europe/London the spring change
+        moves Monday's midnight to 23:00 UTC on Sunday, and the autumn one moves Sunday's to
+        midnight UTC; each local day must still get an id of its own, the same in Java and in
+        the SQL the provider runs.
+     */
+    public void testWeatherIdAcrossDaylightSavingTime() {
+        TimeZone london = TimeZone.getTimeZone("Europe/London");
+        long locationId = 3;
+        SQLiteDatabase db = SQLiteDatabase.create(null);
+        try {
+            db.execSQL("CREATE TABLE " + WeatherEntry.TABLE_NAME + " (" +
+                    WeatherEntry.COLUMN_LOC_KEY + " INTEGER, " +
+                    WeatherEntry.COLUMN_DATE + " INTEGER)");
+            // Around March 27th and October 30th 2016
+            assertWeatherIds(db, london, locationId, 2016, Calendar.MARCH, 25);
+            assertWeatherIds(db, london, locationId, 2016, Calendar.OCTOBER, 28);
+        } finally {
+            db.close();
+        }
+    }
+
+    private void assertWeatherIds(SQLiteDatabase db, TimeZone timeZone, long locationId,
+                                  int year, int month, int firstDay) {
+        Calendar local = Calendar.getInstance(timeZone);
+        local.clear();
+        local.set(year, month, firstDay);
+        Calendar utc = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        long previousId = -1;
+        for (int i = 0; i < 5; i++) {
+            long date = local.getTimeInMillis();
+            utc.clear();
+            utc.set(local.get(Calendar.YEAR), local.get(Calendar.MONTH),
+                    local.get(Calendar.DAY_OF_MONTH));
+            long localDay = utc.getTimeInMillis() / DateUtils.DAY_IN_MILLIS;
+
+            long id = WeatherEntry.buildWeatherId(locationId, date);
+            assertEquals("Error: Id of " + date + " isn't derived from its local day",
+                    locationId * WeatherEntry.IDS_PER_LOCATION + localDay, id);
+            if (previousId != -1) {
+                assertEquals("Error: Ids of consecutive days at " + date + " aren't consecutive",
+                        previousId + 1, id);
+            }
+            previousId = id;
+
+            db.delete(WeatherEntry.TABLE_NAME, null, null);
+            db.execSQL("INSERT INTO " + WeatherEntry.TABLE_NAME + " VALUES (?, ?)",
+                    new Object[]{locationId, date});
+            Cursor cursor = db.rawQuery("SELECT " + WeatherDbHelper.WEATHER_ID_EXPRESSION +
+                    " FROM " + WeatherEntry.TABLE_NAME, null);
+            try {
+                assertTrue(cursor.moveToFirst());
+                assertEquals("Error: The provider's SQL id of " + date + " differs from Java's",
+                        id, cursor.getLong(0));
+            } finally {
+                cursor.close();
+            }
+
+            local.add(Calendar.DAY_OF_MONTH, 1);
+        }
+    }
 }
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentUris;
+import android.database.Cursor;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/*
+    Checks that the in-process DAO returns the same forecast as the ContentProvider, and that it
+    sees the provider's writes straight away.
+ */
+public class TestWeatherDao extends AndroidTestCase {
+
+    private static final String[] FORECAST_COLUMNS = {
+            WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP
+    };
+
+    private WeatherDao mDao;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        mDao = WeatherDao.getInstance(mContext);
+    }
+
+    public void testLocationId() {
+        assertEquals("Error: Unknown location should not be found",
+                -1, mDao.locationId(TestUtilities.TEST_LOCATION));
+
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI,
+                TestUtilities.createNorthPoleLocationValues());
+        assertEquals("Error: DAO didn't see the location inserted through the provider",
+                ContentUris.parseId(locationUri), mDao.locationId(TestUtilities.TEST_LOCATION));
+    }
+
+    public void testForecastMatchesProvider() {
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI,
+                TestUtilities.createNorthPoleLocationValues());
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                TestProvider.createBulkInsertWeatherValues(ContentUris.parseId(locationUri)));
+
+        WeatherDao.Forecast forecast =
+                mDao.forecastFor(TestUtilities.TEST_LOCATION, TestUtilities.TEST_DATE);
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocationWithStartDate(
+                        TestUtilities.TEST_LOCATION, TestUtilities.TEST_DATE),
+                FORECAST_COLUMNS, null, null, WeatherEntry.COLUMN_DATE + " ASC");
+        try {
+            assertEquals("Error: DAO and provider returned a different number of days",
+                    cursor.getCount(), forecast.size());
+            for (int day = 0; cursor.moveToNext(); day++) {
+                assertEquals(cursor.getLong(0), forecast.getId(day));
+                assertEquals(cursor.getLong(1), forecast.getDate(day));
+                assertEquals(cursor.getInt(2), forecast.getWeatherId(day));
+                assertEquals(cursor.getString(3), forecast.getShortDesc(day));
+                assertEquals(cursor.getDouble(4), forecast.getMaxTemp(day));
+                assertEquals(cursor.getDouble(5), forecast.getMinTemp(day));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public void testTodayForUnknownLocationIsEmpty() {
+        assertTrue("Error: Expected no forecast for a location that was never synced",
+                mDao.today("nowhere").isEmpty());
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.HistoryEntry;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.SummaryEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+
+/*
+    Tests that the archiver moves past days into the history and downsamples months that have
+    aged past the retention period into weekly rows, and that the summaries read across both.
+ */
+public class TestWeatherHistory extends AndroidTestCase {
+
+    private static final long LOCATION_ID = 1;
+
+    private SQLiteDatabase mDb;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDb = SQLiteDatabase.create(null);
+        new WeatherDbHelper(mContext).onCreate(mDb);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mDb.close();
+        super.tearDown();
+    }
+
+    public void testArchiveMovesPastDays() {
+        for (int day = 1; day <= 10; day++) {
+            insertWeather(date(2014, Calendar.DECEMBER, day), day % 2 == 0 ? 500 : 800, day);
+        }
+
+        int archived = WeatherHistoryArchiver.archive(mDb,
+                date(2014, Calendar.DECEMBER, 6), date(2014, Calendar.SEPTEMBER, 1));
+        assertEquals("Error: Wrong number of days archived", 6, archived);
+
+        assertEquals("Error: Archived days still in the weather table", 4,
+                DatabaseUtils.queryNumEntries(mDb, WeatherEntry.TABLE_NAME));
+
+        Cursor cursor = queryHistory();
+        try {
+            assertEquals("Error: Archived days missing from the history", 6, cursor.getCount());
+            for (int day = 1; cursor.moveToNext(); day++) {
+                assertEquals(HistoryEntry.GRANULARITY_DAY, cursor.getInt(
+                        cursor.getColumnIndex(HistoryEntry.COLUMN_GRANULARITY)));
+                assertEquals(date(2014, Calendar.DECEMBER, day), cursor.getLong(
+                        cursor.getColumnIndex(HistoryEntry.COLUMN_DATE)));
+                assertEquals(201412, cursor.getInt(
+                        cursor.getColumnIndex(HistoryEntry.COLUMN_MONTH)));
+                assertEquals(1, cursor.getInt(
+                        cursor.getColumnIndex(HistoryEntry.COLUMN_DAY_COUNT)));
+                assertEquals("Error: Rainy day flag wrong for day " + day, day % 2 == 0 ? 1 : 0,
+                        cursor.getInt(cursor.getColumnIndex(HistoryEntry.COLUMN_RAINY_DAYS)));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public void testOldMonthsAreCompactedIntoWeeks() {
+        // All of January, days 2 and 30 rainy
+        for (int day = 1; day <= 31; day++) {
+            insertWeather(date(2014, Calendar.JANUARY, day),
+                    day == 2 || day == 30 ? 501 : 800, day);
+        }
+        // and the first days of February, which stays inside the retention period
+        for (int day = 1; day <= 3; day++) {
+            insertWeather(date(2014, Calendar.FEBRUARY, day), 800, day);
+        }
+
+        WeatherHistoryArchiver.archive(mDb,
+                date(2014, Calendar.FEBRUARY, 3), date(2014, Calendar.FEBRUARY, 2));
+
+        Cursor cursor = queryHistory();
+        try {
+            assertEquals("Error: January should be 4 weeks, February 3 days",
+                    7, cursor.getCount());
+
+            int[] weekStarts = {1, 8, 15, 22};
+            int[] weekDays = {7, 7, 7, 10};
+            int[] weekRainyDays = {1, 0, 0, 1};
+            for (int week = 0; week < weekStarts.length; week++) {
+                assertTrue(cursor.moveToNext());
+                assertEquals(HistoryEntry.GRANULARITY_WEEK, cursor.getInt(
+                        cursor.getColumnIndex(HistoryEntry.COLUMN_GRANULARITY)));
+                assertEquals(date(2014, Calendar.JANUARY, weekStarts[week]), cursor.getLong(
+                        cursor.getColumnIndex(HistoryEntry.COLUMN_DATE)));
+                assertEquals(weekDays[week], cursor.getInt(
+                        cursor.getColumnIndex(HistoryEntry.COLUMN_DAY_COUNT)));
+                assertEquals(weekRainyDays[week], cursor.getInt(
+                        cursor.getColumnIndex(HistoryEntry.COLUMN_RAINY_DAYS)));
+                assertEquals(weekRainyDays[week] == 1 ? 501 : 800, cursor.getInt(
+                        cursor.getColumnIndex(HistoryEntry.COLUMN_WEATHER_ID)));
+
+                // max is the day of the month, so the week's max is its last day and its
+                // humidity, which is the day as well, averages to the middle of the week
+                int lastDay = weekStarts[week] + weekDays[week] - 1;
+                assertEquals((double) lastDay, cursor.getDouble(
+                        cursor.getColumnIndex(HistoryEntry.COLUMN_MAX_TEMP)));
+                assertEquals((weekStarts[week] + lastDay) / 2.0, cursor.getDouble(
+                        cursor.getColumnIndex(HistoryEntry.COLUMN_HUMIDITY)), 1e-9);
+            }
+            while (cursor.moveToNext()) {
+                assertEquals("Error: February is inside the retention period",
+                        HistoryEntry.GRANULARITY_DAY, cursor.getInt(
+                                cursor.getColumnIndex(HistoryEntry.COLUMN_GRANULARITY)));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    // A day archived after its month was compacted is folded into the existing week
+    public void testLateDayIsFoldedIntoCompactedWeek() {
+        for (int day = 1; day <= 6; day++) {
+            insertWeather(date(2014, Calendar.JANUARY, day), 800, 10);
+        }
+        WeatherHistoryArchiver.archive(mDb,
+                date(2014, Calendar.JANUARY, 31), date(2014, Calendar.MARCH, 1));
+
+        insertWeather(date(2014, Calendar.JANUARY, 7), 800, 17);
+        WeatherHistoryArchiver.archive(mDb,
+                date(2014, Calendar.JANUARY, 31), date(2014, Calendar.MARCH, 1));
+
+        Cursor cursor = queryHistory();
+        try {
+            assertEquals("Error: The late day should have joined its week", 1, cursor.getCount());
+            assertTrue(cursor.moveToFirst());
+            assertEquals(7, cursor.getInt(cursor.getColumnIndex(HistoryEntry.COLUMN_DAY_COUNT)));
+            assertEquals(11.0, cursor.getDouble(
+                    cursor.getColumnIndex(HistoryEntry.COLUMN_HUMIDITY)), 1e-9);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    // Weeks of February come from the history, weeks of March from the forecast
+    public void testWeeklySummaryCombinesHistoryAndForecast() {
+        mDb.execSQL("INSERT INTO " + LocationEntry.TABLE_NAME + " (" + LocationEntry._ID + ", " +
+                LocationEntry.COLUMN_LOCATION_SETTING + ", " + LocationEntry.COLUMN_CITY_NAME + ", " +
+                LocationEntry.COLUMN_COORD_LAT + ", " + LocationEntry.COLUMN_COORD_LONG +
+                ") VALUES (?, ?, 'North Pole', 64.7488, -147.353)",
+                new Object[]{LOCATION_ID, TestUtilities.TEST_LOCATION});
+        for (int day = 1; day <= 14; day++) {
+            insertWeather(date(2014, Calendar.FEBRUARY, day), day == 3 ? 502 : 800, day);
+            insertWeather(date(2014, Calendar.MARCH, day), day == 10 ? 302 : 800, day);
+        }
+        // February is compacted into weeks, March stays in the weather table
+        WeatherHistoryArchiver.archive(mDb,
+                date(2014, Calendar.FEBRUARY, 28), date(2014, Calendar.MARCH, 1));
+
+        Cursor cursor = WeatherSummaries.query(mDb, SummaryEntry.buildSummaryUri(
+                TestUtilities.TEST_LOCATION, date(2014, Calendar.FEBRUARY, 1),
+                date(2014, Calendar.MARCH, 31), SummaryEntry.BUCKET_WEEK), null, null);
+        try {
+            assertEquals("Error: Expected two weeks of February and two of March",
+                    4, cursor.getCount());
+            int[] rainyDays = {1, 0, 0, 1};
+            for (int week = 0; cursor.moveToNext(); week++) {
+                int startDay = week % 2 == 0 ? 1 : 8;
+                assertEquals(date(2014, week < 2 ? Calendar.FEBRUARY : Calendar.MARCH, startDay),
+                        cursor.getLong(cursor.getColumnIndex(SummaryEntry.COLUMN_DATE)));
+                assertEquals(7, cursor.getInt(cursor.getColumnIndex(SummaryEntry.COLUMN_DAY_COUNT)));
+                assertEquals((double) startDay, cursor.getDouble(
+                        cursor.getColumnIndex(SummaryEntry.COLUMN_MIN_TEMP)));
+                assertEquals(startDay + 6.0, cursor.getDouble(
+                        cursor.getColumnIndex(SummaryEntry.COLUMN_MAX_TEMP)));
+                assertEquals(startDay + 3.0, cursor.getDouble(
+                        cursor.getColumnIndex(SummaryEntry.COLUMN_HUMIDITY)), 1e-9);
+                assertEquals(rainyDays[week], cursor.getInt(
+                        cursor.getColumnIndex(SummaryEntry.COLUMN_RAINY_DAYS)));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        cursor = WeatherSummaries.query(mDb, SummaryEntry.buildSummaryUri(
+                TestUtilities.TEST_LOCATION, date(2014, Calendar.MARCH, 2),
+                date(2014, Calendar.MARCH, 4), SummaryEntry.BUCKET_DAY), null, null);
+        try {
+            assertEquals("Error: Day buckets should be bounded by from and to",
+                    3, cursor.getCount());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private Cursor queryHistory() {
+        return mDb.query(HistoryEntry.TABLE_NAME, null, null, null, null, null,
+                HistoryEntry.COLUMN_DATE + " ASC");
+    }
+
+    // Uses the day for the temperatures and the humidity, so the aggregates are easy to check
+    private void insertWeather(long date, int weatherId, double value) {
+        mDb.execSQL("INSERT INTO " + WeatherEntry.TABLE_NAME + " (" +
+                WeatherEntry.COLUMN_LOC_KEY + ", " +
+                WeatherEntry.COLUMN_DATE + ", " +
+                WeatherEntry.COLUMN_CONDITION_KEY + ", " +
+                WeatherEntry.COLUMN_WEATHER_ID + ", " +
+                WeatherEntry.COLUMN_MIN_TEMP + ", " +
+                WeatherEntry.COLUMN_MAX_TEMP + ", " +
+                WeatherEntry.COLUMN_HUMIDITY + ", " +
+                WeatherEntry.COLUMN_PRESSURE + ", " +
+                WeatherEntry.COLUMN_WIND_SPEED + ", " +
+                WeatherEntry.COLUMN_DEGREES + ") VALUES (?, ?, ?, ?, ?, ?, ?, 1.3, 5.5, 1.1)",
+                new Object[]{LOCATION_ID, date, ConditionDictionary.idFor(mDb, "Test"),
+                        weatherId, value, value, value});
+    }
+
+    // Local midnight, the form the provider stores dates in
+    private static long date(int year, int month, int day) {
+        return new GregorianCalendar(year, month, day).getTimeInMillis();
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.test.AndroidTestCase;
+import android.text.format.DateUtils;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/*
+    Compares forecast range scans on the clustered weather table against the rowid layout it
+    replaced, where the (location_id, date) index had to be walked first and every row then
+    looked up by its rowid.  Both tables get the same rows; the timings go to the log and the
+    test only fails if the layouts disagree on the results.  Run it on a device to compare:
+
+        adb logcat -s TestWeatherLayoutBenchmark
+ */
+public class TestWeatherLayoutBenchmark extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestWeatherLayoutBenchmark.class.getSimpleName();
+
+    private static final String ROWID_TABLE = "weather_rowid";
+
+    // The version 5 weather table, under another name so both layouts fit in one database
+    private static final String SQL_CREATE_ROWID_TABLE = "CREATE TABLE " + ROWID_TABLE +
+            " (_id INTEGER PRIMARY KEY AUTOINCREMENT," +
+            "location_id INTEGER NOT NULL, date INTEGER NOT NULL, " +
+            "condition_id INTEGER NOT NULL, weather_id INTEGER NOT NULL," +
+            "min REAL NOT NULL, max REAL NOT NULL, humidity REAL NOT NULL, " +
+            "pressure REAL NOT NULL, wind REAL NOT NULL, degrees REAL NOT NULL, " +
+            " UNIQUE (location_id, date) ON CONFLICT REPLACE);";
+
+    private static final int LOCATIONS = 20;
+    private static final int DAYS = 365;
+    private static final int RANGE_DAYS = 14;
+    private static final int ROUNDS = 200;
+
+    private SQLiteDatabase mDb;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDb = SQLiteDatabase.create(null);
+        new WeatherDbHelper(mContext).onCreate(mDb);
+        mDb.execSQL(SQL_CREATE_ROWID_TABLE);
+
+        // Locations are synced one after another, so their days are interleaved on insert
+        mDb.beginTransaction();
+        try {
+            insertDays(WeatherEntry.TABLE_NAME);
+            insertDays(ROWID_TABLE);
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mDb.close();
+        super.tearDown();
+    }
+
+    public void testRangeScans() {
+        // Warm both tables up so neither pays for the first page reads
+        long clusteredSum = scan(WeatherEntry.TABLE_NAME);
+        long rowidSum = scan(ROWID_TABLE);
+        assertEquals("Error: Layouts returned different forecasts", rowidSum, clusteredSum);
+
+        long clusteredNanos = 0;
+        long rowidNanos = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            scan(WeatherEntry.TABLE_NAME);
+            clusteredNanos += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            scan(ROWID_TABLE);
+            rowidNanos += System.nanoTime() - start;
+        }
+        Log.i(LOG_TAG, String.format("%d rounds of %d-day scans over %d locations: " +
+                        "clustered %.2f ms, rowid %.2f ms per round",
+                ROUNDS, RANGE_DAYS, LOCATIONS,
+                clusteredNanos / 1e6 / ROUNDS, rowidNanos / 1e6 / ROUNDS));
+    }
+
+    // Reads a forecast for every location the way the provider does and sums up the dates seen
+    private long scan(String table) {
+        long sum = 0;
+        long from = TestUtilities.TEST_DATE + (DAYS - RANGE_DAYS) * DateUtils.DAY_IN_MILLIS;
+        for (int location = 1; location <= LOCATIONS; location++) {
+            Cursor cursor = mDb.rawQuery("SELECT date, weather_id, max, min FROM " + table +
+                            " WHERE location_id = ? AND date >= ? ORDER BY date ASC",
+                    new String[]{Integer.toString(location), Long.toString(from)});
+            try {
+                assertEquals(RANGE_DAYS, cursor.getCount());
+                while (cursor.moveToNext()) {
+                    sum += cursor.getLong(0);
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        return sum;
+    }
+
+    private void insertDays(String table) {
+        SQLiteStatement insert = mDb.compileStatement("INSERT INTO " + table +
+                " (location_id, date, condition_id, weather_id, min, max, humidity, pressure," +
+                " wind, degrees) VALUES (?, ?, 1, 800, ?, ?, 1.2, 1.3, 5.5, 1.1)");
+        try {
+            for (int day = 0; day < DAYS; day++) {
+                for (int location = 1; location <= LOCATIONS; location++) {
+                    insert.bindLong(1, location);
+                    insert.bindLong(2, TestUtilities.TEST_DATE + day * DateUtils.DAY_IN_MILLIS);
+                    insert.bindDouble(3, 65 - day % 10);
+                    insert.bindDouble(4, 75 + day % 10);
+                    insert.executeInsert();
+                }
+            }
+        } finally {
+            insert.close();
+        }
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDiskIOException;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.test.AndroidTestCase;
+import android.text.format.DateUtils;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+    Tests that bulk inserts from many threads at once are all committed, that each location's
+    batches are applied in the order they were submitted, and that the scheduler counts them.
+    A group that fails before it is written has to fail its callers rather than leave them
+    waiting, and shutting down has to write what is still queued, in order, with one writer.
+ */
+public class TestWriteScheduler extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestWriteScheduler.class.getSimpleName();
+
+    private static final int LOCATIONS = 8;
+    private static final int ROUNDS = 5;
+    private static final int DAYS = 14;
+
+    private WeatherDbHelper mDbHelper;
+    private WeatherWriteScheduler mScheduler;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        // An in-memory database, the snapshot file is never written
+        File snapshot = new File(mContext.getFilesDir(), "test-" + WeatherDbHelper.SNAPSHOT_NAME);
+        snapshot.delete();
+        mDbHelper = new WeatherDbHelper(mContext, snapshot);
+        mScheduler = new WeatherWriteScheduler(mDbHelper, new SqliteWeatherStorage(mDbHelper));
+
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        for (int location = 1; location <= LOCATIONS; location++) {
+            ContentValues values = TestUtilities.createNorthPoleLocationValues();
+            values.put(LocationEntry._ID, location);
+            values.put(LocationEntry.COLUMN_LOCATION_SETTING, "setting-" + location);
+            db.insert(LocationEntry.TABLE_NAME, null, values);
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mScheduler.shutdown();
+        mDbHelper.close();
+        super.tearDown();
+    }
+
+    public void testConcurrentSyncs() throws InterruptedException {
+        final AtomicInteger written = new AtomicInteger();
+        Thread[] syncs = new Thread[LOCATIONS];
+        for (int i = 0; i < LOCATIONS; i++) {
+            final long location = i + 1;
+            syncs[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    // Every round replaces the location's days, the last one has to stay
+                    for (int round = 0; round < ROUNDS; round++) {
+                        written.addAndGet(mScheduler.bulkUpsert(createDays(location, round)));
+                    }
+                }
+            });
+        }
+        for (Thread sync : syncs) {
+            sync.start();
+        }
+        for (Thread sync : syncs) {
+            sync.join();
+        }
+
+        assertEquals("Error: Days reported as written", LOCATIONS * ROUNDS * DAYS, written.get());
+        SQLiteDatabase db = mDbHelper.getReadableDatabase();
+        assertEquals("Error: Days missing after the syncs", LOCATIONS * DAYS,
+                DatabaseUtils.queryNumEntries(db, WeatherEntry.TABLE_NAME));
+        Cursor cursor = db.query(WeatherEntry.TABLE_NAME,
+                new String[]{WeatherEntry.COLUMN_MAX_TEMP}, null, null, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                assertEquals("Error: A location's batches were applied out of order",
+                        (double) ROUNDS - 1, cursor.getDouble(0));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        assertEquals(LOCATIONS * ROUNDS, mScheduler.getBatchCount());
+        assertTrue(mScheduler.getGroupCount() <= mScheduler.getBatchCount());
+        assertEquals(0, mScheduler.getQueueDepth());
+        Log.i(LOG_TAG, mScheduler.getBatchCount() + " batches in " +
+                mScheduler.getGroupCount() + " transactions, largest group " +
+                mScheduler.getLargestGroup() + ", largest queue " +
+                mScheduler.getLargestQueueDepth());
+    }
+
+    public void testFailedOpenFailsTheBatch() {
+        final boolean[] failing = {true};
+        // Only ever hands out the test's database, or fails to open it
+        SQLiteOpenHelper helper = new SQLiteOpenHelper(mContext, null, null, 1) {
+            @Override
+            public void onCreate(SQLiteDatabase db) {
+            }
+
+            @Override
+            public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            }
+
+            @Override
+            public SQLiteDatabase getWritableDatabase() {
+                if (failing[0]) {
+                    throw new SQLiteDiskIOException("disk I/O error");
+                }
+                return mDbHelper.getWritableDatabase();
+            }
+
+            @Override
+            public SQLiteDatabase getReadableDatabase() {
+                return getWritableDatabase();
+            }
+        };
+        WeatherWriteScheduler scheduler =
+                new WeatherWriteScheduler(helper, new SqliteWeatherStorage(helper));
+        try {
+            for (int i = 0; i < 2; i++) {
+                try {
+                    scheduler.bulkUpsert(createDays(1, i));
+                    fail("Error: A batch that couldn't be written was reported as written");
+                } catch (SQLiteDiskIOException expected) {
+                }
+            }
+
+            // And the next batch still gets written once the database opens again
+            failing[0] = false;
+            assertEquals(DAYS, scheduler.bulkUpsert(createDays(1, 2)));
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    public void testShutdownWritesPendingBatches() throws InterruptedException {
+        final AtomicInteger written = new AtomicInteger();
+        Thread[] syncs = new Thread[ROUNDS];
+        // Holding the write lock keeps the writer stuck on the first batch
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        db.beginTransaction();
+        Thread shutdown;
+        try {
+            for (int round = 0; round < ROUNDS; round++) {
+                final int r = round;
+                syncs[round] = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        written.addAndGet(mScheduler.bulkUpsert(createDays(1, r)));
+                    }
+                });
+                syncs[round].start();
+                // One at a time, so that they are queued in round order.  The writer takes the
+                // first one and waits for the lock with it.
+                while (mScheduler.getLargestQueueDepth() == 0 ||
+                        mScheduler.getQueueDepth() != round) {
+                    Thread.sleep(5);
+                }
+            }
+            shutdown = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    mScheduler.shutdown();
+                }
+            });
+            shutdown.start();
+            // Let the interrupt land while the writer waits for the database
+            Thread.sleep(50);
+        } finally {
+            db.endTransaction();
+        }
+        shutdown.join();
+        for (Thread sync : syncs) {
+            sync.join();
+        }
+
+        assertEquals("Error: Days reported as written", ROUNDS * DAYS, written.get());
+        Cursor cursor = db.query(WeatherEntry.TABLE_NAME,
+                new String[]{WeatherEntry.COLUMN_MAX_TEMP}, null, null, null, null, null);
+        try {
+            assertEquals(DAYS, cursor.getCount());
+            while (cursor.moveToNext()) {
+                assertEquals("Error: The batches written at shutdown were applied out of order",
+                        (double) ROUNDS - 1, cursor.getDouble(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        assertEquals(0, mScheduler.getQueueDepth());
+
+        try {
+            mScheduler.bulkUpsert(createDays(1, 0));
+            fail("Error: A batch was accepted after the shutdown");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    private static ContentValues[] createDays(long location, int round) {
+        ContentValues[] days = new ContentValues[DAYS];
+        for (int day = 0; day < DAYS; day++) {
+            days[day] = TestUtilities.createWeatherValues(location);
+            days[day].put(WeatherEntry.COLUMN_DATE, WeatherContract.normalizeDate(
+                    TestUtilities.TEST_DATE + day * DateUtils.DAY_IN_MILLIS));
+            days[day].put(WeatherEntry.COLUMN_MAX_TEMP, round);
+        }
+        return days;
+    }
+}
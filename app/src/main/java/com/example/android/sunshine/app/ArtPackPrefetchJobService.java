@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.res.Resources;
+import android.os.AsyncTask;
+import android.os.PersistableBundle;
+import android.util.Log;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.RequestManager;
+import com.bumptech.glide.request.FutureTarget;
+
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Downloads the art of every weather condition as soon as another art pack is selected, and
+ * decodes it at each size the app shows it at: the list and the detail pane, the detail widget
+ * and the notification.  The images and their sizes are left in Glide's disk cache, so they are
+ * there before the list is scrolled or a notification goes up, and the network isn't needed.
+ *
+ * The watch and the today widget only show the art that ships with the app.
+ */
+public class ArtPackPrefetchJobService extends JobService {
+
+    private static final String LOG_TAG = ArtPackPrefetchJobService.class.getSimpleName();
+
+    private static final int JOB_ID = 2;
+
+    private static final String EXTRA_ART_PACK = "art_pack";
+
+    private PrefetchTask mTask;
+
+    /**
+     * Prefetches the art pack once there is a network, instead of any art pack that was still
+     * waiting for one.  Nothing is fetched for the art that ships with the app.
+     */
+    public static void schedule(Context context, String artPack) {
+        JobScheduler scheduler =
+                (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        if (artPack.equals(context.getString(R.string.pref_art_pack_sunshine))) {
+            scheduler.cancel(JOB_ID);
+            return;
+        }
+        PersistableBundle extras = new PersistableBundle();
+        extras.putString(EXTRA_ART_PACK, artPack);
+        scheduler.schedule(new JobInfo.Builder(JOB_ID,
+                new ComponentName(context, ArtPackPrefetchJobService.class))
+                .setRequiredNetworkType(JobInfo.NETWORK_TYPE_ANY)
+                .setExtras(extras)
+                .build());
+    }
+
+    @Override
+    public boolean onStartJob(JobParameters params) {
+        mTask = new PrefetchTask(params);
+        mTask.execute();
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        // The network went away, the images that were fetched stay in the cache
+        if (mTask != null) {
+            mTask.cancel(false);
+        }
+        return true;
+    }
+
+    private class PrefetchTask extends AsyncTask<Void, Void, Boolean> {
+        private final JobParameters mParams;
+
+        PrefetchTask(JobParameters params) {
+            mParams = params;
+        }
+
+        @Override
+        protected Boolean doInBackground(Void... params) {
+            Context context = getApplicationContext();
+            Resources resources = context.getResources();
+            int iconSize = resources.getDimensionPixelSize(R.dimen.list_icon);
+            int todaySize = resources.getDimensionPixelSize(R.dimen.today_icon);
+            int largeIconWidth =
+                    resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_width);
+            int largeIconHeight =
+                    resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_height);
+
+            RequestManager glide = Glide.with(context);
+            String artPack = mParams.getExtras().getString(EXTRA_ART_PACK);
+            int fetched = 0;
+            for (String url : WeatherConditions.getArtUrls(artPack)) {
+                if (isCancelled()) {
+                    return false;
+                }
+                try {
+                    // The days of the list, and today in the list and the detail pane
+                    await(ArtRequests.drawable(glide, url, iconSize).into(iconSize, iconSize));
+                    await(ArtRequests.drawable(glide, url, todaySize).into(todaySize, todaySize));
+                    // The detail widget and the notification
+                    await(ArtRequests.bitmap(glide, url).into(iconSize, iconSize));
+                    await(ArtRequests.bitmap(glide, url).into(largeIconWidth, largeIconHeight));
+                    fetched++;
+                } catch (InterruptedException | ExecutionException e) {
+                    // The art pack may not have this image, the others are still worth having
+                    Log.w(LOG_TAG, "Couldn't prefetch " + url, e);
+                }
+            }
+            Log.d(LOG_TAG, "Prefetched " + fetched + " images of " + artPack);
+            return true;
+        }
+
+        // Waits for the image, then lets go of it; it stays in the caches
+        private void await(FutureTarget<?> target)
+                throws InterruptedException, ExecutionException {
+            try {
+                target.get();
+            } finally {
+                Glide.clear(target);
+            }
+        }
+
+        @Override
+        protected void onPostExecute(Boolean finished) {
+            jobFinished(mParams, !finished);
+        }
+    }
+}
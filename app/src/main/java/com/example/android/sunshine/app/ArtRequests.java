@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.graphics.Bitmap;
+
+import com.bumptech.glide.BitmapRequestBuilder;
+import com.bumptech.glide.DrawableRequestBuilder;
+import com.bumptech.glide.RequestManager;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
+
+/**
+ * The Glide requests for art pack images, shared by everything that shows them and by
+ * {@link ArtPackPrefetchJobService}.  Glide caches an image under its URL, size and the way it
+ * was decoded and transformed, so an image that was prefetched is only found again by the very
+ * same request.
+ *
+ * The downloaded image is kept on disk as well as each size decoded from it, so a size that
+ * wasn't prefetched is decoded without going back to the network.
+ */
+public final class ArtRequests {
+
+    private ArtRequests() {
+    }
+
+    /**
+     * @return the request for the art in an ImageView of the app, at most size by size.
+     */
+    public static DrawableRequestBuilder<String> drawable(RequestManager glide, String url,
+                                                          int size) {
+        return glide.load(url)
+                .diskCacheStrategy(DiskCacheStrategy.ALL)
+                .override(size, size)
+                .fitCenter();
+    }
+
+    /**
+     * @return the request for the art as a bitmap, for a widget or a notification, to be
+     * completed with the size it is shown at.
+     */
+    public static BitmapRequestBuilder<String, Bitmap> bitmap(RequestManager glide, String url) {
+        return glide.load(url)
+                .asBitmap()
+                .diskCacheStrategy(DiskCacheStrategy.ALL)
+                .fitCenter();
+    }
+}
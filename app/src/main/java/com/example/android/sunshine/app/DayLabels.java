@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+
+import java.util.Locale;
+
+/**
+ * The labels of the days around today, e.g. "Today, June 24", "Tomorrow" or "Mon Jun 3", kept
+ * so that the list, the detail pane and the widgets don't work them out again for every bind.
+ *
+ * A label only depends on its day, on which day is today and on the locale, so the labels are
+ * kept by Julian day for a few weeks around today, and all of them are dropped when the day
+ * rolls over, the locale changes or {@link Days} sees the time zone change.  Days further away
+ * are labelled without being kept.
+ */
+final class DayLabels {
+
+    static final int FORM_DAY_NAME = 0;
+    static final int FORM_FRIENDLY = 1;
+    static final int FORM_FRIENDLY_LONG_TODAY = 2;
+    static final int FORM_FULL = 3;
+    private static final int FORMS = 4;
+
+    // The days kept, from a week ago to three weeks ahead
+    private static final int DAYS_BEFORE = 7;
+    private static final int DAYS_KEPT = 28;
+
+    private static volatile DayLabels sCurrent;
+
+    private final Locale mLocale;
+    private final int mToday;
+    private final String[][] mLabels = new String[FORMS][DAYS_KEPT];
+
+    private DayLabels(Locale locale, int today) {
+        mLocale = locale;
+        mToday = today;
+    }
+
+    /**
+     * @param form one of the FORM_ constants
+     * @return the label of the day the date falls on.
+     */
+    static String get(Context context, long dateInMillis, int form) {
+        Locale locale = Locale.getDefault();
+        int today = Days.today();
+        DayLabels labels = sCurrent;
+        if (labels == null || labels.mToday != today || !labels.mLocale.equals(locale)) {
+            labels = new DayLabels(locale, today);
+            sCurrent = labels;
+        }
+
+        int julianDay = Days.getJulianDay(dateInMillis);
+        int index = julianDay - today + DAYS_BEFORE;
+        if (index < 0 || index >= DAYS_KEPT) {
+            return label(context, julianDay, today, form);
+        }
+        String label = labels.mLabels[form][index];
+        if (label == null) {
+            // Two threads might both fill it in, with the same label
+            label = label(context, julianDay, today, form);
+            labels.mLabels[form][index] = label;
+        }
+        return label;
+    }
+
+    static void clear() {
+        sCurrent = null;
+    }
+
+    private static String label(Context context, int julianDay, int today, int form) {
+        long date = Days.getStartOfDay(julianDay);
+        switch (form) {
+            case FORM_DAY_NAME:
+                // If the date is today, return the localized version of "Today" instead of the
+                // actual day name.
+                if (julianDay == today) {
+                    return context.getString(R.string.today);
+                } else if (julianDay == today + 1) {
+                    return context.getString(R.string.tomorrow);
+                }
+                // Otherwise, the format is just the day of the week (e.g "Wednesday".
+                return Days.formatDayName(date);
+            case FORM_FULL:
+                return context.getString(R.string.format_full_friendly_date,
+                        label(context, julianDay, today, FORM_DAY_NAME), Days.formatMonthDay(date));
+            case FORM_FRIENDLY_LONG_TODAY:
+                // If the date is today's date, the format is "Today, June 24"
+                if (julianDay == today) {
+                    return context.getString(R.string.format_full_friendly_date,
+                            context.getString(R.string.today), Days.formatMonthDay(date));
+                }
+                // fall through
+            default:
+                // If the date is less than a week in the future, just return the day name,
+                // otherwise use the form "Mon Jun 3"
+                if (julianDay < today + 7) {
+                    return label(context, julianDay, today, FORM_DAY_NAME);
+                }
+                return Days.formatShortDate(date);
+        }
+    }
+}
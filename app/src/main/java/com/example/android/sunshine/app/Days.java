@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.text.format.DateUtils;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Day arithmetic and date formatting for the forecast, without a Time or a SimpleDateFormat per
+ * call.  Days are counted the way Time counts them, as Julian days in the device's time zone, and
+ * the forecast stores each one as the millis of its local midnight.
+ *
+ * The time zone is looked up once, since TimeZone.getDefault() hands out a copy each time, and
+ * dropped by {@link TimeZoneReceiver} when the user moves to another one.  The offset of the
+ * current time is kept too; offsets only change on a quarter hour, so it is looked up again at
+ * most once every fifteen minutes.  The formatters are shared by every thread and used one call
+ * at a time.  The labels made from these days and formats are kept by {@link DayLabels}.
+ */
+public final class Days {
+
+    // The Julian day of January 1st 1970, the day the millis count from
+    public static final int EPOCH_JULIAN_DAY = 2440588;
+
+    private static final long OFFSET_CHECK_MILLIS = 15 * DateUtils.MINUTE_IN_MILLIS;
+
+    private static volatile TimeZone sTimeZone;
+    private static volatile Offset sOffset;
+    private static volatile Formats sFormats;
+
+    // The offset of the time zone during a quarter hour
+    private static final class Offset {
+        final TimeZone mTimeZone;
+        final long mFrom;
+        final long mUntil;
+        final int mMillis;
+
+        Offset(TimeZone timeZone, long now) {
+            mTimeZone = timeZone;
+            mFrom = now - now % OFFSET_CHECK_MILLIS;
+            mUntil = mFrom + OFFSET_CHECK_MILLIS;
+            mMillis = timeZone.getOffset(now);
+        }
+    }
+
+    private static final class Formats {
+        final Locale mLocale;
+        final TimeZone mTimeZone;
+        final DateFormat mDayName;
+        final DateFormat mMonthDay;
+        final DateFormat mShortDate;
+        final DateFormat mDate;
+        private final Date mScratch = new Date();
+
+        Formats(Locale locale, TimeZone timeZone) {
+            mLocale = locale;
+            mTimeZone = timeZone;
+            mDayName = create(new SimpleDateFormat("EEEE", locale));
+            mMonthDay = create(new SimpleDateFormat("MMMM dd", locale));
+            mShortDate = create(new SimpleDateFormat("EEE MMM dd", locale));
+            mDate = create(DateFormat.getDateInstance(DateFormat.DEFAULT, locale));
+        }
+
+        private DateFormat create(DateFormat format) {
+            format.setTimeZone(mTimeZone);
+            return format;
+        }
+
+        synchronized String format(DateFormat format, long dateInMillis) {
+            mScratch.setTime(dateInMillis);
+            return format.format(mScratch);
+        }
+    }
+
+    private Days() {
+    }
+
+    /**
+     * @return the Julian day it is now, e.g. to tell whether a date is today.
+     */
+    public static int today() {
+        long now = System.currentTimeMillis();
+        TimeZone timeZone = getTimeZone();
+        Offset offset = sOffset;
+        if (offset == null || offset.mTimeZone != timeZone ||
+                now < offset.mFrom || now >= offset.mUntil) {
+            offset = new Offset(timeZone, now);
+            sOffset = offset;
+        }
+        return getJulianDay(now, offset.mMillis);
+    }
+
+    /**
+     * @return the Julian day the time falls on, with the offset the time zone has at that time.
+     */
+    public static int getJulianDay(long millis) {
+        return getJulianDay(millis, getTimeZone().getOffset(millis));
+    }
+
+    /**
+     * @return the millis of the local midnight that starts the Julian day.
+     */
+    public static long getStartOfDay(int julianDay) {
+        TimeZone timeZone = getTimeZone();
+        long utcMidnight = (julianDay - EPOCH_JULIAN_DAY) * DateUtils.DAY_IN_MILLIS;
+        // Guess from the standard offset, then use the offset at the guess in case daylight
+        // saving time is in effect
+        long guess = utcMidnight - timeZone.getOffset(utcMidnight - timeZone.getRawOffset());
+        return utcMidnight - timeZone.getOffset(guess);
+    }
+
+    /**
+     * @return the millis of the local midnight that starts the day the time falls on.
+     */
+    public static long normalize(long millis) {
+        return getStartOfDay(getJulianDay(millis));
+    }
+
+    /**
+     * @return the name of the day of the week, e.g. "Wednesday".
+     */
+    public static String formatDayName(long dateInMillis) {
+        Formats formats = getFormats();
+        return formats.format(formats.mDayName, dateInMillis);
+    }
+
+    /**
+     * @return the month and day, e.g. "June 03".
+     */
+    public static String formatMonthDay(long dateInMillis) {
+        Formats formats = getFormats();
+        return formats.format(formats.mMonthDay, dateInMillis);
+    }
+
+    /**
+     * @return the day of the week, month and day, e.g. "Mon Jun 03".
+     */
+    public static String formatShortDate(long dateInMillis) {
+        Formats formats = getFormats();
+        return formats.format(formats.mShortDate, dateInMillis);
+    }
+
+    /**
+     * @return the date in the locale's default style.
+     */
+    public static String formatDate(long dateInMillis) {
+        Formats formats = getFormats();
+        return formats.format(formats.mDate, dateInMillis);
+    }
+
+    /**
+     * Forgets the time zone and everything worked out with it.  The next call looks it up again.
+     */
+    static void onTimeZoneChanged() {
+        sTimeZone = null;
+        sOffset = null;
+        sFormats = null;
+        DayLabels.clear();
+    }
+
+    // Time.getJulianDay(), which divides the same way
+    private static int getJulianDay(long millis, int offsetMillis) {
+        return (int) ((millis + offsetMillis) / DateUtils.DAY_IN_MILLIS) + EPOCH_JULIAN_DAY;
+    }
+
+    private static TimeZone getTimeZone() {
+        TimeZone timeZone = sTimeZone;
+        if (timeZone == null) {
+            timeZone = TimeZone.getDefault();
+            sTimeZone = timeZone;
+        }
+        return timeZone;
+    }
+
+    private static Formats getFormats() {
+        Locale locale = Locale.getDefault();
+        TimeZone timeZone = getTimeZone();
+        Formats formats = sFormats;
+        if (formats == null || formats.mTimeZone != timeZone || !formats.mLocale.equals(locale)) {
+            formats = new Formats(locale, timeZone);
+            sFormats = formats;
+        }
+        return formats;
+    }
+}
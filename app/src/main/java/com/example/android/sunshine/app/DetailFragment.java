@@ -99,6 +99,9 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
     private TextView mPressureView;
     private TextView mPressureLabelView;
 
+    // Reused for the text the formatter builds, which the views copy
+    private final StringBuilder mTextBuilder = new StringBuilder();
+
     public DetailFragment() {
         setHasOptionsMenu(true);
     }
@@ -200,12 +203,14 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
             // Read weather condition ID from cursor
             int weatherId = data.getInt(COL_WEATHER_CONDITION_ID);
 
+            int size = getResources().getDimensionPixelSize(R.dimen.today_icon);
             if ( Utility.usingLocalGraphics(getActivity()) ) {
-                mIconView.setImageResource(Utility.getArtResourceForWeatherCondition(weatherId));
+                LocalArt.get(getActivity()).setImage(mIconView,
+                        Utility.getArtResourceForWeatherCondition(weatherId), size, size);
             } else {
-                // Use weather art image
-                Glide.with(this)
-                        .load(Utility.getArtUrlForWeatherCondition(getActivity(), weatherId))
+                // Use weather art image, at the size of the art of today in the list
+                ArtRequests.drawable(Glide.with(this),
+                        Utility.getArtUrlForWeatherCondition(getActivity(), weatherId), size)
                         .error(Utility.getArtResourceForWeatherCondition(weatherId))
                         .crossFade()
                         .into(mIconView);
@@ -229,34 +234,38 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
 
             // Read high temperature from cursor and update view
             boolean isMetric = Utility.isMetric(getActivity());
+            WeatherFormatter formatter = WeatherFormatter.get(getActivity());
 
             double high = data.getDouble(COL_WEATHER_MAX_TEMP);
-            String highString = Utility.formatTemperature(getActivity(), high);
+            String highString = formatter.formatTemperature(high, isMetric);
             mHighTempView.setText(highString);
             mHighTempView.setContentDescription(getString(R.string.a11y_high_temp, highString));
 
             // Read low temperature from cursor and update view
             double low = data.getDouble(COL_WEATHER_MIN_TEMP);
-            String lowString = Utility.formatTemperature(getActivity(), low);
+            String lowString = formatter.formatTemperature(low, isMetric);
             mLowTempView.setText(lowString);
             mLowTempView.setContentDescription(getString(R.string.a11y_low_temp, lowString));
 
             // Read humidity from cursor and update view
             float humidity = data.getFloat(COL_WEATHER_HUMIDITY);
-            mHumidityView.setText(getActivity().getString(R.string.format_humidity, humidity));
+            mTextBuilder.setLength(0);
+            mHumidityView.setText(formatter.appendHumidity(mTextBuilder, humidity));
             mHumidityView.setContentDescription(getString(R.string.a11y_humidity, mHumidityView.getText()));
             mHumidityLabelView.setContentDescription(mHumidityView.getContentDescription());
 
             // Read wind speed and direction from cursor and update view
             float windSpeedStr = data.getFloat(COL_WEATHER_WIND_SPEED);
             float windDirStr = data.getFloat(COL_WEATHER_DEGREES);
-            mWindView.setText(Utility.getFormattedWind(getActivity(), windSpeedStr, windDirStr));
+            mTextBuilder.setLength(0);
+            mWindView.setText(formatter.appendWind(mTextBuilder, windSpeedStr, windDirStr, isMetric));
             mWindView.setContentDescription(getString(R.string.a11y_wind, mWindView.getText()));
             mWindLabelView.setContentDescription(mWindView.getContentDescription());
 
             // Read pressure from cursor and update view
             float pressure = data.getFloat(COL_WEATHER_PRESSURE);
-            mPressureView.setText(getString(R.string.format_pressure, pressure));
+            mTextBuilder.setLength(0);
+            mPressureView.setText(formatter.appendPressure(mTextBuilder, pressure));
             mPressureView.setContentDescription(getString(R.string.a11y_pressure, mPressureView.getText()));
             mPressureLabelView.setContentDescription(mPressureView.getContentDescription());
 
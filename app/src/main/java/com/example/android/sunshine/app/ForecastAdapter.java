@@ -17,6 +17,7 @@ package com.example.android.sunshine.app;
 
 import android.content.Context;
 import android.database.Cursor;
+import android.os.AsyncTask;
 import android.os.Build;
 import android.os.Bundle;
 import android.support.v4.view.ViewCompat;
@@ -29,8 +30,7 @@ import android.widget.Checkable;
 import android.widget.ImageView;
 import android.widget.TextView;
 
-import com.bumptech.glide.Glide;
-import com.example.android.sunshine.app.data.WeatherContract;
+import java.util.ArrayList;
 
 /**
  * {@link ForecastAdapter} exposes a list of weather forecasts
@@ -44,11 +44,38 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
     // Flag to determine if we want to use a separate view for "today".
     private boolean mUseTodayLayout = true;
 
+    // Rows from the end of the list at which the next page is fetched
+    private static final int PAGE_PREFETCH_DISTANCE = 3;
+
+    // Rows beyond the screen whose art is loaded ahead of the scroll
+    private static final int ART_PRELOAD_DISTANCE = 5;
+
     private Cursor mCursor;
+
+    // The rows of mCursor, formatted for binding, which the next load is compared with
+    private ForecastRows mRows;
+
+    // Paging mode: mCursor is the first page, and the following ones are fetched from the page
+    // source as the list is scrolled towards its end.  Only their formatted rows are kept.
+    private PageSource mPageSource;
+    private int mPageSize;
+    private final ArrayList<ForecastRows> mPages = new ArrayList<ForecastRows>();
+    private int mPagedRowCount;
+    private boolean mLastPageLoaded = true;
+    private PageTask mPageTask;
+
+    // A day that findDate() is fetching pages for, until it is found or there are none left
+    private long mFindDate = -1;
+    private DateFoundListener mDateFoundListener;
+
     final private Context mContext;
     final private ForecastAdapterOnClickHandler mClickHandler;
     final private View mEmptyView;
     final private ItemChoiceManager mICM;
+    final private ForecastArtPreloader mArtPreloader;
+    final private LocalArt mLocalArt;
+    final private int mIconSize;
+    final private int mTodayIconSize;
 
     /**
      * Cache of the children views for a forecast list item.
@@ -73,9 +100,11 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         @Override
         public void onClick(View v) {
             int adapterPosition = getAdapterPosition();
-            mCursor.moveToPosition(adapterPosition);
-            int dateColumnIndex = mCursor.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_DATE);
-            mClickHandler.onClick(mCursor.getLong(dateColumnIndex), this);
+            // Tapped while an update that removes or moves the row is still pending
+            if (adapterPosition == RecyclerView.NO_POSITION) {
+                return;
+            }
+            mClickHandler.onClick(rowAt(adapterPosition).mDate, this);
             mICM.onClick(this);
         }
     }
@@ -84,12 +113,42 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         void onClick(Long date, ForecastAdapterViewHolder vh);
     }
 
+    /**
+     * Told where the day asked for by {@link #findDate(long, DateFoundListener)} is.
+     */
+    public static interface DateFoundListener {
+        /**
+         * @param position the position of the day, or {@link RecyclerView#NO_POSITION} if it
+         * isn't in the forecast.
+         */
+        void onDateFound(int position);
+    }
+
+    /**
+     * Where the pages after the first one come from in paging mode.
+     */
+    public static interface PageSource {
+        /**
+         * Called on a background thread.
+         *
+         * @return at most {@code limit} days after {@code date}, in date order, with the
+         * columns of the first page.
+         */
+        Cursor loadPageAfter(long date, int limit);
+    }
+
     public ForecastAdapter(Context context, ForecastAdapterOnClickHandler dh, View emptyView, int choiceMode) {
         mContext = context;
         mClickHandler = dh;
         mEmptyView = emptyView;
         mICM = new ItemChoiceManager(this);
         mICM.setChoiceMode(choiceMode);
+        mArtPreloader = new ForecastArtPreloader(context, this, ART_PRELOAD_DISTANCE);
+        mLocalArt = LocalArt.get(context);
+        mIconSize = context.getResources().getDimensionPixelSize(R.dimen.list_icon);
+        mTodayIconSize = context.getResources().getDimensionPixelSize(R.dimen.today_icon);
+        // Lets the RecyclerView keep its views for the days that are still there after a sync
+        setHasStableIds(true);
     }
 
     /*
@@ -122,67 +181,48 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         }
     }
 
+    /*
+        The rows were formatted on the loader's thread, so binding one only sets its text and
+        image.
+     */
     @Override
     public void onBindViewHolder(ForecastAdapterViewHolder forecastAdapterViewHolder, int position) {
-        mCursor.moveToPosition(position);
-        int weatherId = mCursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
-        int defaultImage;
-        boolean useLongToday;
-
-        switch (getItemViewType(position)) {
-            case VIEW_TYPE_TODAY:
-                defaultImage = Utility.getArtResourceForWeatherCondition(weatherId);
-                useLongToday = true;
-                break;
-            default:
-                defaultImage = Utility.getIconResourceForWeatherCondition(weatherId);
-                useLongToday = false;
-        }
+        ForecastRows.Row row = rowAt(position);
+        boolean today = isTodayItem(position);
+        int defaultImage = today ? row.mArtResource : row.mIconResource;
 
-        if ( Utility.usingLocalGraphics(mContext) ) {
-            forecastAdapterViewHolder.mIconView.setImageResource(defaultImage);
+        if ( row.mArtUrl == null ) {
+            int size = today ? mTodayIconSize : mIconSize;
+            mLocalArt.setImage(forecastAdapterViewHolder.mIconView, defaultImage, size, size);
         } else {
-            Glide.with(mContext)
-                    .load(Utility.getArtUrlForWeatherCondition(mContext, weatherId))
+            mArtPreloader.load(row.mArtUrl, today)
                     .error(defaultImage)
                     .crossFade()
                     .into(forecastAdapterViewHolder.mIconView);
         }
 
-        // this enables better animations. even if we lose state due to a device rotation,
-        // the animator can use this to re-find the original view
-        ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView, "iconView" + position);
-
-        // Read date from cursor
-        long dateInMillis = mCursor.getLong(ForecastFragment.COL_WEATHER_DATE);
-
-        // Find TextView and set formatted date on it
-        forecastAdapterViewHolder.mDateView.setText(Utility.getFriendlyDayString(mContext, dateInMillis, useLongToday));
+        ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView, row.mTransitionName);
 
-        // Read weather forecast from cursor
-        String description = Utility.getStringForWeatherCondition(mContext, weatherId);
+        forecastAdapterViewHolder.mDateView.setText(today ? row.mLongDayLabel : row.mDayLabel);
 
-        // Find TextView and set weather forecast on it
-        forecastAdapterViewHolder.mDescriptionView.setText(description);
-        forecastAdapterViewHolder.mDescriptionView.setContentDescription(mContext.getString(R.string.a11y_forecast, description));
+        forecastAdapterViewHolder.mDescriptionView.setText(row.mDescription);
+        forecastAdapterViewHolder.mDescriptionView.setContentDescription(row.mDescriptionA11y);
 
         // For accessibility, we don't want a content description for the icon field
         // because the information is repeated in the description view and the icon
         // is not individually selectable
 
-        // Read high temperature from cursor
-        double high = mCursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP);
-        String highString = Utility.formatTemperature(mContext, high);
-        forecastAdapterViewHolder.mHighTempView.setText(highString);
-        forecastAdapterViewHolder.mHighTempView.setContentDescription(mContext.getString(R.string.a11y_high_temp, highString));
+        forecastAdapterViewHolder.mHighTempView.setText(row.mHigh);
+        forecastAdapterViewHolder.mHighTempView.setContentDescription(row.mHighA11y);
 
-        // Read low temperature from cursor
-        double low = mCursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP);
-        String lowString = Utility.formatTemperature(mContext, low);
-        forecastAdapterViewHolder.mLowTempView.setText(lowString);
-        forecastAdapterViewHolder.mLowTempView.setContentDescription(mContext.getString(R.string.a11y_low_temp, lowString));
+        forecastAdapterViewHolder.mLowTempView.setText(row.mLow);
+        forecastAdapterViewHolder.mLowTempView.setContentDescription(row.mLowA11y);
 
         mICM.onBindViewHolder(forecastAdapterViewHolder, position);
+
+        if (position >= getItemCount() - PAGE_PREFETCH_DISTANCE) {
+            loadNextPage();
+        }
     }
 
     public void onRestoreInstanceState(Bundle savedInstanceState) {
@@ -206,18 +246,201 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         return (position == 0 && mUseTodayLayout) ? VIEW_TYPE_TODAY : VIEW_TYPE_FUTURE_DAY;
     }
 
+    /**
+     * The listener to add to the RecyclerView, which loads the art of the rows about to be
+     * scrolled into view.
+     */
+    ForecastArtPreloader getArtPreloader() {
+        return mArtPreloader;
+    }
+
+    boolean isTodayItem(int position) {
+        return getItemViewType(position) == VIEW_TYPE_TODAY;
+    }
+
+    // The URL of the row's art, or null if it shows the local graphics
+    String getArtUrl(int position) {
+        return rowAt(position).mArtUrl;
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return rowAt(position).mId;
+    }
+
     @Override
     public int getItemCount() {
-        if ( null == mCursor ) return 0;
-        return mCursor.getCount();
+        if ( null == mRows ) return 0;
+        return mRows.getCount() + mPagedRowCount;
+    }
+
+    /**
+     * Switches to paging mode.  The cursors passed to {@link #swapCursor(Cursor)} are then the
+     * first page, of at most {@code pageSize} rows.
+     */
+    public void setPageSource(PageSource pageSource, int pageSize) {
+        mPageSource = pageSource;
+        mPageSize = pageSize;
     }
 
+    /**
+     * Replaces the data with a new first page.  The pages that were fetched after the old one
+     * are dropped; they are fetched again when the list is scrolled down to them.
+     *
+     * A cursor from a {@link ForecastLoader} comes with its rows formatted.  If the loader also
+     * compared them with the rows shown now, only the days that were removed, inserted or
+     * changed are notified.  Otherwise every item is rebound.
+     */
     public void swapCursor(Cursor newCursor) {
+        ForecastRows rows = null;
+        ForecastRows.Diff diff = null;
+        if (newCursor instanceof ForecastLoader.ForecastCursor) {
+            rows = ((ForecastLoader.ForecastCursor) newCursor).getRows();
+            diff = ((ForecastLoader.ForecastCursor) newCursor).getDiff();
+        } else if (newCursor != null) {
+            rows = ForecastRows.read(mContext, newCursor);
+        }
+        int firstPageCount = mRows == null ? 0 : mRows.getCount();
+        int pagedRowCount = mPagedRowCount;
+        long firstId = getItemCount() == 0 ? -1 : getItemId(0);
+
         mCursor = newCursor;
-        notifyDataSetChanged();
+        ForecastRows oldRows = mRows;
+        mRows = rows;
+        clearPages();
+        mArtPreloader.reset();
+        mLastPageLoaded = mPageSource == null || rows == null || rows.getCount() < mPageSize;
+
+        if (diff != null && diff.getBase() == oldRows) {
+            // The diff only covers the first page
+            if (pagedRowCount > 0) {
+                notifyItemRangeRemoved(firstPageCount, pagedRowCount);
+            }
+            diff.dispatchTo(this);
+            // A day that moved up to the top takes the "today" layout
+            if (mUseTodayLayout && getItemCount() > 0 && getItemId(0) != firstId) {
+                notifyItemChanged(0);
+            }
+        } else {
+            notifyDataSetChanged();
+        }
         mEmptyView.setVisibility(getItemCount() == 0 ? View.VISIBLE : View.GONE);
     }
 
+    /**
+     * Finds the position of the day with the date.  In paging mode the day may be on a page that
+     * hasn't been fetched; the pages up to it are fetched first, and the listener is called once
+     * they are in.  Otherwise it is called right away.
+     */
+    public void findDate(long date, DateFoundListener listener) {
+        mFindDate = date;
+        mDateFoundListener = listener;
+        continueFindDate();
+    }
+
+    private void continueFindDate() {
+        if (mDateFoundListener == null) {
+            return;
+        }
+        int count = getItemCount();
+        int position = RecyclerView.NO_POSITION;
+        for (int i = 0; i < count; i++) {
+            if (rowAt(i).mDate == mFindDate) {
+                position = i;
+                break;
+            }
+        }
+        // Days are in date order, so the day can only be on a later page if it is after them all
+        if (position == RecyclerView.NO_POSITION && !mLastPageLoaded && count > 0 &&
+                rowAt(count - 1).mDate < mFindDate) {
+            loadNextPage();
+            if (mPageTask != null) {
+                return;
+            }
+        }
+        DateFoundListener listener = mDateFoundListener;
+        mDateFoundListener = null;
+        listener.onDateFound(position);
+    }
+
+    private ForecastRows.Row rowAt(int position) {
+        int offset = position - mRows.getCount();
+        if (offset < 0) {
+            return mRows.get(position);
+        }
+        for (ForecastRows page : mPages) {
+            if (offset < page.getCount()) {
+                return page.get(offset);
+            }
+            offset -= page.getCount();
+        }
+        throw new IndexOutOfBoundsException("No row at position " + position);
+    }
+
+    private void loadNextPage() {
+        if (mLastPageLoaded || mPageTask != null || getItemCount() == 0) {
+            return;
+        }
+        // Keyset paging: the next page starts after the last day we have
+        long lastDate = rowAt(getItemCount() - 1).mDate;
+        mPageTask = new PageTask();
+        mPageTask.execute(lastDate);
+    }
+
+    private void clearPages() {
+        if (mPageTask != null) {
+            mPageTask.cancel(false);
+            mPageTask = null;
+        }
+        mPages.clear();
+        mPagedRowCount = 0;
+        // The rows it was looking through are gone
+        mDateFoundListener = null;
+    }
+
+    private class PageTask extends AsyncTask<Long, Void, ForecastRows> {
+        private final Context mAppContext = mContext.getApplicationContext();
+        private final PageSource mSource = mPageSource;
+        private final int mLimit = mPageSize;
+
+        @Override
+        protected ForecastRows doInBackground(Long... lastDate) {
+            Cursor page = mSource.loadPageAfter(lastDate[0], mLimit);
+            if (page == null) {
+                return null;
+            }
+            // Formatted here rather than on the main thread, the cursor isn't needed after that
+            try {
+                return ForecastRows.read(mAppContext, page);
+            } finally {
+                page.close();
+            }
+        }
+
+        @Override
+        protected void onPostExecute(ForecastRows page) {
+            if (mPageTask != this) {
+                // The first page was replaced while this one was loading
+                return;
+            }
+            mPageTask = null;
+            if (page == null) {
+                // Don't keep retrying a page that can't be read
+                mLastPageLoaded = true;
+                continueFindDate();
+                return;
+            }
+            mLastPageLoaded = page.getCount() < mLimit;
+            if (page.getCount() > 0) {
+                int start = getItemCount();
+                mPages.add(page);
+                mPagedRowCount += page.getCount();
+                notifyItemRangeInserted(start, page.getCount());
+            }
+            continueFindDate();
+        }
+    }
+
     public Cursor getCursor() {
         return mCursor;
     }
@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+
+import com.bumptech.glide.DrawableRequestBuilder;
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.RequestManager;
+import com.bumptech.glide.load.resource.drawable.GlideDrawable;
+import com.bumptech.glide.request.RequestListener;
+import com.bumptech.glide.request.animation.GlideAnimation;
+import com.bumptech.glide.request.target.BaseTarget;
+import com.bumptech.glide.request.target.SizeReadyCallback;
+import com.bumptech.glide.request.target.Target;
+
+/**
+ * Loads the art pack images of the forecast list at the size they are shown, and loads those of
+ * the rows just beyond the screen before they are scrolled into view.
+ *
+ * Every row of a condition category has the same art URL, and every row is loaded at one of two
+ * sizes, the icon of a day or the art of today.  Glide keeps its decoded images by URL and size,
+ * so the days of a category share a single image at each size, and a row that was preloaded is
+ * bound straight from memory.  How often that happens is counted, so it can be checked.
+ */
+class ForecastArtPreloader extends RecyclerView.OnScrollListener {
+
+    private final RequestManager mGlide;
+    private final ForecastAdapter mAdapter;
+    private final int mIconSize;
+    private final int mTodaySize;
+    private final int mPreloadCount;
+
+    // Reused in turn, one more than the rows preloaded at a time
+    private final PreloadTarget[] mTargets;
+    private int mNextTarget;
+
+    // The positions preloaded last, to and excluding mPreloadedTo
+    private int mPreloadedFrom;
+    private int mPreloadedTo;
+
+    private int mPreloadCountTotal;
+    private int mBindCount;
+    private int mMemoryHitCount;
+
+    private final RequestListener<String, GlideDrawable> mHitCounter =
+            new RequestListener<String, GlideDrawable>() {
+                @Override
+                public boolean onException(Exception e, String model,
+                                           Target<GlideDrawable> target, boolean isFirstResource) {
+                    return false;
+                }
+
+                @Override
+                public boolean onResourceReady(GlideDrawable resource, String model,
+                                               Target<GlideDrawable> target,
+                                               boolean isFromMemoryCache, boolean isFirstResource) {
+                    if (isFromMemoryCache) {
+                        mMemoryHitCount++;
+                    }
+                    return false;
+                }
+            };
+
+    ForecastArtPreloader(Context context, ForecastAdapter adapter, int preloadCount) {
+        mGlide = Glide.with(context);
+        mAdapter = adapter;
+        mIconSize = context.getResources().getDimensionPixelSize(R.dimen.list_icon);
+        mTodaySize = context.getResources().getDimensionPixelSize(R.dimen.today_icon);
+        mPreloadCount = preloadCount;
+        mTargets = new PreloadTarget[preloadCount + 1];
+        for (int i = 0; i < mTargets.length; i++) {
+            mTargets[i] = new PreloadTarget();
+        }
+    }
+
+    /**
+     * @return the request that binds the art of a row, the same one that preloaded it.
+     */
+    DrawableRequestBuilder<String> load(String url, boolean today) {
+        mBindCount++;
+        return ArtRequests.drawable(mGlide, url, today ? mTodaySize : mIconSize)
+                .listener(mHitCounter);
+    }
+
+    @Override
+    public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+        LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+        int first = layoutManager.findFirstVisibleItemPosition();
+        int last = layoutManager.findLastVisibleItemPosition();
+        if (first == RecyclerView.NO_POSITION) {
+            return;
+        }
+        // Ahead of the direction of the scroll
+        if (dy >= 0) {
+            preload(last + 1, last + 1 + mPreloadCount);
+        } else {
+            preload(first - mPreloadCount, first);
+        }
+    }
+
+    /**
+     * Forgets which rows were preloaded, after the rows were replaced.
+     */
+    void reset() {
+        mPreloadedFrom = 0;
+        mPreloadedTo = 0;
+    }
+
+    int getPreloadCount() {
+        return mPreloadCountTotal;
+    }
+
+    int getBindCount() {
+        return mBindCount;
+    }
+
+    int getMemoryHitCount() {
+        return mMemoryHitCount;
+    }
+
+    private void preload(int from, int to) {
+        from = Math.max(0, from);
+        to = Math.min(mAdapter.getItemCount(), to);
+        for (int position = from; position < to; position++) {
+            if (position >= mPreloadedFrom && position < mPreloadedTo) {
+                continue;
+            }
+            String url = mAdapter.getArtUrl(position);
+            if (url == null) {
+                continue;
+            }
+            PreloadTarget target = mTargets[mNextTarget];
+            mNextTarget = (mNextTarget + 1) % mTargets.length;
+            // Replaces the target's last preload, which leaves its image in the memory cache
+            target.mSize = mAdapter.isTodayItem(position) ? mTodaySize : mIconSize;
+            ArtRequests.drawable(mGlide, url, target.mSize).into(target);
+            mPreloadCountTotal++;
+        }
+        mPreloadedFrom = from;
+        mPreloadedTo = to;
+    }
+
+    // Only holds on to what it loaded until it is reused
+    private static class PreloadTarget extends BaseTarget<GlideDrawable> {
+        int mSize;
+
+        @Override
+        public void getSize(SizeReadyCallback cb) {
+            cb.onSizeReady(mSize, mSize);
+        }
+
+        @Override
+        public void onResourceReady(GlideDrawable resource,
+                                    GlideAnimation<? super GlideDrawable> glideAnimation) {
+        }
+    }
+}
@@ -17,6 +17,7 @@ package com.example.android.sunshine.app;
 
 import android.annotation.TargetApi;
 import android.app.Activity;
+import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.res.TypedArray;
@@ -28,7 +29,6 @@ import android.preference.PreferenceManager;
 import android.support.design.widget.AppBarLayout;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.LoaderManager;
-import android.support.v4.content.CursorLoader;
 import android.support.v4.content.Loader;
 import android.support.v4.view.ViewCompat;
 import android.support.v7.widget.LinearLayoutManager;
@@ -63,6 +63,10 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
     private static final String SELECTED_KEY = "selected_position";
 
     private static final int FORECAST_LOADER = 0;
+
+    // Days fetched at a time.  The loader only holds the first page, which fills the screen;
+    // the adapter fetches the rest as the list is scrolled.
+    private static final int FORECAST_PAGE_SIZE = 10;
     // For the forecast view we're showing only a small subset of the stored data.
     // Specify the columns we need.
     private static final String[] FORECAST_COLUMNS = {
@@ -197,8 +201,23 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
             }
         }, emptyView, mChoiceMode);
 
+        final Context appContext = getActivity().getApplicationContext();
+        mForecastAdapter.setPageSource(new ForecastAdapter.PageSource() {
+            @Override
+            public Cursor loadPageAfter(long date, int limit) {
+                return appContext.getContentResolver().query(
+                        WeatherContract.WeatherEntry.buildWeatherLocationPage(
+                                Utility.getPreferredLocation(appContext), date, limit),
+                        FORECAST_COLUMNS,
+                        null,
+                        null,
+                        null);
+            }
+        }, FORECAST_PAGE_SIZE);
+
         // specify an adapter (see also next example)
         mRecyclerView.setAdapter(mForecastAdapter);
+        mRecyclerView.addOnScrollListener(mForecastAdapter.getArtPreloader());
 
         final View parallaxView = rootView.findViewById(R.id.parallax_bar);
         if (null != parallaxView) {
@@ -314,13 +333,11 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
 
         String locationSetting = Utility.getPreferredLocation(getActivity());
         Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
-                locationSetting, System.currentTimeMillis());
+                locationSetting, System.currentTimeMillis(), FORECAST_PAGE_SIZE);
 
-        return new CursorLoader(getActivity(),
+        return new ForecastLoader(getActivity(),
                 weatherForLocationUri,
                 FORECAST_COLUMNS,
-                null,
-                null,
                 sortOrder);
     }
 
@@ -341,27 +358,18 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
                         int position = mForecastAdapter.getSelectedItemPosition();
                         if (position == RecyclerView.NO_POSITION &&
                                 -1 != mInitialSelectedDate) {
-                            Cursor data = mForecastAdapter.getCursor();
-                            int count = data.getCount();
-                            int dateColumn = data.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_DATE);
-                            for ( int i = 0; i < count; i++ ) {
-                                data.moveToPosition(i);
-                                if ( data.getLong(dateColumn) == mInitialSelectedDate ) {
-                                    position = i;
-                                    break;
-                                }
-                            }
-                        }
-                        if (position == RecyclerView.NO_POSITION) position = 0;
-                        // If we don't need to restart the loader, and there's a desired position to restore
-                        // to, do so now.
-                        mRecyclerView.smoothScrollToPosition(position);
-                        RecyclerView.ViewHolder vh = mRecyclerView.findViewHolderForAdapterPosition(position);
-                        if (null != vh && mAutoSelectView) {
-                            mForecastAdapter.selectView(vh);
-                        }
-                        if ( mHoldForTransition ) {
-                            getActivity().supportStartPostponedEnterTransition();
+                            // The day may be past the first page, which is all the loader holds
+                            mForecastAdapter.findDate(mInitialSelectedDate,
+                                    new ForecastAdapter.DateFoundListener() {
+                                        @Override
+                                        public void onDateFound(int position) {
+                                            if (isAdded()) {
+                                                showInitialPosition(position);
+                                            }
+                                        }
+                                    });
+                        } else {
+                            showInitialPosition(position);
                         }
                         return true;
                     }
@@ -374,12 +382,55 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
 
 
 
+    /*
+        Scrolls to the day shown at first, or to today, and selects it.  A day on a page fetched
+        after the first one has no view yet, so it is jumped to and selected once it is laid out.
+     */
+    private void showInitialPosition(final int initialPosition) {
+        final int position = initialPosition == RecyclerView.NO_POSITION ? 0 : initialPosition;
+        RecyclerView.ViewHolder vh = mRecyclerView.findViewHolderForAdapterPosition(position);
+        if (null != vh) {
+            // If we don't need to restart the loader, and there's a desired position to restore
+            // to, do so now.
+            mRecyclerView.smoothScrollToPosition(position);
+            if (mAutoSelectView) {
+                mForecastAdapter.selectView(vh);
+            }
+        } else {
+            mRecyclerView.scrollToPosition(position);
+            if (mAutoSelectView) {
+                mRecyclerView.getViewTreeObserver().addOnPreDrawListener(
+                        new ViewTreeObserver.OnPreDrawListener() {
+                            @Override
+                            public boolean onPreDraw() {
+                                mRecyclerView.getViewTreeObserver().removeOnPreDrawListener(this);
+                                RecyclerView.ViewHolder vh =
+                                        mRecyclerView.findViewHolderForAdapterPosition(position);
+                                if (null != vh) {
+                                    mForecastAdapter.selectView(vh);
+                                }
+                                return true;
+                            }
+                        });
+            }
+        }
+        if ( mHoldForTransition ) {
+            getActivity().supportStartPostponedEnterTransition();
+        }
+    }
+
     @Override
     public void onDestroy() {
         super.onDestroy();
         if (null != mRecyclerView) {
             mRecyclerView.clearOnScrollListeners();
         }
+        if (null != mForecastAdapter) {
+            ForecastArtPreloader art = mForecastAdapter.getArtPreloader();
+            Log.d(LOG_TAG, "Art binds: " + art.getBindCount()
+                    + ", from memory: " + art.getMemoryHitCount()
+                    + ", preloads: " + art.getPreloadCount());
+        }
     }
 
     @Override
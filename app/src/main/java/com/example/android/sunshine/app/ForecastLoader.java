@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.net.Uri;
+import android.support.v4.content.CursorLoader;
+
+/**
+ * A {@link CursorLoader} for the forecast list that also formats its rows and compares them with
+ * the ones it delivered last, on its own thread.  {@link ForecastAdapter} then only has to set
+ * the text of a row when it binds it, and only to notify the RecyclerView of the days that
+ * changed.
+ */
+class ForecastLoader extends CursorLoader {
+
+    // The rows of the last cursor handed to the fragment, read on the loader's thread
+    private volatile ForecastRows mDelivered;
+
+    ForecastLoader(Context context, Uri uri, String[] projection, String sortOrder) {
+        super(context, uri, projection, null, null, sortOrder);
+    }
+
+    @Override
+    public Cursor loadInBackground() {
+        Cursor cursor = super.loadInBackground();
+        if (cursor == null) {
+            return null;
+        }
+        ForecastRows rows = ForecastRows.read(getContext(), cursor);
+        return new ForecastCursor(cursor, rows, ForecastRows.diff(mDelivered, rows));
+    }
+
+    @Override
+    public void deliverResult(Cursor cursor) {
+        if (isStarted() && !isReset()) {
+            mDelivered = cursor == null ? null : ((ForecastCursor) cursor).getRows();
+        }
+        super.deliverResult(cursor);
+    }
+
+    /**
+     * The loaded cursor, with its rows and how they differ from the ones delivered before.
+     */
+    static class ForecastCursor extends CursorWrapper {
+        private final ForecastRows mRows;
+        private final ForecastRows.Diff mDiff;
+
+        ForecastCursor(Cursor cursor, ForecastRows rows, ForecastRows.Diff diff) {
+            super(cursor);
+            mRows = rows;
+            mDiff = diff;
+        }
+
+        ForecastRows getRows() {
+            return mRows;
+        }
+
+        /**
+         * @return the changes from the rows delivered before, or null if they can't be compared.
+         */
+        ForecastRows.Diff getDiff() {
+            return mDiff;
+        }
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.support.v7.widget.RecyclerView;
+
+/**
+ * The forecast list's days, formatted the way {@link ForecastAdapter} shows them.  Rows are
+ * read from a cursor with {@link ForecastFragment}'s columns on the loader's thread, so that the
+ * adapter only has to set precomputed text and resources when it binds, and so that two lists
+ * can be compared there without touching a cursor the main thread is binding from.
+ */
+final class ForecastRows {
+
+    /**
+     * One day, ready to be bound.
+     */
+    static final class Row {
+        final long mId;
+        final long mDate;
+        // The label for the "today" layout, only set on the first row
+        final String mLongDayLabel;
+        final String mDayLabel;
+        final String mDescription;
+        final String mDescriptionA11y;
+        final String mHigh;
+        final String mHighA11y;
+        final String mLow;
+        final String mLowA11y;
+        final int mIconResource;
+        final int mArtResource;
+        // null when the local graphics are used
+        final String mArtUrl;
+        final String mTransitionName;
+
+        private Row(Context context, Cursor cursor, boolean first, boolean localGraphics) {
+            mId = cursor.getLong(ForecastFragment.COL_WEATHER_ID);
+            mDate = cursor.getLong(ForecastFragment.COL_WEATHER_DATE);
+            mLongDayLabel = first ? Utility.getFriendlyDayString(context, mDate, true) : null;
+            mDayLabel = Utility.getFriendlyDayString(context, mDate, false);
+
+            int weatherId = cursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
+            mDescription = Utility.getStringForWeatherCondition(context, weatherId);
+            mDescriptionA11y = context.getString(R.string.a11y_forecast, mDescription);
+            mHigh = Utility.formatTemperature(context,
+                    cursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP));
+            mHighA11y = context.getString(R.string.a11y_high_temp, mHigh);
+            mLow = Utility.formatTemperature(context,
+                    cursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP));
+            mLowA11y = context.getString(R.string.a11y_low_temp, mLow);
+
+            mIconResource = Utility.getIconResourceForWeatherCondition(weatherId);
+            mArtResource = Utility.getArtResourceForWeatherCondition(weatherId);
+            mArtUrl = localGraphics ? null : Utility.getArtUrlForWeatherCondition(context, weatherId);
+            // this enables better animations. even if we lose state due to a device rotation,
+            // the animator can use this to re-find the original view.  It's named by date, as
+            // items move without being rebound.
+            mTransitionName = "iconView" + mDate;
+        }
+
+        // Whether the row would be bound the same way as the other one
+        private boolean sameContent(Row other) {
+            return mDayLabel.equals(other.mDayLabel) &&
+                    mDescription.equals(other.mDescription) &&
+                    mHigh.equals(other.mHigh) &&
+                    mLow.equals(other.mLow) &&
+                    mIconResource == other.mIconResource &&
+                    (mArtUrl == null ? other.mArtUrl == null : mArtUrl.equals(other.mArtUrl)) &&
+                    (mLongDayLabel == null ? other.mLongDayLabel == null :
+                            mLongDayLabel.equals(other.mLongDayLabel));
+        }
+    }
+
+    private final Row[] mRows;
+
+    // Whether the rows are in ascending date order, which diff() needs
+    private final boolean mOrdered;
+
+    private ForecastRows(Row[] rows, boolean ordered) {
+        mRows = rows;
+        mOrdered = ordered;
+    }
+
+    /**
+     * Reads and formats every row of the cursor.  Reads preferences and resources, so it
+     * belongs on a background thread.
+     */
+    static ForecastRows read(Context context, Cursor cursor) {
+        boolean localGraphics = Utility.usingLocalGraphics(context);
+        Row[] rows = new Row[cursor.getCount()];
+        boolean ordered = true;
+        for (int i = 0; cursor.moveToPosition(i); i++) {
+            rows[i] = new Row(context, cursor, i == 0, localGraphics);
+            if (i > 0 && rows[i].mDate <= rows[i - 1].mDate) {
+                ordered = false;
+            }
+        }
+        return new ForecastRows(rows, ordered);
+    }
+
+    int getCount() {
+        return mRows.length;
+    }
+
+    Row get(int position) {
+        return mRows[position];
+    }
+
+    /**
+     * Compares two lists of days.  Both are in date order, so a single merge of the two finds
+     * every removed, inserted and changed day, without the general diff of two sequences.  A
+     * day whose _ID is different, which happens when the location changes, is removed and
+     * inserted rather than changed, so that an item id never changes under a view holder.
+     *
+     * @param base the rows the list shows now, null for an empty list
+     * @return the events, or null if either list isn't in date order.
+     */
+    static Diff diff(ForecastRows base, ForecastRows rows) {
+        if (!rows.mOrdered || (base != null && !base.mOrdered)) {
+            return null;
+        }
+        Diff diff = new Diff(base, rows);
+        int oldCount = base == null ? 0 : base.getCount();
+        int newCount = rows.getCount();
+        int i = 0;
+        int j = 0;
+        // Position in the list as it is while the events are applied in order
+        int position = 0;
+        while (i < oldCount || j < newCount) {
+            if (j == newCount || (i < oldCount && base.mRows[i].mDate < rows.mRows[j].mDate)) {
+                diff.add(Diff.REMOVE, position);
+                i++;
+            } else if (i == oldCount || rows.mRows[j].mDate < base.mRows[i].mDate) {
+                diff.add(Diff.INSERT, position++);
+                j++;
+            } else if (base.mRows[i].mId != rows.mRows[j].mId) {
+                // The new row is inserted on the next step, it sorts before the next old one
+                diff.add(Diff.REMOVE, position);
+                i++;
+            } else {
+                if (!base.mRows[i].sameContent(rows.mRows[j])) {
+                    diff.add(Diff.CHANGE, position);
+                }
+                position++;
+                i++;
+                j++;
+            }
+        }
+        return diff;
+    }
+
+    /**
+     * The item events that turn one list of days into another, with runs of the same event
+     * merged into ranges.
+     */
+    static final class Diff {
+        static final int REMOVE = 0;
+        static final int INSERT = 1;
+        static final int CHANGE = 2;
+
+        private final ForecastRows mBase;
+        private final ForecastRows mRows;
+
+        // Event, position and count for each range
+        private int[] mEvents = new int[3 * 4];
+        private int mEventCount;
+
+        private Diff(ForecastRows base, ForecastRows rows) {
+            mBase = base;
+            mRows = rows;
+        }
+
+        ForecastRows getBase() {
+            return mBase;
+        }
+
+        ForecastRows getRows() {
+            return mRows;
+        }
+
+        int getEventCount() {
+            return mEventCount;
+        }
+
+        private void add(int event, int position) {
+            if (mEventCount > 0) {
+                int last = 3 * (mEventCount - 1);
+                // Removes happen at the same position, inserts and changes at the next one
+                int next = mEvents[last + 1] + (event == REMOVE ? 0 : mEvents[last + 2]);
+                if (mEvents[last] == event && position == next) {
+                    mEvents[last + 2]++;
+                    return;
+                }
+            }
+            if (3 * mEventCount == mEvents.length) {
+                int[] events = new int[2 * mEvents.length];
+                System.arraycopy(mEvents, 0, events, 0, mEvents.length);
+                mEvents = events;
+            }
+            int index = 3 * mEventCount++;
+            mEvents[index] = event;
+            mEvents[index + 1] = position;
+            mEvents[index + 2] = 1;
+        }
+
+        /**
+         * Notifies the adapter of every range, in order.  The adapter must show the base rows
+         * before the first one.
+         */
+        void dispatchTo(RecyclerView.Adapter adapter) {
+            for (int index = 0; index < 3 * mEventCount; index += 3) {
+                int position = mEvents[index + 1];
+                int count = mEvents[index + 2];
+                switch (mEvents[index]) {
+                    case REMOVE:
+                        adapter.notifyItemRangeRemoved(position, count);
+                        break;
+                    case INSERT:
+                        adapter.notifyItemRangeInserted(position, count);
+                        break;
+                    default:
+                        adapter.notifyItemRangeChanged(position, count);
+                }
+            }
+        }
+    }
+}
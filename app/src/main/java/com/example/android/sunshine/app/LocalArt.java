@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.LruCache;
+import android.widget.ImageView;
+
+import java.util.ArrayList;
+
+/**
+ * The icons and art that ship with the app, decoded straight to the size they are shown at and
+ * kept by resource and size.  The list, the detail pane, the widgets, the notifications and the
+ * watch all ask for the same few images at the same few sizes, and used to decode the whole
+ * drawable each time, only to have it scaled down afterwards.
+ *
+ * An image is sampled down by powers of two while decoding and then scaled by density to the
+ * size asked for.  The images that fall out of the cache are decoded into again, unless they
+ * were shown in one of our own views: those may still be on screen, and are left to the
+ * garbage collector.  The images shown are shared, so they must not be changed or recycled.
+ * Everything else gets a copy of its own, since it may hand the image to another process or
+ * thread long after it has left the cache.
+ */
+public final class LocalArt {
+
+    // What the cache may hold, as a part of the heap
+    private static final int CACHE_HEAP_DIVISOR = 16;
+    private static final int MAX_REUSABLE = 3;
+
+    private static LocalArt sInstance;
+
+    private final Resources mResources;
+    private final LruCache<Long, Entry> mCache;
+    private final ArrayList<Bitmap> mReusable = new ArrayList<Bitmap>(MAX_REUSABLE);
+
+    private int mDecodeCount;
+    private int mReuseCount;
+
+    private static final class Entry {
+        final Bitmap mBitmap;
+        // Whether it was set on an ImageView, which may still be drawing it
+        boolean mShown;
+
+        Entry(Bitmap bitmap) {
+            mBitmap = bitmap;
+        }
+    }
+
+    private LocalArt(Context context) {
+        mResources = context.getResources();
+        int maxBytes = (int) Math.min(Integer.MAX_VALUE,
+                Runtime.getRuntime().maxMemory() / CACHE_HEAP_DIVISOR);
+        mCache = new LruCache<Long, Entry>(maxBytes) {
+            @Override
+            protected int sizeOf(Long key, Entry entry) {
+                return entry.mBitmap.getAllocationByteCount();
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, Long key, Entry oldEntry,
+                                        Entry newEntry) {
+                if (!oldEntry.mShown && mReusable.size() < MAX_REUSABLE) {
+                    mReusable.add(oldEntry.mBitmap);
+                }
+            }
+        };
+    }
+
+    public static synchronized LocalArt get(Context context) {
+        if (sInstance == null) {
+            sInstance = new LocalArt(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Returns the image of the drawable resource, fitted inside the size and keeping its aspect
+     * ratio, for a notification, a widget or the watch.  It is a copy of the cached one, which
+     * may be decoded into again once it leaves the cache while a RemoteViews or the watch's
+     * compression still holds the copy.
+     *
+     * @return the image, or null if the resource isn't a bitmap.
+     */
+    public synchronized Bitmap getBitmap(int resId, int width, int height) {
+        Entry entry = getEntry(resId, width, height);
+        if (entry == null) {
+            return null;
+        }
+        // Copied under the lock, before the cached image can be decoded into
+        return entry.mBitmap.copy(entry.mBitmap.getConfig(), false);
+    }
+
+    /**
+     * Shows the drawable resource in the view, decoded to fit inside the size.
+     */
+    public void setImage(ImageView view, int resId, int width, int height) {
+        Bitmap bitmap = null;
+        synchronized (this) {
+            Entry entry = getEntry(resId, width, height);
+            if (entry != null) {
+                entry.mShown = true;
+                bitmap = entry.mBitmap;
+            }
+        }
+        if (bitmap == null) {
+            view.setImageResource(resId);
+        } else {
+            view.setImageBitmap(bitmap);
+        }
+    }
+
+    synchronized int getHitCount() {
+        return mCache.hitCount();
+    }
+
+    synchronized int getDecodeCount() {
+        return mDecodeCount;
+    }
+
+    synchronized int getReuseCount() {
+        return mReuseCount;
+    }
+
+    private Entry getEntry(int resId, int width, int height) {
+        Long key = ((long) resId << 32) | ((long) (width & 0xffff) << 16) | (height & 0xffff);
+        Entry entry = mCache.get(key);
+        if (entry == null) {
+            Bitmap bitmap = decode(resId, width, height);
+            if (bitmap == null) {
+                return null;
+            }
+            entry = new Entry(bitmap);
+            mCache.put(key, entry);
+        }
+        return entry;
+    }
+
+    private Bitmap decode(int resId, int width, int height) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        options.inScaled = false;
+        BitmapFactory.decodeResource(mResources, resId, options);
+        int sourceWidth = options.outWidth;
+        int sourceHeight = options.outHeight;
+        if (sourceWidth <= 0 || sourceHeight <= 0 || width <= 0 || height <= 0) {
+            return null;
+        }
+
+        float scale = Math.min((float) width / sourceWidth, (float) height / sourceHeight);
+        int targetWidth = Math.max(1, Math.round(sourceWidth * scale));
+        int targetHeight = Math.max(1, Math.round(sourceHeight * scale));
+
+        // Skip every other pixel for as long as that leaves enough of them, then scale the rest
+        int sampleSize = 1;
+        while (sourceWidth / (sampleSize * 2) >= targetWidth &&
+                sourceHeight / (sampleSize * 2) >= targetHeight) {
+            sampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        options.inScaled = true;
+        options.inDensity = sourceWidth / sampleSize;
+        options.inTargetDensity = targetWidth;
+        // Mutable, so that it can be decoded into again once it leaves the cache
+        options.inMutable = true;
+        options.inBitmap = takeReusable(targetWidth * targetHeight * 4);
+
+        Bitmap bitmap;
+        try {
+            bitmap = BitmapFactory.decodeResource(mResources, resId, options);
+        } catch (IllegalArgumentException e) {
+            // The reused bitmap didn't suit this image after all
+            options.inBitmap = null;
+            bitmap = BitmapFactory.decodeResource(mResources, resId, options);
+        }
+        if (bitmap == null) {
+            return null;
+        }
+        mDecodeCount++;
+        if (options.inBitmap != null && bitmap == options.inBitmap) {
+            mReuseCount++;
+        }
+        // Drawn at its own size rather than scaled from the density it was decoded for
+        bitmap.setDensity(mResources.getDisplayMetrics().densityDpi);
+        return bitmap;
+    }
+
+    // A bitmap that left the cache and is large enough, if there is one
+    private Bitmap takeReusable(int byteCount) {
+        for (int i = 0; i < mReusable.size(); i++) {
+            Bitmap bitmap = mReusable.get(i);
+            if (bitmap.getAllocationByteCount() >= byteCount) {
+                mReusable.remove(i);
+                return bitmap;
+            }
+        }
+        return null;
+    }
+}
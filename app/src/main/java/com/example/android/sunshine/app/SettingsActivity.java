@@ -146,6 +146,9 @@ public class SettingsActivity extends PreferenceActivity
         } else if ( key.equals(getString(R.string.pref_art_pack_key)) ) {
             // art pack have changed. update lists of weather entries accordingly
             getContentResolver().notifyChange(WeatherContract.WeatherEntry.CONTENT_URI, null);
+            // and fetch all of its art while the list is only showing the first few
+            ArtPackPrefetchJobService.schedule(this, sharedPreferences.getString(key,
+                    getString(R.string.pref_art_pack_sunshine)));
         }
     }
 
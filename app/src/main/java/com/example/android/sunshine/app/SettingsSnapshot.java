@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+
+/**
+ * The user's settings as they were when last read.  Reading a setting used to mean looking up the
+ * preferences, their key and default in the resources and comparing strings, for every row bound
+ * and every widget and notification updated.  The settings are now read once, and read again by
+ * a single listener whenever one of them changes; everything else reads the current snapshot.
+ *
+ * The location status isn't kept here.  The sync adapter writes it from its own thread and the
+ * listeners that watch it read it straight away, before this snapshot could have been updated.
+ */
+public final class SettingsSnapshot {
+
+    private static volatile SettingsSnapshot sCurrent;
+
+    // The preferences only hold a weak reference to their listeners
+    private static SharedPreferences.OnSharedPreferenceChangeListener sListener;
+
+    private final String mLocation;
+    private final boolean mMetric;
+    private final String mArtPack;
+    private final boolean mLocalGraphics;
+    private final boolean mNotificationsEnabled;
+
+    private SettingsSnapshot(Context context, SharedPreferences prefs) {
+        mLocation = prefs.getString(context.getString(R.string.pref_location_key),
+                context.getString(R.string.pref_location_default));
+
+        String metric = context.getString(R.string.pref_units_metric);
+        mMetric = prefs.getString(context.getString(R.string.pref_units_key), metric)
+                .equals(metric);
+
+        String sunshineArtPack = context.getString(R.string.pref_art_pack_sunshine);
+        mArtPack = prefs.getString(context.getString(R.string.pref_art_pack_key), sunshineArtPack);
+        mLocalGraphics = mArtPack.equals(sunshineArtPack);
+
+        mNotificationsEnabled = prefs.getBoolean(
+                context.getString(R.string.pref_enable_notifications_key),
+                Boolean.parseBoolean(context.getString(R.string.pref_enable_notifications_default)));
+    }
+
+    /**
+     * Returns the current settings, reading them the first time.
+     */
+    public static SettingsSnapshot get(Context context) {
+        SettingsSnapshot settings = sCurrent;
+        if (settings == null) {
+            synchronized (SettingsSnapshot.class) {
+                if (sCurrent == null) {
+                    final Context appContext = context.getApplicationContext();
+                    final SharedPreferences prefs =
+                            PreferenceManager.getDefaultSharedPreferences(appContext);
+                    sListener = new SharedPreferences.OnSharedPreferenceChangeListener() {
+                        @Override
+                        public void onSharedPreferenceChanged(SharedPreferences sharedPreferences,
+                                                              String key) {
+                            sCurrent = new SettingsSnapshot(appContext, prefs);
+                        }
+                    };
+                    prefs.registerOnSharedPreferenceChangeListener(sListener);
+                    sCurrent = new SettingsSnapshot(appContext, prefs);
+                }
+                settings = sCurrent;
+            }
+        }
+        return settings;
+    }
+
+    public String getLocation() {
+        return mLocation;
+    }
+
+    public boolean isMetric() {
+        return mMetric;
+    }
+
+    /**
+     * @return the format of the art URLs, with a %s for the name of the art.
+     */
+    public String getArtPack() {
+        return mArtPack;
+    }
+
+    public boolean usesLocalGraphics() {
+        return mLocalGraphics;
+    }
+
+    public boolean areNotificationsEnabled() {
+        return mNotificationsEnabled;
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * What the app shows for each OpenWeatherMap condition id, in tables indexed by the id less
+ * 200, the lowest one.  Each id belongs to a category, such as rain or fog, that has an icon,
+ * art, an art pack URL and a photo; each id also has its own description.
+ *
+ * Based on weather code data found at:
+ * http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+ */
+final class WeatherConditions {
+
+    private static final int FIRST_ID = 200;
+    private static final int LAST_ID = 962;
+
+    static final int CATEGORY_NONE = -1;
+    static final int CATEGORY_STORM = 0;
+    static final int CATEGORY_LIGHT_RAIN = 1;
+    static final int CATEGORY_RAIN = 2;
+    static final int CATEGORY_SNOW = 3;
+    static final int CATEGORY_FOG = 4;
+    static final int CATEGORY_CLEAR = 5;
+    static final int CATEGORY_LIGHT_CLOUDS = 6;
+    static final int CATEGORY_CLOUDS = 7;
+
+    // By category: the name of its art in the art packs, its icon and art, and its photo
+    private static final String[] ART_NAMES = {"storm", "light_rain", "rain", "snow", "fog",
+            "clear", "light_clouds", "clouds"};
+    private static final int[] ICONS = {R.drawable.ic_storm, R.drawable.ic_light_rain,
+            R.drawable.ic_rain, R.drawable.ic_snow, R.drawable.ic_fog, R.drawable.ic_clear,
+            R.drawable.ic_light_clouds, R.drawable.ic_cloudy};
+    private static final int[] ARTS = {R.drawable.art_storm, R.drawable.art_light_rain,
+            R.drawable.art_rain, R.drawable.art_snow, R.drawable.art_fog, R.drawable.art_clear,
+            R.drawable.art_light_clouds, R.drawable.art_clouds};
+    private static final String[] IMAGE_URLS = {
+            "http://upload.wikimedia.org/wikipedia/commons/2/28/Thunderstorm_in_Annemasse,_France.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/a/a0/Rain_on_leaf_504605006.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG",
+            "http://upload.wikimedia.org/wikipedia/commons/e/e6/Westminster_fog_-_London_-_UK.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/7/7e/A_few_trees_and_the_sun_(6009964513).jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/e/e7/Cloudy_Blue_Sky_(5031259890).jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/5/54/Cloudy_hills_in_Elis,_Greece_2.jpg"};
+
+    // The storm photo for dust and tornadoes, the only ids whose photo isn't their category's
+    private static final String DUST_IMAGE_URL =
+            "http://upload.wikimedia.org/wikipedia/commons/d/dc/Raised_dust_ahead_of_a_severe_thunderstorm_1.jpg";
+
+    // By id less FIRST_ID: its category, and its description, or 0 for none
+    private static final byte[] sCategories = new byte[LAST_ID - FIRST_ID + 1];
+    private static final int[] sDescriptions = new int[LAST_ID - FIRST_ID + 1];
+
+    static {
+        // Earlier ranges win where they overlap, 761 is fog rather than storm
+        Arrays.fill(sCategories, (byte) CATEGORY_NONE);
+        category(200, 232, CATEGORY_STORM);
+        category(300, 321, CATEGORY_LIGHT_RAIN);
+        category(500, 504, CATEGORY_RAIN);
+        category(511, 511, CATEGORY_SNOW);
+        category(520, 531, CATEGORY_RAIN);
+        category(600, 622, CATEGORY_SNOW);
+        category(701, 761, CATEGORY_FOG);
+        category(761, 761, CATEGORY_STORM);
+        category(781, 781, CATEGORY_STORM);
+        category(800, 800, CATEGORY_CLEAR);
+        category(801, 801, CATEGORY_LIGHT_CLOUDS);
+        category(802, 804, CATEGORY_CLOUDS);
+
+        for (int id = 200; id <= 232; id++) {
+            description(id, R.string.condition_2xx);
+        }
+        for (int id = 300; id <= 321; id++) {
+            description(id, R.string.condition_3xx);
+        }
+        description(500, R.string.condition_500);
+        description(501, R.string.condition_501);
+        description(502, R.string.condition_502);
+        description(503, R.string.condition_503);
+        description(504, R.string.condition_504);
+        description(511, R.string.condition_511);
+        description(520, R.string.condition_520);
+        description(531, R.string.condition_531);
+        description(600, R.string.condition_600);
+        description(601, R.string.condition_601);
+        description(602, R.string.condition_602);
+        description(611, R.string.condition_611);
+        description(612, R.string.condition_612);
+        description(615, R.string.condition_615);
+        description(616, R.string.condition_616);
+        description(620, R.string.condition_620);
+        description(621, R.string.condition_621);
+        description(622, R.string.condition_622);
+        description(701, R.string.condition_701);
+        description(711, R.string.condition_711);
+        description(721, R.string.condition_721);
+        description(731, R.string.condition_731);
+        description(741, R.string.condition_741);
+        description(751, R.string.condition_751);
+        description(761, R.string.condition_761);
+        description(762, R.string.condition_762);
+        description(771, R.string.condition_771);
+        description(781, R.string.condition_781);
+        description(800, R.string.condition_800);
+        description(801, R.string.condition_801);
+        description(802, R.string.condition_802);
+        description(803, R.string.condition_803);
+        description(804, R.string.condition_804);
+        description(900, R.string.condition_900);
+        description(901, R.string.condition_901);
+        description(902, R.string.condition_902);
+        description(903, R.string.condition_903);
+        description(904, R.string.condition_904);
+        description(905, R.string.condition_905);
+        description(906, R.string.condition_906);
+        description(951, R.string.condition_951);
+        description(952, R.string.condition_952);
+        description(953, R.string.condition_953);
+        description(954, R.string.condition_954);
+        description(955, R.string.condition_955);
+        description(956, R.string.condition_956);
+        description(957, R.string.condition_957);
+        description(958, R.string.condition_958);
+        description(959, R.string.condition_959);
+        description(960, R.string.condition_960);
+        description(961, R.string.condition_961);
+        description(962, R.string.condition_962);
+    }
+
+    // The art URLs of each category for the art pack they were made for
+    private static final class ArtUrls {
+        final String mArtPack;
+        final String[] mUrls = new String[ART_NAMES.length];
+
+        ArtUrls(String artPack) {
+            mArtPack = artPack;
+            for (int category = 0; category < ART_NAMES.length; category++) {
+                mUrls[category] = String.format(Locale.US, artPack, ART_NAMES[category]);
+            }
+        }
+    }
+
+    private static volatile ArtUrls sArtUrls;
+
+    private WeatherConditions() {
+    }
+
+    private static void category(int from, int to, int category) {
+        for (int id = from; id <= to; id++) {
+            if (sCategories[id - FIRST_ID] == CATEGORY_NONE) {
+                sCategories[id - FIRST_ID] = (byte) category;
+            }
+        }
+    }
+
+    private static void description(int id, int stringId) {
+        sDescriptions[id - FIRST_ID] = stringId;
+    }
+
+    /**
+     * @return the category of the condition, or {@link #CATEGORY_NONE} for an unknown one.
+     */
+    static int getCategory(int weatherId) {
+        if (weatherId < FIRST_ID || weatherId > LAST_ID) {
+            return CATEGORY_NONE;
+        }
+        return sCategories[weatherId - FIRST_ID];
+    }
+
+    /**
+     * @return the string resource describing the condition, or 0 for an unknown one.
+     */
+    static int getDescription(int weatherId) {
+        if (weatherId < FIRST_ID || weatherId > LAST_ID) {
+            return 0;
+        }
+        return sDescriptions[weatherId - FIRST_ID];
+    }
+
+    static int getIconResource(int weatherId) {
+        int category = getCategory(weatherId);
+        return category == CATEGORY_NONE ? -1 : ICONS[category];
+    }
+
+    static int getArtResource(int weatherId) {
+        int category = getCategory(weatherId);
+        return category == CATEGORY_NONE ? -1 : ARTS[category];
+    }
+
+    static String getImageUrl(int weatherId) {
+        if (weatherId == 781) {
+            return DUST_IMAGE_URL;
+        }
+        int category = getCategory(weatherId);
+        return category == CATEGORY_NONE ? null : IMAGE_URLS[category];
+    }
+
+    /**
+     * Returns the URL of the condition's art in the art pack that is selected.  The URLs are
+     * built again only when another art pack is selected.
+     */
+    static String getArtUrl(Context context, int weatherId) {
+        int category = getCategory(weatherId);
+        if (category == CATEGORY_NONE) {
+            return null;
+        }
+        String artPack = SettingsSnapshot.get(context).getArtPack();
+        ArtUrls artUrls = sArtUrls;
+        if (artUrls == null || !artUrls.mArtPack.equals(artPack)) {
+            artUrls = new ArtUrls(artPack);
+            sArtUrls = artUrls;
+        }
+        return artUrls.mUrls[category];
+    }
+
+    /**
+     * @return the URLs of the art of every category in the art pack, whatever is selected.
+     */
+    static String[] getArtUrls(String artPack) {
+        return new ArtUrls(artPack).mUrls;
+    }
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+
+/**
+ * Formats temperatures, wind, humidity and pressure the way String.format does with the
+ * format strings in the resources, without creating a Formatter and boxing the values for every
+ * call.  The format strings are split up once per locale, and whole numbers are written straight
+ * into a StringBuilder the caller can reuse.
+ *
+ * Temperatures are shown in whole degrees, so the strings for the degrees that weather actually
+ * reaches are kept and handed out again.  A rounded number looks the same in either unit
+ * system, so one set of strings serves both.
+ */
+public final class WeatherFormatter {
+
+    // Whole degrees whose strings are kept, in either unit
+    private static final int MIN_CACHED_DEGREES = -150;
+    private static final int MAX_CACHED_DEGREES = 200;
+
+    // Beyond this a double has no fraction to round, and String.format is left to print it
+    private static final double MAX_EXACT = 1e15;
+
+    private static final float KMH_TO_MPH = .621371192237334f;
+
+    private static volatile WeatherFormatter sInstance;
+
+    private final Locale mLocale;
+    private final char mZeroDigit;
+
+    private final Template mTemperature;
+    private final Template mWindKmh;
+    private final Template mWindMph;
+    private final Template mHumidity;
+    private final Template mPressure;
+
+    private final String[] mDegrees = new String[MAX_CACHED_DEGREES - MIN_CACHED_DEGREES + 1];
+
+    private WeatherFormatter(Context context, Locale locale) {
+        mLocale = locale;
+        mZeroDigit = DecimalFormatSymbols.getInstance(locale).getZeroDigit();
+        mTemperature = new Template(context.getString(R.string.format_temperature));
+        mWindKmh = new Template(context.getString(R.string.format_wind_kmh));
+        mWindMph = new Template(context.getString(R.string.format_wind_mph));
+        mHumidity = new Template(context.getString(R.string.format_humidity));
+        mPressure = new Template(context.getString(R.string.format_pressure));
+    }
+
+    /**
+     * Returns the formatter for the current locale.
+     */
+    public static WeatherFormatter get(Context context) {
+        Locale locale = Locale.getDefault();
+        WeatherFormatter formatter = sInstance;
+        if (formatter == null || !formatter.mLocale.equals(locale)) {
+            formatter = new WeatherFormatter(context.getApplicationContext(), locale);
+            sInstance = formatter;
+        }
+        return formatter;
+    }
+
+    /**
+     * @param celsius the temperature as it is stored
+     * @param metric  whether to show it in Celsius rather than Fahrenheit
+     * @return the temperature in whole degrees, e.g. "21°".
+     */
+    public String formatTemperature(double celsius, boolean metric) {
+        double temperature = toUnit(celsius, metric);
+        if (!mTemperature.mExact || !(Math.abs(temperature) < MAX_EXACT)) {
+            return String.format(mLocale, mTemperature.mPattern, temperature);
+        }
+        long whole = roundHalfUp(Math.abs(temperature));
+        boolean negative = Double.compare(temperature, 0.0) < 0;
+        long degrees = negative ? -whole : whole;
+        // A temperature just below zero reads "-0", which isn't worth keeping
+        if (degrees < MIN_CACHED_DEGREES || degrees > MAX_CACHED_DEGREES ||
+                (negative && whole == 0)) {
+            return appendTemperature(new StringBuilder(), celsius, metric).toString();
+        }
+        int index = (int) degrees - MIN_CACHED_DEGREES;
+        String formatted = mDegrees[index];
+        if (formatted == null) {
+            // Two threads might both fill it in, with the same string
+            formatted = appendTemperature(new StringBuilder(), celsius, metric).toString();
+            mDegrees[index] = formatted;
+        }
+        return formatted;
+    }
+
+    public StringBuilder appendTemperature(StringBuilder out, double celsius, boolean metric) {
+        return append(out, mTemperature, toUnit(celsius, metric), null);
+    }
+
+    /**
+     * Appends the wind speed and its compass direction, e.g. "8 km/h NW".
+     *
+     * @param speed   the wind speed in km/h, as it is stored
+     * @param degrees the direction the wind comes from
+     */
+    public StringBuilder appendWind(StringBuilder out, float speed, float degrees, boolean metric) {
+        Template template = metric ? mWindKmh : mWindMph;
+        if (!metric) {
+            speed = KMH_TO_MPH * speed;
+        }
+        return append(out, template, speed, getCompassDirection(degrees));
+    }
+
+    public StringBuilder appendHumidity(StringBuilder out, float humidity) {
+        return append(out, mHumidity, humidity, null);
+    }
+
+    public StringBuilder appendPressure(StringBuilder out, float pressure) {
+        return append(out, mPressure, pressure, null);
+    }
+
+    static String getCompassDirection(float degrees) {
+        // From wind direction in degrees, determine compass direction as a string (e.g NW)
+        // You know what's fun, writing really long if/else statements with tons of possible
+        // conditions.  Seriously, try it!
+        String direction = "Unknown";
+        if (degrees >= 337.5 || degrees < 22.5) {
+            direction = "N";
+        } else if (degrees >= 22.5 && degrees < 67.5) {
+            direction = "NE";
+        } else if (degrees >= 67.5 && degrees < 112.5) {
+            direction = "E";
+        } else if (degrees >= 112.5 && degrees < 157.5) {
+            direction = "SE";
+        } else if (degrees >= 157.5 && degrees < 202.5) {
+            direction = "S";
+        } else if (degrees >= 202.5 && degrees < 247.5) {
+            direction = "SW";
+        } else if (degrees >= 247.5 && degrees < 292.5) {
+            direction = "W";
+        } else if (degrees >= 292.5 && degrees < 337.5) {
+            direction = "NW";
+        }
+        return direction;
+    }
+
+    private static double toUnit(double celsius, boolean metric) {
+        // Data stored in Celsius by default.  If user prefers to see in Fahrenheit, convert
+        // the values here.
+        return metric ? celsius : (celsius * 1.8) + 32;
+    }
+
+    // Fills in the template with the number and, if it has one, the text
+    private StringBuilder append(StringBuilder out, Template template, double number,
+                                 String text) {
+        if (!template.mExact || !(Math.abs(number) < MAX_EXACT)) {
+            return out.append(String.format(mLocale, template.mPattern, number, text));
+        }
+        for (int i = 0; i < template.mNumeric.length; i++) {
+            out.append(template.mText[i]);
+            if (template.mNumeric[i]) {
+                appendWholeNumber(out, number);
+            } else {
+                out.append(text);
+            }
+        }
+        return out.append(template.mText[template.mNumeric.length]);
+    }
+
+    /*
+        What %1.0f prints: the number rounded half up, with the locale's digits and a minus sign
+        whenever the number is negative, even if it rounds to zero.
+     */
+    private void appendWholeNumber(StringBuilder out, double number) {
+        if (Double.compare(number, 0.0) < 0) {
+            out.append('-');
+        }
+        long whole = roundHalfUp(Math.abs(number));
+        long divisor = 1;
+        while (divisor <= whole / 10) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            out.append((char) (mZeroDigit + (whole / divisor) % 10));
+        }
+    }
+
+    // The fraction of a double is exact, so this compares the value itself with the half
+    private static long roundHalfUp(double magnitude) {
+        double whole = Math.floor(magnitude);
+        return (long) (magnitude - whole >= 0.5 ? whole + 1 : whole);
+    }
+
+    /*
+        A format string split around its conversions.  The formats in the resources only use a
+        number without decimals as the first argument, a string as the second and %%; one that
+        uses anything else is left to String.format.
+     */
+    private static final class Template {
+        final String mPattern;
+        final boolean mExact;
+        // The text before each conversion, and after the last one
+        final String[] mText;
+        // Whether each conversion is the number or the string
+        final boolean[] mNumeric;
+
+        Template(String pattern) {
+            mPattern = pattern;
+            String[] text = new String[3];
+            boolean[] numeric = new boolean[2];
+            int conversions = 0;
+            boolean exact = true;
+            StringBuilder literal = new StringBuilder();
+            int i = 0;
+            while (exact && i < pattern.length()) {
+                char c = pattern.charAt(i++);
+                if (c != '%') {
+                    literal.append(c);
+                    continue;
+                }
+                if (i < pattern.length() && pattern.charAt(i) == '%') {
+                    literal.append('%');
+                    i++;
+                    continue;
+                }
+                // %[argument$][width][.0]f or %[argument$]s
+                int end = i;
+                while (end < pattern.length() && "0123456789$.".indexOf(pattern.charAt(end)) >= 0) {
+                    end++;
+                }
+                if (end == pattern.length() || conversions == numeric.length) {
+                    exact = false;
+                    break;
+                }
+                String spec = pattern.substring(i, end);
+                char conversion = pattern.charAt(end);
+                int argument = conversions;
+                int dollar = spec.indexOf('$');
+                if (dollar >= 0) {
+                    argument = Integer.parseInt(spec.substring(0, dollar)) - 1;
+                    spec = spec.substring(dollar + 1);
+                }
+                if (conversion == 'f') {
+                    // A width of one or less never pads a number
+                    exact = argument == 0 &&
+                            (spec.equals(".0") || spec.equals("1.0") || spec.equals("0.0"));
+                } else if (conversion == 's') {
+                    exact = argument == 1 && spec.isEmpty();
+                } else {
+                    exact = false;
+                }
+                text[conversions] = literal.toString();
+                numeric[conversions] = conversion == 'f';
+                conversions++;
+                literal.setLength(0);
+                i = end + 1;
+            }
+            text[conversions] = literal.toString();
+
+            mExact = exact;
+            mText = new String[conversions + 1];
+            System.arraycopy(text, 0, mText, 0, conversions + 1);
+            mNumeric = new boolean[conversions];
+            System.arraycopy(numeric, 0, mNumeric, 0, conversions);
+        }
+    }
+}
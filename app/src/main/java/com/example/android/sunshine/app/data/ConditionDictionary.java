@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.example.android.sunshine.app.data.WeatherContract.ConditionEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.Map;
+
+/**
+ * Translates the short descriptions written to the weather table into condition ids.
+ *
+ * Ids are only valid for the database they were read from, so nothing is kept between calls;
+ * a bulk insert passes a map of its own to look every description up only once.
+ */
+final class ConditionDictionary {
+
+    private static final String SQL_INSERT =
+            "INSERT OR IGNORE INTO " + ConditionEntry.TABLE_NAME +
+                    " (" + ConditionEntry.COLUMN_DESCRIPTION + ") VALUES (?)";
+
+    private static final String SQL_SELECT =
+            "SELECT " + ConditionEntry.COLUMN_CONDITION_ID + " FROM " + ConditionEntry.TABLE_NAME +
+                    " WHERE " + ConditionEntry.COLUMN_DESCRIPTION + " = ?";
+
+    private ConditionDictionary() {
+    }
+
+    /**
+     * @return the id of the description, adding it to the dictionary if it is new.
+     */
+    static long idFor(SQLiteDatabase db, String description) {
+        SQLiteStatement insert = db.compileStatement(SQL_INSERT);
+        try {
+            insert.bindString(1, description);
+            insert.executeInsert();
+        } finally {
+            insert.close();
+        }
+        SQLiteStatement select = db.compileStatement(SQL_SELECT);
+        try {
+            select.bindString(1, description);
+            return select.simpleQueryForLong();
+        } finally {
+            select.close();
+        }
+    }
+
+    /**
+     * Returns a copy of the values with the short description replaced by its condition id.
+     * Values without a description are returned as they are.
+     *
+     * @param ids descriptions already looked up during this write, may be null
+     */
+    static ContentValues encode(SQLiteDatabase db, ContentValues values, Map<String, Long> ids) {
+        if (values == null || !values.containsKey(WeatherEntry.COLUMN_SHORT_DESC)) {
+            return values;
+        }
+        ContentValues encoded = new ContentValues(values);
+        String description = encoded.getAsString(WeatherEntry.COLUMN_SHORT_DESC);
+        encoded.remove(WeatherEntry.COLUMN_SHORT_DESC);
+        if (description == null) {
+            // Let the NOT NULL constraint on the weather table reject the row
+            encoded.putNull(WeatherEntry.COLUMN_CONDITION_KEY);
+            return encoded;
+        }
+        Long id = ids == null ? null : ids.get(description);
+        if (id == null) {
+            id = idFor(db, description);
+            if (ids != null) ids.put(description, id);
+        }
+        encoded.put(WeatherEntry.COLUMN_CONDITION_KEY, id);
+        return encoded;
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.example.android.sunshine.app.data.WeatherContract.HistoryEntry;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/**
+ * Keeps the location table to the most recently used locations.
+ *
+ * Every location setting the user ever typed gets a row, and with it a forecast and a history
+ * that nothing else deletes.  Locations are ranked by when their weather was last read; all but
+ * the most recent ones are deleted together with their weather and history.  The ones that stay
+ * keep their forecast, so switching back to one of them shows it straight away while the sync
+ * catches up.
+ */
+final class LocationEvictor {
+
+    private static final String SQL_TOUCH =
+            "UPDATE " + LocationEntry.TABLE_NAME +
+                    " SET " + LocationEntry.COLUMN_LAST_ACCESSED + " = ?" +
+                    " WHERE " + LocationEntry.COLUMN_LOCATION_SETTING + " = ?";
+
+    // Every location but the one to keep, least recently used last, past the ones to keep.
+    // Both parameters are bound in the same order in all three statements below.
+    private static final String EVICTED_LOCATIONS =
+            "SELECT " + LocationEntry._ID + " FROM " + LocationEntry.TABLE_NAME +
+                    " WHERE " + LocationEntry.COLUMN_LOCATION_SETTING + " != ?" +
+                    " ORDER BY " + LocationEntry.COLUMN_LAST_ACCESSED + " DESC, " +
+                    LocationEntry._ID + " DESC" +
+                    " LIMIT -1 OFFSET ?";
+
+    private static final String SQL_DELETE_WEATHER =
+            "DELETE FROM " + WeatherEntry.TABLE_NAME +
+                    " WHERE " + WeatherEntry.COLUMN_LOC_KEY + " IN (" + EVICTED_LOCATIONS + ")";
+
+    private static final String SQL_DELETE_HISTORY =
+            "DELETE FROM " + HistoryEntry.TABLE_NAME +
+                    " WHERE " + HistoryEntry.COLUMN_LOC_KEY + " IN (" + EVICTED_LOCATIONS + ")";
+
+    private static final String SQL_DELETE_LOCATIONS =
+            "DELETE FROM " + LocationEntry.TABLE_NAME +
+                    " WHERE " + LocationEntry._ID + " IN (" + EVICTED_LOCATIONS + ")";
+
+    private LocationEvictor() {
+    }
+
+    /**
+     * Records that the weather of the location was read at {@code now}.
+     *
+     * @return whether the location is stored, and so was written.
+     */
+    static boolean touch(SQLiteDatabase db, String locationSetting, long now) {
+        SQLiteStatement touch = db.compileStatement(SQL_TOUCH);
+        try {
+            touch.bindLong(1, now);
+            touch.bindString(2, locationSetting);
+            return touch.executeUpdateDelete() != 0;
+        } finally {
+            touch.close();
+        }
+    }
+
+    /**
+     * Deletes the least recently used locations with their weather and history until at most
+     * {@code maxLocations} are left.  The location with the setting {@code keepSetting} is never
+     * deleted and counts towards the maximum, whether or not it has been stored yet.
+     *
+     * @return the number of locations that were deleted.
+     */
+    static int evict(SQLiteDatabase db, int maxLocations, String keepSetting) {
+        long othersToKeep = Math.max(maxLocations - 1, 0);
+        db.beginTransaction();
+        try {
+            // The locations go last, the other two statements select their rows through them
+            delete(db, SQL_DELETE_WEATHER, keepSetting, othersToKeep);
+            delete(db, SQL_DELETE_HISTORY, keepSetting, othersToKeep);
+            int evicted = delete(db, SQL_DELETE_LOCATIONS, keepSetting, othersToKeep);
+            db.setTransactionSuccessful();
+            return evicted;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private static int delete(SQLiteDatabase db, String sql, String keepSetting, long othersToKeep) {
+        SQLiteStatement delete = db.compileStatement(sql);
+        try {
+            delete.bindString(1, keepSetting == null ? "" : keepSetting);
+            delete.bindLong(2, othersToKeep);
+            return delete.executeUpdateDelete();
+        } finally {
+            delete.close();
+        }
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteQueryBuilder;
+
+import java.util.HashMap;
+
+/**
+ * Keeps the forecast in the weather table of the database, as the provider always has.
+ */
+final class SqliteWeatherStorage implements WeatherStorageEngine {
+
+    private static final SQLiteQueryBuilder sWeatherByLocationSettingQueryBuilder;
+
+    static{
+        sWeatherByLocationSettingQueryBuilder = new SQLiteQueryBuilder();
+
+        //This is an inner join which looks like
+        //weather INNER JOIN location ON weather.location_id = location._id
+        //INNER JOIN condition ON weather.condition_id = condition.condition_id
+        sWeatherByLocationSettingQueryBuilder.setTables(
+                WeatherContract.WeatherEntry.TABLE_NAME + " INNER JOIN " +
+                        WeatherContract.LocationEntry.TABLE_NAME +
+                        " ON " + WeatherContract.WeatherEntry.TABLE_NAME +
+                        "." + WeatherContract.WeatherEntry.COLUMN_LOC_KEY +
+                        " = " + WeatherContract.LocationEntry.TABLE_NAME +
+                        "." + WeatherContract.LocationEntry._ID +
+                        WeatherProvider.sConditionJoin);
+        sWeatherByLocationSettingQueryBuilder.setProjectionMap(
+                WeatherProvider.buildWeatherProjectionMap(true));
+    }
+
+    //location.location_setting = ?
+    private static final String sLocationSettingSelection =
+            WeatherContract.LocationEntry.TABLE_NAME+
+                    "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? ";
+
+    //location.location_setting = ? AND date >= ?
+    private static final String sLocationSettingWithStartDateSelection =
+            WeatherContract.LocationEntry.TABLE_NAME+
+                    "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " >= ? ";
+
+    //location.location_setting = ? AND date = ?
+    private static final String sLocationSettingAndDaySelection =
+            WeatherContract.LocationEntry.TABLE_NAME +
+                    "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " = ? ";
+
+    // Pages and forecasts are read in the order of the primary key, so a limit stops the scan
+    // early
+    private static final String sDateSortOrder =
+            WeatherContract.WeatherEntry.TABLE_NAME + "." +
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " ASC";
+
+    private final SQLiteOpenHelper mOpenHelper;
+
+    SqliteWeatherStorage(SQLiteOpenHelper openHelper) {
+        mOpenHelper = openHelper;
+    }
+
+    /*
+        The SQL that queryFrom() and queryDay() run, with the selection arguments left as
+        placeholders, so that the tests can look at their query plans.
+     */
+    static String buildFromQuerySql(long startDate, String[] projection, String sortOrder) {
+        return sWeatherByLocationSettingQueryBuilder.buildQuery(projection,
+                startDate == 0 ? sLocationSettingSelection : sLocationSettingWithStartDateSelection,
+                null, null, sortOrder, null);
+    }
+
+    static String buildPageQuerySql(int limit, String[] projection) {
+        return buildForecastQuerySql(projection, Integer.toString(limit));
+    }
+
+    /*
+        The weather of a location from a date on, in date order, with the location setting and
+        the date left as placeholders.  WeatherDao runs it too, so the app's in-process reads
+        and the provider share one definition of the join.
+     */
+    static String buildForecastQuerySql(String[] projection, String limit) {
+        return sWeatherByLocationSettingQueryBuilder.buildQuery(projection,
+                sLocationSettingWithStartDateSelection, null, null, sDateSortOrder, limit);
+    }
+
+    static String buildDayQuerySql(String[] projection, String sortOrder) {
+        return sWeatherByLocationSettingQueryBuilder.buildQuery(
+                projection, sLocationSettingAndDaySelection, null, null, sortOrder, null);
+    }
+
+    @Override
+    public Cursor queryFrom(String locationSetting, long startDate, String[] projection,
+                            String sortOrder) {
+        if (projection == null) projection = WeatherProvider.sWeatherWithLocationDefaultProjection;
+        String[] selectionArgs;
+        String selection;
+
+        if (startDate == 0) {
+            selection = sLocationSettingSelection;
+            selectionArgs = new String[]{locationSetting};
+        } else {
+            selection = sLocationSettingWithStartDateSelection;
+            selectionArgs = new String[]{locationSetting, Long.toString(startDate)};
+        }
+
+        return sWeatherByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
+                projection,
+                selection,
+                selectionArgs,
+                null,
+                null,
+                sortOrder
+        );
+    }
+
+    @Override
+    public Cursor queryPage(String locationSetting, long startDate, int limit,
+                            String[] projection) {
+        if (projection == null) projection = WeatherProvider.sWeatherWithLocationDefaultProjection;
+        return sWeatherByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
+                projection,
+                sLocationSettingWithStartDateSelection,
+                new String[]{locationSetting, Long.toString(startDate)},
+                null,
+                null,
+                sDateSortOrder,
+                Integer.toString(limit)
+        );
+    }
+
+    @Override
+    public Cursor queryDay(String locationSetting, long date, String[] projection,
+                           String sortOrder) {
+        if (projection == null) projection = WeatherProvider.sWeatherWithLocationDefaultProjection;
+        return sWeatherByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
+                projection,
+                sLocationSettingAndDaySelection,
+                new String[]{locationSetting, Long.toString(date)},
+                null,
+                null,
+                sortOrder
+        );
+    }
+
+    @Override
+    public int bulkUpsert(ContentValues[] values) {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        db.beginTransaction();
+        int returnCount = 0;
+        HashMap<String, Long> conditionIds = new HashMap<String, Long>();
+        try {
+            for (ContentValues value : values) {
+                // The table's key replaces a day that is already there
+                long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null,
+                        ConditionDictionary.encode(db, value, conditionIds));
+                if (_id != -1) {
+                    returnCount++;
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return returnCount;
+    }
+
+    @Override
+    public int prune(long lastDate) {
+        return mOpenHelper.getWritableDatabase().delete(WeatherContract.WeatherEntry.TABLE_NAME,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?",
+                new String[]{Long.toString(lastDate)});
+    }
+}
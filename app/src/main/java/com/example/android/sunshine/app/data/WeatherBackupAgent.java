@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.app.backup.BackupAgentHelper;
+import android.app.backup.BackupDataInput;
+import android.app.backup.BackupDataOutput;
+import android.app.backup.FileBackupHelper;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Bundle;
+import android.os.ParcelFileDescriptor;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Backs up the locations and forecasts as a {@link WeatherDbExport}, so that a reinstalled app
+ * shows the weather straight away instead of syncing every location at once.
+ *
+ * The export is a fraction of the size of the database file and doesn't depend on its schema
+ * version.  It is written to the files directory right before each backup and read back into
+ * the database once a restore has put it there.  The restore goes through the provider, which
+ * has to drop the results it cached from before.
+ */
+public class WeatherBackupAgent extends BackupAgentHelper {
+
+    private static final String LOG_TAG = WeatherBackupAgent.class.getSimpleName();
+
+    static final String EXPORT_NAME = "weather-export.bin";
+
+    private static final String BACKUP_KEY = "weather";
+
+    @Override
+    public void onCreate() {
+        addHelper(BACKUP_KEY, new FileBackupHelper(this, EXPORT_NAME));
+    }
+
+    @Override
+    public void onBackup(ParcelFileDescriptor oldState, BackupDataOutput data,
+                         ParcelFileDescriptor newState) throws IOException {
+        File export = new File(getFilesDir(), EXPORT_NAME);
+        FileOutputStream out = new FileOutputStream(export);
+        try {
+            WeatherDbExport.write(database(), out);
+        } finally {
+            out.close();
+        }
+        super.onBackup(oldState, data, newState);
+    }
+
+    @Override
+    public void onRestore(BackupDataInput data, int appVersionCode,
+                          ParcelFileDescriptor newState) throws IOException {
+        super.onRestore(data, appVersionCode, newState);
+
+        File export = new File(getFilesDir(), EXPORT_NAME);
+        if (!export.exists()) {
+            return;
+        }
+        // If it can't be read, the next sync fetches the weather anyway
+        Bundle result = getContentResolver().call(WeatherContract.BASE_CONTENT_URI,
+                WeatherContract.METHOD_IMPORT, export.getPath(), null);
+        if (result != null) {
+            Log.d(LOG_TAG, "Restored " + result.getInt(WeatherContract.EXTRA_IMPORTED_DAYS)
+                    + " days of weather");
+        }
+    }
+
+    private SQLiteDatabase database() {
+        return WeatherDao.getInstance(this).getOpenHelper().getWritableDatabase();
+    }
+}
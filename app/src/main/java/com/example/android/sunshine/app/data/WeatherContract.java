@@ -19,7 +19,9 @@ import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.net.Uri;
 import android.provider.BaseColumns;
-import android.text.format.Time;
+import android.text.format.DateUtils;
+
+import com.example.android.sunshine.app.Days;
 
 /**
  * Defines table and column names for the weather database.
@@ -43,15 +45,22 @@ public class WeatherContract {
     // At least, let's hope not.  Don't be that dev, reader.  Don't be that dev.
     public static final String PATH_WEATHER = "weather";
     public static final String PATH_LOCATION = "location";
+    public static final String PATH_HISTORY = "history";
+    public static final String PATH_SUMMARY = "summary";
+    public static final String PATH_MAINTENANCE = "maintenance";
+
+    // Provider method that reads a WeatherDbExport into the database, for WeatherBackupAgent.
+    // The argument is the path of the export.
+    static final String METHOD_IMPORT = "import_weather";
+
+    // Returned by METHOD_IMPORT: the number of days read, or -1 if the export couldn't be read.
+    static final String EXTRA_IMPORTED_DAYS = "imported_days";
 
     // To make it easy to query for the exact date, we normalize all dates that go into
     // the database to the start of the the Julian day at UTC.
     public static long normalizeDate(long startDate) {
-        // normalize the start date to the beginning of the (UTC) day
-        Time time = new Time();
-        time.set(startDate);
-        int julianDay = Time.getJulianDay(startDate, time.gmtoff);
-        return time.setJulianDay(julianDay);
+        // normalize the start date to the beginning of its local day
+        return Days.normalize(startDate);
     }
 
     /* Inner class that defines the table contents of the location table */
@@ -81,11 +90,39 @@ public class WeatherContract {
         public static final String COLUMN_COORD_LAT = "coord_lat";
         public static final String COLUMN_COORD_LONG = "coord_long";
 
+        // When the location's weather was last read, in milliseconds since the epoch.  The
+        // provider only updates it every so often, so it is accurate to about an hour.
+        public static final String COLUMN_LAST_ACCESSED = "last_accessed";
+
+        // Provider method that deletes the least recently used locations, with their weather and
+        // history, until no more than EXTRA_MAX_LOCATIONS are left.  The argument is the location
+        // setting to keep regardless, normally the preferred one.
+        public static final String METHOD_EVICT = "evict_locations";
+
+        // Optional extra for METHOD_EVICT: how many locations to keep.
+        public static final String EXTRA_MAX_LOCATIONS = "max_locations";
+
+        // Returned by METHOD_EVICT: the number of locations that were deleted.
+        public static final String EXTRA_EVICTED_LOCATIONS = "evicted_locations";
+
         public static Uri buildLocationUri(long id) {
             return ContentUris.withAppendedId(CONTENT_URI, id);
         }
     }
 
+    /*
+        Inner class that defines the table contents of the condition table, a dictionary of the
+        short descriptions the API sends.  There are only a handful of them, so the weather rows
+        store a small integer instead of repeating the text.
+     */
+    public static final class ConditionEntry {
+
+        public static final String TABLE_NAME = "condition";
+
+        public static final String COLUMN_CONDITION_ID = "condition_id";
+        public static final String COLUMN_DESCRIPTION = "description";
+    }
+
     /* Inner class that defines the table contents of the weather table */
     public static final class WeatherEntry implements BaseColumns {
 
@@ -99,6 +136,14 @@ public class WeatherContract {
 
         public static final String TABLE_NAME = "weather";
 
+        // Index over the date column, used when pruning old weather for every location
+        public static final String INDEX_DATE = "weather_date_idx";
+
+        // Query parameters of a page of a location's weather: the days after the date given in
+        // PARAM_AFTER, at most PARAM_LIMIT of them, always in date order.
+        public static final String PARAM_AFTER = "after";
+        public static final String PARAM_LIMIT = "limit";
+
         // Column with the foreign key into the location table.
         public static final String COLUMN_LOC_KEY = "location_id";
         // Date, stored as long in milliseconds since the epoch
@@ -108,7 +153,11 @@ public class WeatherContract {
 
         // Short description and long description of the weather, as provided by API.
         // e.g "clear" vs "sky is clear".
+        // The table itself only stores COLUMN_CONDITION_KEY; the provider accepts and returns
+        // the description under this name and translates through the condition table.
         public static final String COLUMN_SHORT_DESC = "short_desc";
+        // Column with the foreign key into the condition table.
+        public static final String COLUMN_CONDITION_KEY = "condition_id";
 
         // Min and max temperatures for the day (stored as floats)
         public static final String COLUMN_MIN_TEMP = "min";
@@ -126,6 +175,29 @@ public class WeatherContract {
         // Degrees are meteorological degrees (e.g, 0 is north, 180 is south).  Stored as floats.
         public static final String COLUMN_DEGREES = "degrees";
 
+        // Days a location's ids can cover before they would run into the next location's.
+        static final long IDS_PER_LOCATION = 1000000;
+
+        // A date is the local midnight of its day, which is the UTC midnight of the same day
+        // less the offset of the time zone.  Every offset that changes with daylight saving
+        // time lies between -10:00 (Adak in winter) and +13:45 (Chatham in summer), so adding
+        // this brings each local midnight into its own UTC day.  Zones beyond that never change
+        // their offset, so their days still get an id each.
+        static final long DAY_ID_SHIFT =
+                13 * DateUtils.HOUR_IN_MILLIS + 45 * DateUtils.MINUTE_IN_MILLIS;
+
+        /*
+            The weather table is keyed by location and day and has no row id of its own.  The _ID
+            the provider returns is derived from that key instead, so it is unique and stays the
+            same for a day of a location however often the forecast for it is replaced.  The day
+            is the local one the date starts, which a plain division by a day's millis isn't:
+            where the offset grows at midnight, two local midnights fall on one UTC day.
+         */
+        public static long buildWeatherId(long locationId, long date) {
+            return locationId * IDS_PER_LOCATION +
+                    (date + DAY_ID_SHIFT) / DateUtils.DAY_IN_MILLIS;
+        }
+
         public static Uri buildWeatherUri(long id) {
             return ContentUris.withAppendedId(CONTENT_URI, id);
         }
@@ -144,6 +216,23 @@ public class WeatherContract {
                     .appendQueryParameter(COLUMN_DATE, Long.toString(normalizedDate)).build();
         }
 
+        /*
+            The first page of the weather from the start date on.  Pass the date of its last row
+            to buildWeatherLocationPage() for the next one.
+         */
+        public static Uri buildWeatherLocationWithStartDate(
+                String locationSetting, long startDate, int limit) {
+            return buildWeatherLocationWithStartDate(locationSetting, startDate).buildUpon()
+                    .appendQueryParameter(PARAM_LIMIT, Integer.toString(limit)).build();
+        }
+
+        public static Uri buildWeatherLocationPage(
+                String locationSetting, long afterDate, int limit) {
+            return CONTENT_URI.buildUpon().appendPath(locationSetting)
+                    .appendQueryParameter(PARAM_AFTER, Long.toString(afterDate))
+                    .appendQueryParameter(PARAM_LIMIT, Integer.toString(limit)).build();
+        }
+
         public static Uri buildWeatherLocationWithDate(String locationSetting, long date) {
             return CONTENT_URI.buildUpon().appendPath(locationSetting)
                     .appendPath(Long.toString(normalizeDate(date))).build();
@@ -164,5 +253,199 @@ public class WeatherContract {
             else
                 return 0;
         }
+
+        // -1 if the URI doesn't ask for the days after a date
+        public static long getAfterDateFromUri(Uri uri) {
+            String dateString = uri.getQueryParameter(PARAM_AFTER);
+            if (null != dateString && dateString.length() > 0)
+                return Long.parseLong(dateString);
+            else
+                return -1;
+        }
+
+        // 0 if the URI isn't for a page
+        public static int getLimitFromUri(Uri uri) {
+            String limitString = uri.getQueryParameter(PARAM_LIMIT);
+            if (null != limitString && limitString.length() > 0)
+                return Integer.parseInt(limitString);
+            else
+                return 0;
+        }
+    }
+
+    /*
+        Inner class that defines the table contents of the history table.  Past days are moved
+        here from the weather table after every sync, so the weather table only ever holds the
+        forecast.  Rows are grouped into monthly partitions; partitions older than the retention
+        period are downsampled from one row per day to one row per week.
+     */
+    public static final class HistoryEntry {
+
+        public static final Uri CONTENT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_HISTORY).build();
+
+        public static final String CONTENT_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_HISTORY;
+
+        public static final String TABLE_NAME = "weather_history";
+
+        // Provider method that moves every weather row up to and including the date passed as
+        // the argument into the history, then downsamples the partitions that have aged out.
+        public static final String METHOD_ARCHIVE = "archive_history";
+
+        // Optional extra for METHOD_ARCHIVE: how many days of history to keep at day granularity.
+        public static final String EXTRA_RETENTION_DAYS = "retention_days";
+
+        // Returned by METHOD_ARCHIVE: the number of weather rows that were moved.
+        public static final String EXTRA_ARCHIVED_ROWS = "archived_rows";
+
+        // Column with the foreign key into the location table.
+        public static final String COLUMN_LOC_KEY = "location_id";
+        // Partition key, the local year and month of the row as yyyyMM
+        public static final String COLUMN_MONTH = "month";
+        // One of GRANULARITY_DAY or GRANULARITY_WEEK
+        public static final String COLUMN_GRANULARITY = "granularity";
+        // First day covered by the row, in the same form as WeatherEntry.COLUMN_DATE
+        public static final String COLUMN_DATE = "date";
+        // For weekly rows, the most severe (lowest) condition id of the week
+        public static final String COLUMN_WEATHER_ID = "weather_id";
+        // Lowest and highest temperature over the covered days
+        public static final String COLUMN_MIN_TEMP = "min";
+        public static final String COLUMN_MAX_TEMP = "max";
+        // Averages over the covered days
+        public static final String COLUMN_HUMIDITY = "humidity";
+        public static final String COLUMN_PRESSURE = "pressure";
+        public static final String COLUMN_WIND_SPEED = "wind";
+        public static final String COLUMN_DEGREES = "degrees";
+        // Number of days the row covers, 1 for daily rows
+        public static final String COLUMN_DAY_COUNT = "day_count";
+        // Number of those days with thunderstorms, drizzle or rain
+        public static final String COLUMN_RAINY_DAYS = "rainy_days";
+
+        public static final int GRANULARITY_DAY = 0;
+        public static final int GRANULARITY_WEEK = 1;
+
+        public static Uri buildHistoryLocation(String locationSetting) {
+            return CONTENT_URI.buildUpon().appendPath(locationSetting).build();
+        }
+
+        public static Uri buildHistoryLocationWithStartDate(String locationSetting, long startDate) {
+            return CONTENT_URI.buildUpon().appendPath(locationSetting)
+                    .appendQueryParameter(COLUMN_DATE, Long.toString(normalizeDate(startDate)))
+                    .build();
+        }
+
+        public static String getLocationSettingFromUri(Uri uri) {
+            return uri.getPathSegments().get(1);
+        }
+
+        public static long getStartDateFromUri(Uri uri) {
+            String dateString = uri.getQueryParameter(COLUMN_DATE);
+            if (null != dateString && dateString.length() > 0)
+                return Long.parseLong(dateString);
+            else
+                return 0;
+        }
+    }
+
+    /*
+        Aggregates over the forecast and the history of one location, computed by SQLite.  Each
+        row covers one bucket of days: a single day, or a week of the month (days 1-7, 8-14,
+        15-21 and 22 to the end of the month, the same weeks the history is compacted into).
+        History rows that were already compacted into weeks show up as one row per week even
+        when day buckets are asked for.
+     */
+    public static final class SummaryEntry {
+
+        public static final String CONTENT_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_SUMMARY;
+
+        // Query parameters
+        public static final String PARAM_FROM = "from";
+        public static final String PARAM_TO = "to";
+        public static final String PARAM_BUCKET = "bucket";
+
+        public static final String BUCKET_DAY = "day";
+        public static final String BUCKET_WEEK = "week";
+
+        // First day of the bucket
+        public static final String COLUMN_DATE = "date";
+        // Number of days the bucket has data for
+        public static final String COLUMN_DAY_COUNT = "day_count";
+        // Lowest and highest temperature of the bucket
+        public static final String COLUMN_MIN_TEMP = "min";
+        public static final String COLUMN_MAX_TEMP = "max";
+        // Averages over the days of the bucket
+        public static final String COLUMN_HUMIDITY = "humidity";
+        public static final String COLUMN_PRESSURE = "pressure";
+        public static final String COLUMN_WIND_SPEED = "wind";
+        // Number of days with thunderstorms, drizzle or rain
+        public static final String COLUMN_RAINY_DAYS = "rainy_days";
+        // Most severe (lowest) condition id of the bucket
+        public static final String COLUMN_WEATHER_ID = "weather_id";
+
+        public static Uri buildSummaryUri(String locationSetting, long from, long to, String bucket) {
+            return WeatherEntry.CONTENT_URI.buildUpon().appendPath(locationSetting)
+                    .appendPath(PATH_SUMMARY)
+                    .appendQueryParameter(PARAM_FROM, Long.toString(normalizeDate(from)))
+                    .appendQueryParameter(PARAM_TO, Long.toString(normalizeDate(to)))
+                    .appendQueryParameter(PARAM_BUCKET, bucket)
+                    .build();
+        }
+
+        public static String getLocationSettingFromUri(Uri uri) {
+            return uri.getPathSegments().get(1);
+        }
+
+        public static long getFromDateFromUri(Uri uri) {
+            String dateString = uri.getQueryParameter(PARAM_FROM);
+            if (null != dateString && dateString.length() > 0)
+                return Long.parseLong(dateString);
+            else
+                return 0;
+        }
+
+        public static long getToDateFromUri(Uri uri) {
+            String dateString = uri.getQueryParameter(PARAM_TO);
+            if (null != dateString && dateString.length() > 0)
+                return Long.parseLong(dateString);
+            else
+                return Long.MAX_VALUE;
+        }
+
+        public static String getBucketFromUri(Uri uri) {
+            String bucket = uri.getQueryParameter(PARAM_BUCKET);
+            return bucket == null ? BUCKET_DAY : bucket;
+        }
+    }
+
+    /* Inner class that defines the table contents of the maintenance log */
+    public static final class MaintenanceEntry implements BaseColumns {
+
+        public static final Uri CONTENT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_MAINTENANCE).build();
+
+        public static final String CONTENT_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_MAINTENANCE;
+
+        public static final String TABLE_NAME = "maintenance_log";
+
+        // When the run started, in milliseconds since the epoch, and how long it took in ms
+        public static final String COLUMN_STARTED = "started";
+        public static final String COLUMN_DURATION = "duration";
+
+        // Size of the database file, write-ahead log included, in bytes
+        public static final String COLUMN_SIZE_BEFORE = "size_before";
+        public static final String COLUMN_SIZE_AFTER = "size_after";
+
+        // Pages on the database's freelist
+        public static final String COLUMN_FREE_PAGES_BEFORE = "free_pages_before";
+        public static final String COLUMN_FREE_PAGES_AFTER = "free_pages_after";
+
+        // 1 if the integrity check came back clean
+        public static final String COLUMN_INTEGRITY_OK = "integrity_ok";
+
+        // 1 if the write-ahead log was checkpointed
+        public static final String COLUMN_CHECKPOINTED = "checkpointed";
     }
 }
@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDoneException;
+
+import com.example.android.sunshine.app.BuildConfig;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.io.File;
+
+/**
+ * In-process access to the weather database for the app's own components.
+ *
+ * The sync adapter, the widgets, Muzei and the wear handler all run in our process, so going
+ * through the ContentResolver only costs them URI matching, query building, cursor wrapping and
+ * observer registration they never use.  They read through this class instead, which runs the
+ * provider's own forecast SQL, built once, against the same {@link WeatherDbHelper} the
+ * {@link WeatherProvider} uses and copies the rows into primitive arrays.  Writes still go
+ * through the provider so that observers are notified and its query cache stays coherent.
+ */
+public class WeatherDao {
+
+    // The columns read, in the order of the INDEX_ constants below
+    private static final String[] FORECAST_COLUMNS = {
+            WeatherEntry._ID,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP
+    };
+
+    // The same query the provider runs for a page of a weather/<location> URI
+    private static final String SQL_FORECAST =
+            SqliteWeatherStorage.buildForecastQuerySql(FORECAST_COLUMNS, null);
+
+    private static final String SQL_TODAY =
+            SqliteWeatherStorage.buildForecastQuerySql(FORECAST_COLUMNS, "1");
+
+    private static final String SQL_LOCATION_ID =
+            "SELECT " + LocationEntry._ID + " FROM " + LocationEntry.TABLE_NAME +
+                    " WHERE " + LocationEntry.COLUMN_LOCATION_SETTING + " = ?";
+
+    // these indices must match FORECAST_COLUMNS
+    private static final int INDEX_ID = 0;
+    private static final int INDEX_DATE = 1;
+    private static final int INDEX_WEATHER_ID = 2;
+    private static final int INDEX_SHORT_DESC = 3;
+    private static final int INDEX_MAX_TEMP = 4;
+    private static final int INDEX_MIN_TEMP = 5;
+
+    private static WeatherDao sInstance;
+
+    private final WeatherDbHelper mOpenHelper;
+
+    private WeatherDao(Context context) {
+        if (BuildConfig.IN_MEMORY_DATABASE) {
+            mOpenHelper = new WeatherDbHelper(context,
+                    new File(context.getFilesDir(), WeatherDbHelper.SNAPSHOT_NAME));
+        } else {
+            mOpenHelper = new WeatherDbHelper(context);
+        }
+    }
+
+    public static synchronized WeatherDao getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new WeatherDao(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    // The provider shares our helper, so there is only one connection pool per database.
+    WeatherDbHelper getOpenHelper() {
+        return mOpenHelper;
+    }
+
+    /**
+     * Saves the weather when the database is only kept in memory, so that the next process
+     * starts out with it.  The sync adapter calls this after every sync.
+     */
+    public void snapshot() {
+        mOpenHelper.snapshot();
+    }
+
+    /**
+     * @return every day of the forecast for the location from the given day on, in date order.
+     */
+    public Forecast forecastFor(String locationSetting, long fromDay) {
+        return readForecast(SQL_FORECAST, locationSetting, fromDay);
+    }
+
+    /**
+     * @return the first day of the forecast from today on, or an empty forecast if there is none.
+     */
+    public Forecast today(String locationSetting) {
+        return readForecast(SQL_TODAY, locationSetting, System.currentTimeMillis());
+    }
+
+    /**
+     * @return the row id of the location with this setting, or -1 if it isn't stored.
+     */
+    public long locationId(String locationSetting) {
+        try {
+            return DatabaseUtils.longForQuery(mOpenHelper.getReadableDatabase(),
+                    SQL_LOCATION_ID, new String[]{locationSetting});
+        } catch (SQLiteDoneException e) {
+            return -1;
+        }
+    }
+
+    private Forecast readForecast(String sql, String locationSetting, long fromDay) {
+        Cursor cursor = mOpenHelper.getReadableDatabase().rawQuery(sql, new String[]{
+                locationSetting, Long.toString(WeatherContract.normalizeDate(fromDay))});
+        try {
+            return new Forecast(cursor);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Days of a forecast, held as parallel arrays.
+     */
+    public static final class Forecast {
+        private final long[] mIds;
+        private final long[] mDates;
+        private final int[] mWeatherIds;
+        private final String[] mShortDescs;
+        private final double[] mMaxTemps;
+        private final double[] mMinTemps;
+
+        Forecast(Cursor cursor) {
+            int count = cursor.getCount();
+            mIds = new long[count];
+            mDates = new long[count];
+            mWeatherIds = new int[count];
+            mShortDescs = new String[count];
+            mMaxTemps = new double[count];
+            mMinTemps = new double[count];
+            for (int i = 0; cursor.moveToNext(); i++) {
+                mIds[i] = cursor.getLong(INDEX_ID);
+                mDates[i] = cursor.getLong(INDEX_DATE);
+                mWeatherIds[i] = cursor.getInt(INDEX_WEATHER_ID);
+                mShortDescs[i] = cursor.getString(INDEX_SHORT_DESC);
+                mMaxTemps[i] = cursor.getDouble(INDEX_MAX_TEMP);
+                mMinTemps[i] = cursor.getDouble(INDEX_MIN_TEMP);
+            }
+        }
+
+        public int size() {
+            return mIds.length;
+        }
+
+        public boolean isEmpty() {
+            return mIds.length == 0;
+        }
+
+        public long getId(int day) {
+            return mIds[day];
+        }
+
+        public long getDate(int day) {
+            return mDates[day];
+        }
+
+        public int getWeatherId(int day) {
+            return mWeatherIds[day];
+        }
+
+        public String getShortDesc(int day) {
+            return mShortDescs[day];
+        }
+
+        public double getMaxTemp(int day) {
+            return mMaxTemps[day];
+        }
+
+        public double getMinTemp(int day) {
+            return mMinTemps[day];
+        }
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
+import android.database.sqlite.SQLiteStatement;
+
+import com.example.android.sunshine.app.data.WeatherContract.ConditionEntry;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+
+/**
+ * Writes the locations and their forecasts to a compact binary stream, and reads them back.
+ *
+ * An export starts with a magic number and the format version, followed by one record per
+ * condition, location and day of weather, each introduced by a tag byte, and an end tag.
+ * Conditions come first and days refer to them by number, so a description is written once.
+ * Rows are streamed from and to the database one at a time, so memory use doesn't grow with the
+ * size of the export.
+ *
+ * Row ids are not carried over.  An import matches locations by their setting, so it can be
+ * read into a database that already holds some of them, and the newer forecast replaces the
+ * stored days.
+ */
+final class WeatherDbExport {
+
+    private static final int MAGIC = 0x53575858; // "SWXX"
+
+    // Bump when the records change, and keep reading the older versions if it's cheap
+    static final int FORMAT_VERSION = 1;
+
+    private static final int TAG_END = 0;
+    private static final int TAG_CONDITION = 1;
+    private static final int TAG_LOCATION = 2;
+    private static final int TAG_WEATHER = 3;
+
+    //SELECT condition_id, description FROM condition
+    private static final String SQL_CONDITIONS =
+            "SELECT " + ConditionEntry.COLUMN_CONDITION_ID + ", " +
+                    ConditionEntry.COLUMN_DESCRIPTION + " FROM " + ConditionEntry.TABLE_NAME;
+
+    //SELECT _id, location_setting, city_name, coord_lat, coord_long, last_accessed FROM location
+    private static final String SQL_LOCATIONS =
+            "SELECT " + LocationEntry._ID + ", " + LocationEntry.COLUMN_LOCATION_SETTING + ", " +
+                    LocationEntry.COLUMN_CITY_NAME + ", " + LocationEntry.COLUMN_COORD_LAT + ", " +
+                    LocationEntry.COLUMN_COORD_LONG + ", " + LocationEntry.COLUMN_LAST_ACCESSED +
+                    " FROM " + LocationEntry.TABLE_NAME;
+
+    // In the order of the table's key, the order they are read back in the fastest
+    private static final String SQL_WEATHER =
+            "SELECT " + WeatherEntry.COLUMN_LOC_KEY + ", " + WeatherEntry.COLUMN_DATE + ", " +
+                    WeatherEntry.COLUMN_CONDITION_KEY + ", " +
+                    WeatherEntry.COLUMN_WEATHER_ID + ", " +
+                    WeatherEntry.COLUMN_MIN_TEMP + ", " + WeatherEntry.COLUMN_MAX_TEMP + ", " +
+                    WeatherEntry.COLUMN_HUMIDITY + ", " + WeatherEntry.COLUMN_PRESSURE + ", " +
+                    WeatherEntry.COLUMN_WIND_SPEED + ", " + WeatherEntry.COLUMN_DEGREES +
+                    " FROM " + WeatherEntry.TABLE_NAME +
+                    " ORDER BY " + WeatherEntry.COLUMN_LOC_KEY + ", " + WeatherEntry.COLUMN_DATE;
+
+    private static final String SQL_FIND_LOCATION =
+            "SELECT " + LocationEntry._ID + " FROM " + LocationEntry.TABLE_NAME +
+                    " WHERE " + LocationEntry.COLUMN_LOCATION_SETTING + " = ?";
+
+    private static final String SQL_INSERT_LOCATION =
+            "INSERT INTO " + LocationEntry.TABLE_NAME + " (" +
+                    LocationEntry.COLUMN_LOCATION_SETTING + ", " +
+                    LocationEntry.COLUMN_CITY_NAME + ", " +
+                    LocationEntry.COLUMN_COORD_LAT + ", " + LocationEntry.COLUMN_COORD_LONG + ", " +
+                    LocationEntry.COLUMN_LAST_ACCESSED + ") VALUES (?, ?, ?, ?, ?)";
+
+    // The table's key replaces a day that is already stored
+    private static final String SQL_INSERT_WEATHER =
+            "INSERT INTO " + WeatherEntry.TABLE_NAME + " (" +
+                    WeatherEntry.COLUMN_LOC_KEY + ", " + WeatherEntry.COLUMN_DATE + ", " +
+                    WeatherEntry.COLUMN_CONDITION_KEY + ", " +
+                    WeatherEntry.COLUMN_WEATHER_ID + ", " +
+                    WeatherEntry.COLUMN_MIN_TEMP + ", " + WeatherEntry.COLUMN_MAX_TEMP + ", " +
+                    WeatherEntry.COLUMN_HUMIDITY + ", " + WeatherEntry.COLUMN_PRESSURE + ", " +
+                    WeatherEntry.COLUMN_WIND_SPEED + ", " + WeatherEntry.COLUMN_DEGREES +
+                    ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private WeatherDbExport() {
+    }
+
+    /**
+     * Writes every location and its forecast.  The stream is flushed but not closed.
+     *
+     * @return the number of days written.
+     */
+    static int write(SQLiteDatabase db, OutputStream stream) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+
+        int days = 0;
+        // One read transaction, so the days can't refer to a location that was deleted since.
+        // It only reads, so it needn't lock the other connections out of the database meanwhile.
+        db.beginTransactionNonExclusive();
+        try {
+            Cursor cursor = db.rawQuery(SQL_CONDITIONS, null);
+            try {
+                while (cursor.moveToNext()) {
+                    out.writeByte(TAG_CONDITION);
+                    out.writeLong(cursor.getLong(0));
+                    out.writeUTF(cursor.getString(1));
+                }
+            } finally {
+                cursor.close();
+            }
+
+            cursor = db.rawQuery(SQL_LOCATIONS, null);
+            try {
+                while (cursor.moveToNext()) {
+                    out.writeByte(TAG_LOCATION);
+                    out.writeLong(cursor.getLong(0));
+                    out.writeUTF(cursor.getString(1));
+                    out.writeUTF(cursor.getString(2));
+                    out.writeDouble(cursor.getDouble(3));
+                    out.writeDouble(cursor.getDouble(4));
+                    out.writeLong(cursor.getLong(5));
+                }
+            } finally {
+                cursor.close();
+            }
+
+            cursor = db.rawQuery(SQL_WEATHER, null);
+            try {
+                while (cursor.moveToNext()) {
+                    out.writeByte(TAG_WEATHER);
+                    out.writeLong(cursor.getLong(0));
+                    out.writeLong(cursor.getLong(1));
+                    out.writeLong(cursor.getLong(2));
+                    out.writeInt(cursor.getInt(3));
+                    for (int column = 4; column <= 9; column++) {
+                        out.writeDouble(cursor.getDouble(column));
+                    }
+                    days++;
+                }
+            } finally {
+                cursor.close();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        out.writeByte(TAG_END);
+        out.flush();
+        return days;
+    }
+
+    /**
+     * Reads an export into the database in one transaction.  Nothing is written if the stream
+     * isn't a complete export.
+     *
+     * @return the number of days read.
+     * @throws IOException if the stream can't be read or isn't an export this version can read.
+     */
+    static int read(SQLiteDatabase db, InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a weather export");
+        }
+        int version = in.readInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported weather export version " + version);
+        }
+
+        // Ids in the export to ids in this database
+        HashMap<Long, Long> conditionIds = new HashMap<Long, Long>();
+        HashMap<Long, Long> locationIds = new HashMap<Long, Long>();
+
+        SQLiteStatement findLocation = db.compileStatement(SQL_FIND_LOCATION);
+        SQLiteStatement insertLocation = db.compileStatement(SQL_INSERT_LOCATION);
+        SQLiteStatement insertWeather = db.compileStatement(SQL_INSERT_WEATHER);
+        int days = 0;
+        db.beginTransaction();
+        try {
+            int tag;
+            while ((tag = in.readUnsignedByte()) != TAG_END) {
+                switch (tag) {
+                    case TAG_CONDITION: {
+                        long id = in.readLong();
+                        conditionIds.put(id, ConditionDictionary.idFor(db, in.readUTF()));
+                        break;
+                    }
+                    case TAG_LOCATION: {
+                        long id = in.readLong();
+                        String setting = in.readUTF();
+                        String cityName = in.readUTF();
+                        double lat = in.readDouble();
+                        double lon = in.readDouble();
+                        long lastAccessed = in.readLong();
+                        locationIds.put(id, findOrInsertLocation(findLocation, insertLocation,
+                                setting, cityName, lat, lon, lastAccessed));
+                        break;
+                    }
+                    case TAG_WEATHER: {
+                        Long locationId = locationIds.get(in.readLong());
+                        long date = in.readLong();
+                        Long conditionId = conditionIds.get(in.readLong());
+                        if (locationId == null || conditionId == null) {
+                            throw new IOException("Weather refers to a missing record");
+                        }
+                        insertWeather.clearBindings();
+                        insertWeather.bindLong(1, locationId);
+                        insertWeather.bindLong(2, date);
+                        insertWeather.bindLong(3, conditionId);
+                        insertWeather.bindLong(4, in.readInt());
+                        for (int column = 5; column <= 10; column++) {
+                            insertWeather.bindDouble(column, in.readDouble());
+                        }
+                        insertWeather.executeInsert();
+                        days++;
+                        break;
+                    }
+                    default:
+                        throw new IOException("Unknown record " + tag + " in weather export");
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            findLocation.close();
+            insertLocation.close();
+            insertWeather.close();
+        }
+        return days;
+    }
+
+    // A location that is already stored keeps its row, only the forecast is replaced
+    private static long findOrInsertLocation(SQLiteStatement find, SQLiteStatement insert,
+                                             String setting, String cityName, double lat,
+                                             double lon, long lastAccessed) {
+        find.bindString(1, setting);
+        try {
+            return find.simpleQueryForLong();
+        } catch (SQLiteDoneException e) {
+            insert.bindString(1, setting);
+            insert.bindString(2, cityName);
+            insert.bindDouble(3, lat);
+            insert.bindDouble(4, lon);
+            insert.bindLong(5, lastAccessed);
+            return insert.executeInsert();
+        }
+    }
+}
@@ -18,48 +18,147 @@ package com.example.android.sunshine.app.data;
 import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.text.format.DateUtils;
+import android.util.Log;
 
+import com.example.android.sunshine.app.data.WeatherContract.ConditionEntry;
+import com.example.android.sunshine.app.data.WeatherContract.HistoryEntry;
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.MaintenanceEntry;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
 /**
  * Manages a local database for weather data.
  */
 public class WeatherDbHelper extends SQLiteOpenHelper {
 
+    private static final String LOG_TAG = WeatherDbHelper.class.getSimpleName();
+
     // If you change the database schema, you must increment the database version.
-    private static final int DATABASE_VERSION = 2;
+    static final int DATABASE_VERSION = 8;
 
     static final String DATABASE_NAME = "weather.db";
 
+    // Where an in-memory database is kept between processes, in the files directory
+    static final String SNAPSHOT_NAME = "weather-snapshot.db";
+
+    // A WeatherDbExport that a new database starts out with, if the build ships one.  Kiosk
+    // builds put it in their assets so that a fleet doesn't sync every location at first boot.
+    static final String SEED_ASSET = "weather-seed.bin";
+
+    // SQL for the _ID of a weather row, the same as WeatherEntry.buildWeatherId
+    static final String WEATHER_ID_EXPRESSION = "(" +
+            WeatherEntry.TABLE_NAME + "." + WeatherEntry.COLUMN_LOC_KEY + " * " +
+            WeatherEntry.IDS_PER_LOCATION + " + " +
+            "(" + WeatherEntry.TABLE_NAME + "." + WeatherEntry.COLUMN_DATE + " + " +
+            WeatherEntry.DAY_ID_SHIFT + ") / " + DateUtils.DAY_IN_MILLIS + ")";
+
+    private final Context mContext;
+
+    // The snapshot of an in-memory database, null for the one on disk
+    private final File mSnapshotFile;
+
+    // Whether onCreate() has just created the database this helper is opening
+    private boolean mCreated;
+
     public WeatherDbHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        mContext = context;
+        mSnapshotFile = null;
+    }
+
+    /**
+     * Keeps the database in memory only.  Every time it is opened it starts out with the rows
+     * of the snapshot file, and {@link #snapshot()} writes them back.
+     */
+    WeatherDbHelper(Context context, File snapshotFile) {
+        super(context, null, null, DATABASE_VERSION);
+        mContext = context;
+        mSnapshotFile = snapshotFile;
+    }
+
+    /**
+     * Writes an in-memory database to its snapshot file.  Does nothing for the database on disk.
+     */
+    void snapshot() {
+        if (mSnapshotFile != null) {
+            WeatherDbSnapshot.write(getWritableDatabase(), mSnapshotFile);
+        }
+    }
+
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        // An in-memory database has just been created empty
+        boolean restored = mSnapshotFile != null && WeatherDbSnapshot.restore(db, mSnapshotFile);
+        if (mCreated && !restored) {
+            seed(db);
+        }
+        mCreated = false;
+    }
+
+    private void seed(SQLiteDatabase db) {
+        InputStream in;
+        try {
+            in = mContext.getAssets().open(SEED_ASSET);
+        } catch (IOException e) {
+            // Most builds don't ship one
+            return;
+        }
+        try {
+            WeatherDbExport.read(db, in);
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Couldn't seed the weather database", e);
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // nothing to do
+            }
+        }
+    }
+
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        // Lets the maintenance job hand pages freed by deletes back to the file system a few at a
+        // time.  This only takes effect on a new database; existing ones are converted by a
+        // single VACUUM in WeatherDbMaintenance.
+        db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
     }
 
     @Override
     public void onCreate(SQLiteDatabase sqLiteDatabase) {
+        mCreated = true;
+
         // Create a table to hold locations.  A location consists of the string supplied in the
-        // location setting, the city name, and the latitude and longitude
+        // location setting, the city name, the latitude and longitude, and when it was last read
         final String SQL_CREATE_LOCATION_TABLE = "CREATE TABLE " + LocationEntry.TABLE_NAME + " (" +
                 LocationEntry._ID + " INTEGER PRIMARY KEY," +
                 LocationEntry.COLUMN_LOCATION_SETTING + " TEXT UNIQUE NOT NULL, " +
                 LocationEntry.COLUMN_CITY_NAME + " TEXT NOT NULL, " +
                 LocationEntry.COLUMN_COORD_LAT + " REAL NOT NULL, " +
-                LocationEntry.COLUMN_COORD_LONG + " REAL NOT NULL " +
+                LocationEntry.COLUMN_COORD_LONG + " REAL NOT NULL, " +
+                LocationEntry.COLUMN_LAST_ACCESSED + " INTEGER NOT NULL DEFAULT 0" +
                 " );";
 
-        final String SQL_CREATE_WEATHER_TABLE = "CREATE TABLE " + WeatherEntry.TABLE_NAME + " (" +
-                // Why AutoIncrement here, and not above?
-                // Unique keys will be auto-generated in either case.  But for weather
-                // forecasting, it's reasonable to assume the user will want information
-                // for a certain date and all dates *following*, so the forecast data
-                // should be sorted accordingly.
-                WeatherEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT," +
+        // Dictionary of the short descriptions, referenced from the weather table
+        final String SQL_CREATE_CONDITION_TABLE = "CREATE TABLE " + ConditionEntry.TABLE_NAME + " (" +
+                ConditionEntry.COLUMN_CONDITION_ID + " INTEGER PRIMARY KEY, " +
+                ConditionEntry.COLUMN_DESCRIPTION + " TEXT UNIQUE NOT NULL);";
 
+        // Every read of the weather table picks one location and then a date or a range of dates
+        // in ascending order, so the rows are stored clustered on that key: without a rowid the
+        // primary key's b-tree holds the rows themselves and a range scan reads them in place,
+        // instead of walking a separate index and looking every row up by its rowid.  The _ID
+        // column is computed from the key by the provider, see WeatherEntry.buildWeatherId.
+        final String SQL_CREATE_WEATHER_TABLE = "CREATE TABLE " + WeatherEntry.TABLE_NAME + " (" +
                 // the ID of the location entry associated with this weather data
                 WeatherEntry.COLUMN_LOC_KEY + " INTEGER NOT NULL, " +
                 WeatherEntry.COLUMN_DATE + " INTEGER NOT NULL, " +
-                WeatherEntry.COLUMN_SHORT_DESC + " TEXT NOT NULL, " +
+                WeatherEntry.COLUMN_CONDITION_KEY + " INTEGER NOT NULL, " +
                 WeatherEntry.COLUMN_WEATHER_ID + " INTEGER NOT NULL," +
 
                 WeatherEntry.COLUMN_MIN_TEMP + " REAL NOT NULL, " +
@@ -73,26 +172,84 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
                 // Set up the location column as a foreign key to location table.
                 " FOREIGN KEY (" + WeatherEntry.COLUMN_LOC_KEY + ") REFERENCES " +
                 LocationEntry.TABLE_NAME + " (" + LocationEntry._ID + "), " +
+                " FOREIGN KEY (" + WeatherEntry.COLUMN_CONDITION_KEY + ") REFERENCES " +
+                ConditionEntry.TABLE_NAME + " (" + ConditionEntry.COLUMN_CONDITION_ID + "), " +
 
                 // To assure the application have just one weather entry per day
-                // per location, it's created a UNIQUE constraint with REPLACE strategy
-                " UNIQUE (" + WeatherEntry.COLUMN_DATE + ", " +
-                WeatherEntry.COLUMN_LOC_KEY + ") ON CONFLICT REPLACE);";
+                // per location, the key is the location and the day with REPLACE strategy.
+                " PRIMARY KEY (" + WeatherEntry.COLUMN_LOC_KEY + ", " +
+                WeatherEntry.COLUMN_DATE + ") ON CONFLICT REPLACE) WITHOUT ROWID;";
+
+        // The sync adapter prunes old weather across all locations by date alone.
+        final String SQL_CREATE_WEATHER_DATE_INDEX = "CREATE INDEX " + WeatherEntry.INDEX_DATE +
+                " ON " + WeatherEntry.TABLE_NAME + " (" + WeatherEntry.COLUMN_DATE + ");";
+
+        // Past days, moved out of the weather table by the sync adapter.  The key starts with the
+        // location and the month partition, so compacting a month and reading a location's trend
+        // both touch one contiguous range of the table.  Without a rowid the rows live in that
+        // key's b-tree directly instead of in a second one.
+        final String SQL_CREATE_HISTORY_TABLE = "CREATE TABLE " + HistoryEntry.TABLE_NAME + " (" +
+                HistoryEntry.COLUMN_LOC_KEY + " INTEGER NOT NULL, " +
+                HistoryEntry.COLUMN_MONTH + " INTEGER NOT NULL, " +
+                HistoryEntry.COLUMN_GRANULARITY + " INTEGER NOT NULL, " +
+                HistoryEntry.COLUMN_DATE + " INTEGER NOT NULL, " +
+                HistoryEntry.COLUMN_WEATHER_ID + " INTEGER NOT NULL, " +
+
+                HistoryEntry.COLUMN_MIN_TEMP + " REAL NOT NULL, " +
+                HistoryEntry.COLUMN_MAX_TEMP + " REAL NOT NULL, " +
+
+                HistoryEntry.COLUMN_HUMIDITY + " REAL NOT NULL, " +
+                HistoryEntry.COLUMN_PRESSURE + " REAL NOT NULL, " +
+                HistoryEntry.COLUMN_WIND_SPEED + " REAL NOT NULL, " +
+                HistoryEntry.COLUMN_DEGREES + " REAL NOT NULL, " +
+
+                HistoryEntry.COLUMN_DAY_COUNT + " INTEGER NOT NULL, " +
+                HistoryEntry.COLUMN_RAINY_DAYS + " INTEGER NOT NULL, " +
+
+                " FOREIGN KEY (" + HistoryEntry.COLUMN_LOC_KEY + ") REFERENCES " +
+                LocationEntry.TABLE_NAME + " (" + LocationEntry._ID + "), " +
+
+                " PRIMARY KEY (" + HistoryEntry.COLUMN_LOC_KEY + ", " +
+                HistoryEntry.COLUMN_MONTH + ", " +
+                HistoryEntry.COLUMN_GRANULARITY + ", " +
+                HistoryEntry.COLUMN_DATE + ")) WITHOUT ROWID;";
+
+        // One row per run of the maintenance job, see WeatherDbMaintenance.
+        final String SQL_CREATE_MAINTENANCE_TABLE = "CREATE TABLE " + MaintenanceEntry.TABLE_NAME + " (" +
+                MaintenanceEntry._ID + " INTEGER PRIMARY KEY, " +
+                MaintenanceEntry.COLUMN_STARTED + " INTEGER NOT NULL, " +
+                MaintenanceEntry.COLUMN_DURATION + " INTEGER NOT NULL, " +
+                MaintenanceEntry.COLUMN_SIZE_BEFORE + " INTEGER NOT NULL, " +
+                MaintenanceEntry.COLUMN_SIZE_AFTER + " INTEGER NOT NULL, " +
+                MaintenanceEntry.COLUMN_FREE_PAGES_BEFORE + " INTEGER NOT NULL, " +
+                MaintenanceEntry.COLUMN_FREE_PAGES_AFTER + " INTEGER NOT NULL, " +
+                MaintenanceEntry.COLUMN_INTEGRITY_OK + " INTEGER NOT NULL, " +
+                MaintenanceEntry.COLUMN_CHECKPOINTED + " INTEGER NOT NULL);";
 
         sqLiteDatabase.execSQL(SQL_CREATE_LOCATION_TABLE);
+        sqLiteDatabase.execSQL(SQL_CREATE_CONDITION_TABLE);
         sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_TABLE);
+        sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_DATE_INDEX);
+        sqLiteDatabase.execSQL(SQL_CREATE_HISTORY_TABLE);
+        sqLiteDatabase.execSQL(SQL_CREATE_MAINTENANCE_TABLE);
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase sqLiteDatabase, int oldVersion, int newVersion) {
-        // This database is only a cache for online data, so its upgrade policy is
-        // to simply to discard the data and start over
+        // Walk the database through every schema change since its version so that the cached
+        // forecasts survive an update.  Only if there is no migration path do we fall back to
+        // discarding the data and starting over, since this database is only a cache for
+        // online data.
         // Note that this only fires if you change the version number for your database.
         // It does NOT depend on the version number for your application.
-        // If you want to update the schema without wiping data, commenting out the next 2 lines
-        // should be your top priority before modifying this method.
+        if (WeatherDbMigrations.migrate(sqLiteDatabase, oldVersion, newVersion)) {
+            return;
+        }
         sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
         sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
+        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + HistoryEntry.TABLE_NAME);
+        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + ConditionEntry.TABLE_NAME);
+        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + MaintenanceEntry.TABLE_NAME);
         onCreate(sqLiteDatabase);
     }
 }
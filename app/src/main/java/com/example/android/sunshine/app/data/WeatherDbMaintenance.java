@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.MaintenanceEntry;
+
+import java.io.File;
+
+/**
+ * Housekeeping for the weather database, run by {@link WeatherMaintenanceJobService}.
+ *
+ * Every sync replaces the whole forecast and archives yesterday, so pages are freed and reused
+ * all over the file.  A run hands the free pages back to the file system, refreshes the query
+ * planner's statistics, checks the database's integrity and checkpoints the write-ahead log, and
+ * records what it found in the maintenance log.
+ */
+final class WeatherDbMaintenance {
+
+    private static final String LOG_TAG = WeatherDbMaintenance.class.getSimpleName();
+
+    // PRAGMA auto_vacuum value of INCREMENTAL
+    private static final int AUTO_VACUUM_INCREMENTAL = 2;
+
+    // Runs kept in the maintenance log
+    private static final int MAX_LOG_ENTRIES = 60;
+
+    private WeatherDbMaintenance() {
+    }
+
+    /**
+     * Runs every maintenance step on the database and logs the run.
+     *
+     * @param databaseFile the file behind the database, or null for an in-memory one
+     * @param checkpoint   whether to checkpoint the write-ahead log, if the database uses one
+     * @return the row that was added to the maintenance log.
+     */
+    static ContentValues run(SQLiteDatabase db, File databaseFile, boolean checkpoint) {
+        long started = System.currentTimeMillis();
+        long start = SystemClock.elapsedRealtime();
+        long sizeBefore = sizeOf(databaseFile);
+        long freePagesBefore = pragmaForLong(db, "PRAGMA freelist_count");
+
+        boolean integrityOk = "ok".equalsIgnoreCase(pragmaForString(db, "PRAGMA quick_check"));
+        if (!integrityOk) {
+            // Nothing below repairs a damaged file, but it is only a cache and the next failed
+            // open makes the framework delete and recreate it.
+            Log.w(LOG_TAG, "Integrity check of the weather database failed");
+        }
+
+        if (pragmaForLong(db, "PRAGMA auto_vacuum") == AUTO_VACUUM_INCREMENTAL) {
+            // Frees one page per step, so it only finishes once every row has been read
+            Cursor vacuum = db.rawQuery("PRAGMA incremental_vacuum", null);
+            try {
+                while (vacuum.moveToNext()) {
+                    // nothing to read
+                }
+            } finally {
+                vacuum.close();
+            }
+        } else {
+            // Databases created before auto_vacuum was set need one full VACUUM to switch over
+            db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+            db.execSQL("VACUUM");
+        }
+
+        db.execSQL("ANALYZE");
+
+        boolean checkpointed = false;
+        if (checkpoint && db.isWriteAheadLoggingEnabled()) {
+            // TRUNCATE, which also shrinks the log file, needs the SQLite that shipped with M
+            pragmaForLong(db, Build.VERSION.SDK_INT >= Build.VERSION_CODES.M ?
+                    "PRAGMA wal_checkpoint(TRUNCATE)" : "PRAGMA wal_checkpoint(RESTART)");
+            checkpointed = true;
+        }
+
+        ContentValues run = new ContentValues();
+        run.put(MaintenanceEntry.COLUMN_STARTED, started);
+        run.put(MaintenanceEntry.COLUMN_SIZE_BEFORE, sizeBefore);
+        run.put(MaintenanceEntry.COLUMN_SIZE_AFTER, sizeOf(databaseFile));
+        run.put(MaintenanceEntry.COLUMN_FREE_PAGES_BEFORE, freePagesBefore);
+        run.put(MaintenanceEntry.COLUMN_FREE_PAGES_AFTER,
+                pragmaForLong(db, "PRAGMA freelist_count"));
+        run.put(MaintenanceEntry.COLUMN_INTEGRITY_OK, integrityOk ? 1 : 0);
+        run.put(MaintenanceEntry.COLUMN_CHECKPOINTED, checkpointed ? 1 : 0);
+        run.put(MaintenanceEntry.COLUMN_DURATION, SystemClock.elapsedRealtime() - start);
+
+        db.beginTransaction();
+        try {
+            db.insert(MaintenanceEntry.TABLE_NAME, null, run);
+            db.delete(MaintenanceEntry.TABLE_NAME, MaintenanceEntry._ID + " NOT IN (SELECT " +
+                    MaintenanceEntry._ID + " FROM " + MaintenanceEntry.TABLE_NAME +
+                    " ORDER BY " + MaintenanceEntry._ID + " DESC LIMIT " + MAX_LOG_ENTRIES + ")",
+                    null);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return run;
+    }
+
+    // The database file and its write-ahead log
+    private static long sizeOf(File databaseFile) {
+        if (databaseFile == null) {
+            return 0;
+        }
+        return databaseFile.length() + new File(databaseFile.getPath() + "-wal").length();
+    }
+
+    // Pragmas that return a value have to be run as queries
+    private static long pragmaForLong(SQLiteDatabase db, String pragma) {
+        Cursor cursor = db.rawQuery(pragma, null);
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static String pragmaForString(SQLiteDatabase db, String pragma) {
+        Cursor cursor = db.rawQuery(pragma, null);
+        try {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+/**
+ * Incremental schema migrations for the weather database.
+ *
+ * Each step takes the database from one version to the next while keeping its rows, so a schema
+ * change no longer empties the app and forces a full sync for every location.  A step has to
+ * produce exactly the schema that {@link WeatherDbHelper#onCreate} builds for that version; once
+ * a step has shipped it must never be edited, only followed by a new one.  That is also why the
+ * steps spell out table and column names instead of using the contract constants.
+ */
+final class WeatherDbMigrations {
+
+    private static final String LOG_TAG = WeatherDbMigrations.class.getSimpleName();
+
+    // Databases older than this predate the migrations and are rebuilt from scratch.
+    static final int FIRST_MIGRATABLE_VERSION = 2;
+
+    private WeatherDbMigrations() {
+    }
+
+    /**
+     * Runs every step between the two versions.  This is called from onUpgrade, which already
+     * runs inside a transaction, so a failing step leaves the database untouched.
+     *
+     * @return false if there is no path between the versions and the caller should rebuild the
+     * database instead.
+     */
+    static boolean migrate(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion < FIRST_MIGRATABLE_VERSION) {
+            return false;
+        }
+        for (int version = oldVersion + 1; version <= newVersion; version++) {
+            if (!upgradeTo(db, version)) {
+                Log.w(LOG_TAG, "No migration to version " + version);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean upgradeTo(SQLiteDatabase db, int version) {
+        switch (version) {
+            case 3:
+                upgradeToVersion3(db);
+                return true;
+            case 4:
+                upgradeToVersion4(db);
+                return true;
+            case 5:
+                upgradeToVersion5(db);
+                return true;
+            case 6:
+                upgradeToVersion6(db);
+                return true;
+            case 7:
+                upgradeToVersion7(db);
+                return true;
+            case 8:
+                upgradeToVersion8(db);
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /*
+        Version 3 flipped the weather table's unique constraint to (location_id, date) and added
+        an index on date.  SQLite can't alter a table constraint, so the table is copied.
+     */
+    private static void upgradeToVersion3(SQLiteDatabase db) {
+        final String columns = "_id, location_id, date, short_desc, weather_id, " +
+                "min, max, humidity, pressure, wind, degrees";
+
+        db.execSQL("ALTER TABLE weather RENAME TO weather_v2");
+        db.execSQL("CREATE TABLE weather (" +
+                "_id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                "location_id INTEGER NOT NULL, " +
+                "date INTEGER NOT NULL, " +
+                "short_desc TEXT NOT NULL, " +
+                "weather_id INTEGER NOT NULL," +
+                "min REAL NOT NULL, " +
+                "max REAL NOT NULL, " +
+                "humidity REAL NOT NULL, " +
+                "pressure REAL NOT NULL, " +
+                "wind REAL NOT NULL, " +
+                "degrees REAL NOT NULL, " +
+                " FOREIGN KEY (location_id) REFERENCES location (_id), " +
+                " UNIQUE (location_id, date) ON CONFLICT REPLACE);");
+        db.execSQL("INSERT INTO weather (" + columns + ") SELECT " + columns +
+                " FROM weather_v2");
+        db.execSQL("DROP TABLE weather_v2");
+        db.execSQL("CREATE INDEX weather_date_idx ON weather (date);");
+    }
+
+    // Version 4 added the history table that past days are archived into.
+    private static void upgradeToVersion4(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE weather_history (" +
+                "location_id INTEGER NOT NULL, " +
+                "month INTEGER NOT NULL, " +
+                "granularity INTEGER NOT NULL, " +
+                "date INTEGER NOT NULL, " +
+                "weather_id INTEGER NOT NULL, " +
+                "min REAL NOT NULL, " +
+                "max REAL NOT NULL, " +
+                "humidity REAL NOT NULL, " +
+                "pressure REAL NOT NULL, " +
+                "wind REAL NOT NULL, " +
+                "degrees REAL NOT NULL, " +
+                "day_count INTEGER NOT NULL, " +
+                "rainy_days INTEGER NOT NULL, " +
+                " FOREIGN KEY (location_id) REFERENCES location (_id), " +
+                " PRIMARY KEY (location_id, month, granularity, date)) WITHOUT ROWID;");
+    }
+
+    /*
+        Version 5 moved the short descriptions into the condition dictionary and replaced the
+        weather table's short_desc column with a condition_id referencing it.
+     */
+    private static void upgradeToVersion5(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE condition (" +
+                "condition_id INTEGER PRIMARY KEY, " +
+                "description TEXT UNIQUE NOT NULL);");
+        db.execSQL("INSERT INTO condition (description) SELECT DISTINCT short_desc FROM weather");
+
+        db.execSQL("ALTER TABLE weather RENAME TO weather_v4");
+        db.execSQL("CREATE TABLE weather (" +
+                "_id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                "location_id INTEGER NOT NULL, " +
+                "date INTEGER NOT NULL, " +
+                "condition_id INTEGER NOT NULL, " +
+                "weather_id INTEGER NOT NULL," +
+                "min REAL NOT NULL, " +
+                "max REAL NOT NULL, " +
+                "humidity REAL NOT NULL, " +
+                "pressure REAL NOT NULL, " +
+                "wind REAL NOT NULL, " +
+                "degrees REAL NOT NULL, " +
+                " FOREIGN KEY (location_id) REFERENCES location (_id), " +
+                " FOREIGN KEY (condition_id) REFERENCES condition (condition_id), " +
+                " UNIQUE (location_id, date) ON CONFLICT REPLACE);");
+        db.execSQL("INSERT INTO weather (_id, location_id, date, condition_id, weather_id, " +
+                "min, max, humidity, pressure, wind, degrees) " +
+                "SELECT w._id, w.location_id, w.date, c.condition_id, w.weather_id, " +
+                "w.min, w.max, w.humidity, w.pressure, w.wind, w.degrees " +
+                "FROM weather_v4 AS w INNER JOIN condition AS c ON c.description = w.short_desc");
+        db.execSQL("DROP TABLE weather_v4");
+        db.execSQL("CREATE INDEX weather_date_idx ON weather (date);");
+    }
+
+    /*
+        Version 6 clustered the weather table on its (location_id, date) key, without a rowid.
+        The old _id values are not kept; the provider derives them from the key now.
+     */
+    private static void upgradeToVersion6(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE weather RENAME TO weather_v5");
+        db.execSQL("CREATE TABLE weather (" +
+                "location_id INTEGER NOT NULL, " +
+                "date INTEGER NOT NULL, " +
+                "condition_id INTEGER NOT NULL, " +
+                "weather_id INTEGER NOT NULL," +
+                "min REAL NOT NULL, " +
+                "max REAL NOT NULL, " +
+                "humidity REAL NOT NULL, " +
+                "pressure REAL NOT NULL, " +
+                "wind REAL NOT NULL, " +
+                "degrees REAL NOT NULL, " +
+                " FOREIGN KEY (location_id) REFERENCES location (_id), " +
+                " FOREIGN KEY (condition_id) REFERENCES condition (condition_id), " +
+                " PRIMARY KEY (location_id, date) ON CONFLICT REPLACE) WITHOUT ROWID;");
+        db.execSQL("INSERT INTO weather (location_id, date, condition_id, weather_id, " +
+                "min, max, humidity, pressure, wind, degrees) " +
+                "SELECT location_id, date, condition_id, weather_id, " +
+                "min, max, humidity, pressure, wind, degrees FROM weather_v5");
+        db.execSQL("DROP TABLE weather_v5");
+        db.execSQL("CREATE INDEX weather_date_idx ON weather (date);");
+    }
+
+    // Version 7 started tracking when each location was last read, to evict the stale ones.
+    private static void upgradeToVersion7(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE location ADD COLUMN last_accessed INTEGER NOT NULL DEFAULT 0");
+    }
+
+    // Version 8 added the log of the maintenance job's runs.
+    private static void upgradeToVersion8(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE maintenance_log (" +
+                "_id INTEGER PRIMARY KEY, " +
+                "started INTEGER NOT NULL, " +
+                "duration INTEGER NOT NULL, " +
+                "size_before INTEGER NOT NULL, " +
+                "size_after INTEGER NOT NULL, " +
+                "free_pages_before INTEGER NOT NULL, " +
+                "free_pages_after INTEGER NOT NULL, " +
+                "integrity_ok INTEGER NOT NULL, " +
+                "checkpointed INTEGER NOT NULL);");
+    }
+}
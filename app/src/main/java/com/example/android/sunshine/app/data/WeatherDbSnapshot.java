@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.ConditionEntry;
+import com.example.android.sunshine.app.data.WeatherContract.HistoryEntry;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.io.File;
+
+/**
+ * Copies an in-memory weather database to a file and back.
+ *
+ * The snapshot is an ordinary SQLite file with one plain copy of each table, attached to the
+ * database for the copy.  It is only a cache: a snapshot that was written by another schema
+ * version or can't be read is ignored, and the next sync fills the database again.
+ */
+final class WeatherDbSnapshot {
+
+    private static final String LOG_TAG = WeatherDbSnapshot.class.getSimpleName();
+
+    private static final String SCHEMA = "snapshot";
+
+    // Parents before the tables that reference them.  The maintenance log isn't worth keeping.
+    private static final String[] TABLES = {
+            LocationEntry.TABLE_NAME,
+            ConditionEntry.TABLE_NAME,
+            WeatherEntry.TABLE_NAME,
+            HistoryEntry.TABLE_NAME
+    };
+
+    private WeatherDbSnapshot() {
+    }
+
+    /**
+     * Copies the snapshot's rows into the freshly created, empty database.
+     *
+     * @return whether there was a snapshot of the current schema version to restore.
+     */
+    static boolean restore(SQLiteDatabase db, File snapshot) {
+        if (!snapshot.exists()) {
+            return false;
+        }
+        try {
+            attach(db, snapshot);
+            try {
+                if (DatabaseUtils.longForQuery(db, "PRAGMA " + SCHEMA + ".user_version", null) !=
+                        WeatherDbHelper.DATABASE_VERSION) {
+                    return false;
+                }
+                db.beginTransaction();
+                try {
+                    for (String table : TABLES) {
+                        // The snapshot's tables were created from ours, so the columns line up
+                        db.execSQL("INSERT INTO main." + table +
+                                " SELECT * FROM " + SCHEMA + "." + table);
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+                return true;
+            } finally {
+                db.execSQL("DETACH DATABASE " + SCHEMA);
+            }
+        } catch (SQLiteException e) {
+            Log.w(LOG_TAG, "Couldn't restore the weather snapshot, starting empty", e);
+            return false;
+        }
+    }
+
+    /**
+     * Replaces the snapshot with the current contents of the database.  The new snapshot is
+     * written next to the old one first, so a crash never leaves half a snapshot behind.
+     */
+    static void write(SQLiteDatabase db, File snapshot) {
+        File next = new File(snapshot.getPath() + ".tmp");
+        next.delete();
+        attach(db, next);
+        try {
+            db.beginTransaction();
+            try {
+                for (String table : TABLES) {
+                    db.execSQL("CREATE TABLE " + SCHEMA + "." + table +
+                            " AS SELECT * FROM main." + table);
+                }
+                db.execSQL("PRAGMA " + SCHEMA + ".user_version = " +
+                        WeatherDbHelper.DATABASE_VERSION);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        } finally {
+            db.execSQL("DETACH DATABASE " + SCHEMA);
+        }
+        if (!next.renameTo(snapshot)) {
+            Log.w(LOG_TAG, "Couldn't replace the weather snapshot");
+            next.delete();
+        }
+    }
+
+    // ATTACH can't run inside a transaction, the copies each run in one of their own
+    private static void attach(SQLiteDatabase db, File file) {
+        db.execSQL("ATTACH DATABASE ? AS " + SCHEMA, new Object[]{file.getPath()});
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.example.android.sunshine.app.data.WeatherContract.HistoryEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/**
+ * Moves past days out of the weather table and into the history table, and downsamples old
+ * history.
+ *
+ * The weather table is what every screen reads, so it is kept to the forecast itself.  Past days
+ * go to the history table one row per day.  The history is partitioned by month, and once a
+ * whole month is older than the retention period its daily rows are replaced by one row per week
+ * (days 1-7, 8-14, 15-21 and 22 to the end of the month), so years of history stay small.
+ *
+ * Everything runs as set based SQL inside a single transaction; no rows are read into Java.
+ */
+final class WeatherHistoryArchiver {
+
+    private static final String MONTH_OF_DATE = monthOf(HistoryEntry.COLUMN_DATE);
+    private static final String WEEK_OF_MONTH = weekOfMonth(HistoryEntry.COLUMN_DATE);
+
+    // Thunderstorm (2xx), drizzle (3xx) and rain (5xx) condition codes.
+    static final String IS_RAINY =
+            "(" + WeatherEntry.COLUMN_WEATHER_ID + " BETWEEN 200 AND 599)";
+
+    private static final String HISTORY_COLUMNS =
+            HistoryEntry.COLUMN_LOC_KEY + ", " +
+                    HistoryEntry.COLUMN_MONTH + ", " +
+                    HistoryEntry.COLUMN_GRANULARITY + ", " +
+                    HistoryEntry.COLUMN_DATE + ", " +
+                    HistoryEntry.COLUMN_WEATHER_ID + ", " +
+                    HistoryEntry.COLUMN_MIN_TEMP + ", " +
+                    HistoryEntry.COLUMN_MAX_TEMP + ", " +
+                    HistoryEntry.COLUMN_HUMIDITY + ", " +
+                    HistoryEntry.COLUMN_PRESSURE + ", " +
+                    HistoryEntry.COLUMN_WIND_SPEED + ", " +
+                    HistoryEntry.COLUMN_DEGREES + ", " +
+                    HistoryEntry.COLUMN_DAY_COUNT + ", " +
+                    HistoryEntry.COLUMN_RAINY_DAYS;
+
+    private static final String SQL_ARCHIVE_DAYS =
+            "INSERT OR REPLACE INTO " + HistoryEntry.TABLE_NAME + " (" + HISTORY_COLUMNS + ")" +
+                    " SELECT " +
+                    WeatherEntry.COLUMN_LOC_KEY + ", " +
+                    MONTH_OF_DATE + ", " +
+                    HistoryEntry.GRANULARITY_DAY + ", " +
+                    WeatherEntry.COLUMN_DATE + ", " +
+                    WeatherEntry.COLUMN_WEATHER_ID + ", " +
+                    WeatherEntry.COLUMN_MIN_TEMP + ", " +
+                    WeatherEntry.COLUMN_MAX_TEMP + ", " +
+                    WeatherEntry.COLUMN_HUMIDITY + ", " +
+                    WeatherEntry.COLUMN_PRESSURE + ", " +
+                    WeatherEntry.COLUMN_WIND_SPEED + ", " +
+                    WeatherEntry.COLUMN_DEGREES + ", " +
+                    "1, " +
+                    IS_RAINY +
+                    " FROM " + WeatherEntry.TABLE_NAME +
+                    " WHERE " + WeatherEntry.COLUMN_DATE + " <= ?";
+
+    private static final String SQL_DELETE_ARCHIVED_DAYS =
+            "DELETE FROM " + WeatherEntry.TABLE_NAME +
+                    " WHERE " + WeatherEntry.COLUMN_DATE + " <= ?";
+
+    // A partition needs compacting while it is old enough and still has daily rows.  Weekly
+    // rows it already has are folded in again, so days archived late are not lost.
+    private static final String STALE_PARTITION =
+            HistoryEntry.COLUMN_MONTH + " < ? AND EXISTS (SELECT 1 FROM " +
+                    HistoryEntry.TABLE_NAME + " AS d WHERE d." +
+                    HistoryEntry.COLUMN_LOC_KEY + " = " + HistoryEntry.TABLE_NAME + "." +
+                    HistoryEntry.COLUMN_LOC_KEY + " AND d." +
+                    HistoryEntry.COLUMN_MONTH + " = " + HistoryEntry.TABLE_NAME + "." +
+                    HistoryEntry.COLUMN_MONTH + " AND d." +
+                    HistoryEntry.COLUMN_GRANULARITY + " = " + HistoryEntry.GRANULARITY_DAY + ")";
+
+    private static final String COMPACTION_TABLE = "weather_history_compaction";
+
+    // Averages are weighted by the number of days behind each row, so folding a weekly row in
+    // again gives the same result as compacting its days in one go.
+    private static final String SQL_AGGREGATE_WEEKS =
+            "CREATE TEMP TABLE " + COMPACTION_TABLE + " AS SELECT " +
+                    HistoryEntry.COLUMN_LOC_KEY + ", " +
+                    HistoryEntry.COLUMN_MONTH + ", " +
+                    HistoryEntry.GRANULARITY_WEEK + " AS " + HistoryEntry.COLUMN_GRANULARITY + ", " +
+                    "MIN(" + HistoryEntry.COLUMN_DATE + ") AS " + HistoryEntry.COLUMN_DATE + ", " +
+                    "MIN(" + HistoryEntry.COLUMN_WEATHER_ID + ") AS " +
+                    HistoryEntry.COLUMN_WEATHER_ID + ", " +
+                    "MIN(" + HistoryEntry.COLUMN_MIN_TEMP + ") AS " +
+                    HistoryEntry.COLUMN_MIN_TEMP + ", " +
+                    "MAX(" + HistoryEntry.COLUMN_MAX_TEMP + ") AS " +
+                    HistoryEntry.COLUMN_MAX_TEMP + ", " +
+                    weightedAverage(HistoryEntry.COLUMN_HUMIDITY) + ", " +
+                    weightedAverage(HistoryEntry.COLUMN_PRESSURE) + ", " +
+                    weightedAverage(HistoryEntry.COLUMN_WIND_SPEED) + ", " +
+                    weightedAverage(HistoryEntry.COLUMN_DEGREES) + ", " +
+                    "SUM(" + HistoryEntry.COLUMN_DAY_COUNT + ") AS " +
+                    HistoryEntry.COLUMN_DAY_COUNT + ", " +
+                    "SUM(" + HistoryEntry.COLUMN_RAINY_DAYS + ") AS " +
+                    HistoryEntry.COLUMN_RAINY_DAYS +
+                    " FROM " + HistoryEntry.TABLE_NAME +
+                    " WHERE " + STALE_PARTITION +
+                    " GROUP BY " + HistoryEntry.COLUMN_LOC_KEY + ", " +
+                    HistoryEntry.COLUMN_MONTH + ", " + WEEK_OF_MONTH;
+
+    private static final String SQL_DELETE_STALE_PARTITIONS =
+            "DELETE FROM " + HistoryEntry.TABLE_NAME + " WHERE " + STALE_PARTITION;
+
+    private static final String SQL_INSERT_WEEKS =
+            "INSERT INTO " + HistoryEntry.TABLE_NAME + " (" + HISTORY_COLUMNS + ")" +
+                    " SELECT " + HISTORY_COLUMNS + " FROM " + COMPACTION_TABLE;
+
+    private WeatherHistoryArchiver() {
+    }
+
+    // The local year and month of a date, as the yyyyMM partition key.
+    static String monthOf(String date) {
+        return "CAST(strftime('%Y%m', " + date + " / 1000, 'unixepoch', 'localtime') AS INTEGER)";
+    }
+
+    // The week of the month a date falls into, 0 to 3.  Days 29 to 31 belong to the last week.
+    static String weekOfMonth(String date) {
+        return "MIN((CAST(strftime('%d', " + date +
+                " / 1000, 'unixepoch', 'localtime') AS INTEGER) - 1) / 7, 3)";
+    }
+
+    static String weightedAverage(String column) {
+        return "SUM(" + column + " * " + HistoryEntry.COLUMN_DAY_COUNT + ") / SUM(" +
+                HistoryEntry.COLUMN_DAY_COUNT + ") AS " + column;
+    }
+
+    /**
+     * Archives every weather row dated on or before {@code archiveBefore} and downsamples the
+     * monthly partitions that end before {@code dailyRetentionStart}.
+     *
+     * @return the number of weather rows that were moved into the history.
+     */
+    static int archive(SQLiteDatabase db, long archiveBefore, long dailyRetentionStart) {
+        db.beginTransaction();
+        try {
+            String[] archiveArgs = new String[]{Long.toString(archiveBefore)};
+            db.execSQL(SQL_ARCHIVE_DAYS, archiveArgs);
+
+            SQLiteStatement delete = db.compileStatement(SQL_DELETE_ARCHIVED_DAYS);
+            int archived;
+            try {
+                delete.bindLong(1, archiveBefore);
+                archived = delete.executeUpdateDelete();
+            } finally {
+                delete.close();
+            }
+
+            compact(db, dailyRetentionStart);
+
+            db.setTransactionSuccessful();
+            return archived;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private static void compact(SQLiteDatabase db, long dailyRetentionStart) {
+        // Only whole months are compacted, so a partition is stale once it ends before the month
+        // the retention period starts in.
+        SQLiteStatement month = db.compileStatement("SELECT " + monthOf("?"));
+        String[] partitionArgs;
+        try {
+            month.bindLong(1, dailyRetentionStart);
+            partitionArgs = new String[]{Long.toString(month.simpleQueryForLong())};
+        } finally {
+            month.close();
+        }
+
+        db.execSQL("DROP TABLE IF EXISTS temp." + COMPACTION_TABLE);
+        db.execSQL(SQL_AGGREGATE_WEEKS, partitionArgs);
+        try {
+            db.execSQL(SQL_DELETE_STALE_PARTITIONS, partitionArgs);
+            db.execSQL(SQL_INSERT_WEEKS);
+        } finally {
+            db.execSQL("DROP TABLE temp." + COMPACTION_TABLE);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.database.sqlite.SQLiteException;
+import android.os.AsyncTask;
+import android.text.format.DateUtils;
+import android.util.Log;
+
+/**
+ * Runs {@link WeatherDbMaintenance} about once a day, while the device is idle and charging.
+ *
+ * VACUUM and ANALYZE lock the database and read all of it, so they wait for a time when nobody
+ * is looking at the app and the battery doesn't pay for it.
+ */
+public class WeatherMaintenanceJobService extends JobService {
+
+    private static final String LOG_TAG = WeatherMaintenanceJobService.class.getSimpleName();
+
+    private static final int JOB_ID = 1;
+
+    private MaintenanceTask mTask;
+
+    /**
+     * Schedules the maintenance job, unless it already is.
+     */
+    public static void schedule(Context context) {
+        JobScheduler scheduler =
+                (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        // Scheduling it again would restart its period every time the app is opened
+        for (JobInfo job : scheduler.getAllPendingJobs()) {
+            if (job.getId() == JOB_ID) {
+                return;
+            }
+        }
+        scheduler.schedule(new JobInfo.Builder(JOB_ID,
+                new ComponentName(context, WeatherMaintenanceJobService.class))
+                .setRequiresDeviceIdle(true)
+                .setRequiresCharging(true)
+                .setPeriodic(DateUtils.DAY_IN_MILLIS)
+                .setPersisted(true)
+                .build());
+    }
+
+    @Override
+    public boolean onStartJob(JobParameters params) {
+        mTask = new MaintenanceTask(params);
+        mTask.execute();
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        // The device is no longer idle or charging.  A step that is running can't be interrupted,
+        // but the task won't report back and the job runs again next time.
+        if (mTask != null) {
+            mTask.cancel(false);
+        }
+        return true;
+    }
+
+    private class MaintenanceTask extends AsyncTask<Void, Void, Boolean> {
+        private final JobParameters mParams;
+
+        MaintenanceTask(JobParameters params) {
+            mParams = params;
+        }
+
+        @Override
+        protected Boolean doInBackground(Void... params) {
+            Context context = WeatherMaintenanceJobService.this;
+            try {
+                WeatherDbMaintenance.run(
+                        WeatherDao.getInstance(context).getOpenHelper().getWritableDatabase(),
+                        context.getDatabasePath(WeatherDbHelper.DATABASE_NAME), true);
+            } catch (SQLiteException e) {
+                // Most likely the database was busy with a sync, try again later
+                Log.w(LOG_TAG, "Database maintenance failed", e);
+                return false;
+            }
+            context.getContentResolver().notifyChange(
+                    WeatherContract.MaintenanceEntry.CONTENT_URI, null);
+            return true;
+        }
+
+        @Override
+        protected void onPostExecute(Boolean succeeded) {
+            jobFinished(mParams, !succeeded);
+        }
+    }
+}
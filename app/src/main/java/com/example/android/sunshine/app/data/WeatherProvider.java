@@ -23,89 +23,282 @@ import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
+import android.os.Bundle;
+import android.text.format.DateUtils;
+import android.util.Log;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
 
 public class WeatherProvider extends ContentProvider {
 
+    private static final String LOG_TAG = WeatherProvider.class.getSimpleName();
+
     // The URI Matcher used by this content provider.
     private static final UriMatcher sUriMatcher = buildUriMatcher();
     private WeatherDbHelper mOpenHelper;
 
+    // Keeps the forecast that the location based weather URIs read and bulk inserts write
+    private WeatherStorageEngine mStorage;
+
+    // Groups the bulk inserts of concurrent syncs into shared transactions
+    private WeatherWriteScheduler mWriteScheduler;
+
+    // Upper bound for the materialized results kept by the query cache.  A full two week forecast
+    // with every column is only a few kilobytes, so this comfortably holds every location.
+    private static final int QUERY_CACHE_SIZE_BYTES = 256 * 1024;
+    private WeatherQueryCache mQueryCache;
+
+    // When each location's last_accessed was last written by this process.  Reads only write it
+    // again once it is older than LOCATION_ACCESS_RESOLUTION, so most queries don't write at all.
+    private final HashMap<String, Long> mLocationsTouched = new HashMap<String, Long>();
+
+    private static final long LOCATION_ACCESS_RESOLUTION = DateUtils.HOUR_IN_MILLIS;
+
     static final int WEATHER = 100;
     static final int WEATHER_WITH_LOCATION = 101;
     static final int WEATHER_WITH_LOCATION_AND_DATE = 102;
+    static final int WEATHER_SUMMARY = 103;
     static final int LOCATION = 300;
+    static final int HISTORY = 400;
+    static final int HISTORY_WITH_LOCATION = 401;
+    static final int MAINTENANCE = 500;
+
+    // Days of history kept at day granularity when the caller doesn't say otherwise.
+    private static final int DEFAULT_HISTORY_RETENTION_DAYS = 90;
+
+    // Locations kept by METHOD_EVICT when the caller doesn't say otherwise.
+    private static final int DEFAULT_MAX_LOCATIONS = 10;
+
+    //condition.description AS short_desc
+    // The weather table only stores the condition id, every weather query joins the dictionary
+    // back in so that callers keep reading and writing the description.
+    private static final String sShortDescColumn =
+            WeatherContract.ConditionEntry.TABLE_NAME + "." +
+                    WeatherContract.ConditionEntry.COLUMN_DESCRIPTION + " AS " +
+                    WeatherContract.WeatherEntry.COLUMN_SHORT_DESC;
+
+    //INNER JOIN condition ON weather.condition_id = condition.condition_id
+    static final String sConditionJoin =
+            " INNER JOIN " + WeatherContract.ConditionEntry.TABLE_NAME +
+                    " ON " + WeatherContract.WeatherEntry.TABLE_NAME +
+                    "." + WeatherContract.WeatherEntry.COLUMN_CONDITION_KEY +
+                    " = " + WeatherContract.ConditionEntry.TABLE_NAME +
+                    "." + WeatherContract.ConditionEntry.COLUMN_CONDITION_ID;
+
+    // The columns of the weather and location tables as callers see them
+    private static final String[] sWeatherColumns = {
+            WeatherContract.WeatherEntry._ID,
+            WeatherContract.WeatherEntry.COLUMN_LOC_KEY,
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_CONDITION_KEY,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_HUMIDITY,
+            WeatherContract.WeatherEntry.COLUMN_PRESSURE,
+            WeatherContract.WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherContract.WeatherEntry.COLUMN_DEGREES
+    };
+
+    private static final String[] sLocationColumns = {
+            WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
+            WeatherContract.LocationEntry.COLUMN_CITY_NAME,
+            WeatherContract.LocationEntry.COLUMN_COORD_LAT,
+            WeatherContract.LocationEntry.COLUMN_COORD_LONG,
+            WeatherContract.LocationEntry.COLUMN_LAST_ACCESSED
+    };
+
+    // What a null projection returns; the projection maps hold every column twice.
+    private static final String[] sWeatherDefaultProjection =
+            concat(sWeatherColumns, new String[]{WeatherContract.WeatherEntry.COLUMN_SHORT_DESC});
+    static final String[] sWeatherWithLocationDefaultProjection =
+            concat(sWeatherDefaultProjection, concat(new String[]{
+                    WeatherContract.LocationEntry.TABLE_NAME + "." +
+                            WeatherContract.LocationEntry._ID}, sLocationColumns));
+
+    private static String[] concat(String[] first, String[] second) {
+        String[] result = new String[first.length + second.length];
+        System.arraycopy(first, 0, result, 0, first.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
 
-    private static final SQLiteQueryBuilder sWeatherByLocationSettingQueryBuilder;
+    private static final SQLiteQueryBuilder sWeatherQueryBuilder;
 
     static{
-        sWeatherByLocationSettingQueryBuilder = new SQLiteQueryBuilder();
-        
-        //This is an inner join which looks like
-        //weather INNER JOIN location ON weather.location_id = location._id
-        sWeatherByLocationSettingQueryBuilder.setTables(
-                WeatherContract.WeatherEntry.TABLE_NAME + " INNER JOIN " +
+        sWeatherQueryBuilder = new SQLiteQueryBuilder();
+        sWeatherQueryBuilder.setTables(WeatherContract.WeatherEntry.TABLE_NAME + sConditionJoin);
+        sWeatherQueryBuilder.setProjectionMap(buildWeatherProjectionMap(false));
+    }
+
+    /*
+        Every column a weather query may ask for, both bare and qualified with its table, mapped
+        to what SQLite actually reads.  A bare _id means the weather row's.
+     */
+    static HashMap<String, String> buildWeatherProjectionMap(boolean withLocation) {
+        HashMap<String, String> map = new HashMap<String, String>();
+        for (String column : sWeatherColumns) {
+            String qualified = WeatherContract.WeatherEntry.TABLE_NAME + "." + column;
+            map.put(column, qualified);
+            map.put(qualified, qualified);
+        }
+        map.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, sShortDescColumn);
+
+        // The weather table has no _id of its own, it is computed from the row's key
+        String weatherId = WeatherDbHelper.WEATHER_ID_EXPRESSION + " AS " +
+                WeatherContract.WeatherEntry._ID;
+        map.put(WeatherContract.WeatherEntry._ID, weatherId);
+        map.put(WeatherContract.WeatherEntry.TABLE_NAME + "." + WeatherContract.WeatherEntry._ID,
+                weatherId);
+
+        if (withLocation) {
+            for (String column : sLocationColumns) {
+                String qualified = WeatherContract.LocationEntry.TABLE_NAME + "." + column;
+                map.put(column, qualified);
+                map.put(qualified, qualified);
+            }
+            String locationId = WeatherContract.LocationEntry.TABLE_NAME + "." +
+                    WeatherContract.LocationEntry._ID;
+            map.put(locationId, locationId);
+        }
+        return map;
+    }
+
+    private static final SQLiteQueryBuilder sHistoryByLocationSettingQueryBuilder;
+
+    static{
+        sHistoryByLocationSettingQueryBuilder = new SQLiteQueryBuilder();
+
+        //weather_history INNER JOIN location ON weather_history.location_id = location._id
+        sHistoryByLocationSettingQueryBuilder.setTables(
+                WeatherContract.HistoryEntry.TABLE_NAME + " INNER JOIN " +
                         WeatherContract.LocationEntry.TABLE_NAME +
-                        " ON " + WeatherContract.WeatherEntry.TABLE_NAME +
-                        "." + WeatherContract.WeatherEntry.COLUMN_LOC_KEY +
+                        " ON " + WeatherContract.HistoryEntry.TABLE_NAME +
+                        "." + WeatherContract.HistoryEntry.COLUMN_LOC_KEY +
                         " = " + WeatherContract.LocationEntry.TABLE_NAME +
                         "." + WeatherContract.LocationEntry._ID);
     }
 
-    //location.location_setting = ?
-    private static final String sLocationSettingSelection =
-            WeatherContract.LocationEntry.TABLE_NAME+
-                    "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? ";
-
-    //location.location_setting = ? AND date >= ?
-    private static final String sLocationSettingWithStartDateSelection =
-            WeatherContract.LocationEntry.TABLE_NAME+
-                    "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
-                    WeatherContract.WeatherEntry.COLUMN_DATE + " >= ? ";
-
-    //location.location_setting = ? AND date = ?
-    private static final String sLocationSettingAndDaySelection =
+    //location.location_setting = ? AND month >= ? AND weather_history.date >= ?
+    // The month bound is redundant but lets the lookup seek in the history's primary key.
+    private static final String sHistoryLocationSettingWithStartDateSelection =
             WeatherContract.LocationEntry.TABLE_NAME +
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
-                    WeatherContract.WeatherEntry.COLUMN_DATE + " = ? ";
+                    WeatherContract.HistoryEntry.COLUMN_MONTH +
+                    " >= " + WeatherHistoryArchiver.monthOf("?") +
+                    " AND " + WeatherContract.HistoryEntry.TABLE_NAME + "." +
+                    WeatherContract.HistoryEntry.COLUMN_DATE + " >= ? ";
 
-    private Cursor getWeatherByLocationSetting(Uri uri, String[] projection, String sortOrder) {
-        String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
-        long startDate = WeatherContract.WeatherEntry.getStartDateFromUri(uri);
+    private Cursor getHistoryByLocationSetting(Uri uri, String[] projection, String sortOrder) {
+        String locationSetting = WeatherContract.HistoryEntry.getLocationSettingFromUri(uri);
+        String startDate = Long.toString(WeatherContract.HistoryEntry.getStartDateFromUri(uri));
 
-        String[] selectionArgs;
-        String selection;
-
-        if (startDate == 0) {
-            selection = sLocationSettingSelection;
-            selectionArgs = new String[]{locationSetting};
-        } else {
-            selectionArgs = new String[]{locationSetting, Long.toString(startDate)};
-            selection = sLocationSettingWithStartDateSelection;
-        }
-
-        return sWeatherByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
+        return sHistoryByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
                 projection,
-                selection,
-                selectionArgs,
+                sHistoryLocationSettingWithStartDateSelection,
+                new String[]{locationSetting, startDate, startDate},
                 null,
                 null,
                 sortOrder
         );
     }
 
-    private Cursor getWeatherByLocationSettingAndDate(
-            Uri uri, String[] projection, String sortOrder) {
+    /*
+        Returns the SQL that query() runs for one of the location based weather URIs, with the
+        selection arguments left as placeholders.  This lets the tests look at the query plan of
+        exactly what the provider executes.
+     */
+    static String buildWeatherQuerySql(Uri uri, String[] projection, String sortOrder) {
+        switch (sUriMatcher.match(uri)) {
+            case WEATHER_WITH_LOCATION_AND_DATE:
+                return SqliteWeatherStorage.buildDayQuerySql(projection, sortOrder);
+            case WEATHER_WITH_LOCATION:
+                int limit = WeatherContract.WeatherEntry.getLimitFromUri(uri);
+                if (limit > 0) {
+                    return SqliteWeatherStorage.buildPageQuerySql(limit, projection);
+                }
+                return SqliteWeatherStorage.buildFromQuerySql(
+                        WeatherContract.WeatherEntry.getStartDateFromUri(uri), projection, sortOrder);
+            default:
+                throw new UnsupportedOperationException("Unknown uri: " + uri);
+        }
+    }
+
+    /*
+        The location based URIs only take their arguments from the URI itself, so the URI,
+        projection and sort order are enough to identify a result.  Those are the queries that
+        every consumer repeats after a sync, so they are served from the query cache.
+     */
+    private Cursor getCachedWeatherByLocationSetting(
+            Uri uri, int match, String[] projection, String sortOrder) {
+        String key = WeatherQueryCache.buildKey(uri.toString(), projection, sortOrder);
+        Cursor cursor = mQueryCache.get(key);
+        if (cursor != null) {
+            return cursor;
+        }
+
+        long generation = mQueryCache.getGeneration();
         String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
-        long date = WeatherContract.WeatherEntry.getDateFromUri(uri);
+        int limit = WeatherContract.WeatherEntry.getLimitFromUri(uri);
+        if (match == WEATHER_WITH_LOCATION_AND_DATE) {
+            cursor = mStorage.queryDay(locationSetting,
+                    WeatherContract.WeatherEntry.getDateFromUri(uri), projection, sortOrder);
+        } else if (limit > 0) {
+            cursor = mStorage.queryPage(locationSetting, getPageStart(uri), limit, projection);
+        } else {
+            cursor = mStorage.queryFrom(locationSetting,
+                    WeatherContract.WeatherEntry.getStartDateFromUri(uri), projection, sortOrder);
+        }
+        return mQueryCache.put(key, cursor,
+                WeatherQueryCache.TABLE_WEATHER | WeatherQueryCache.TABLE_LOCATION,
+                locationSetting,
+                generation);
+    }
 
-        return sWeatherByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
-                projection,
-                sLocationSettingAndDaySelection,
-                new String[]{locationSetting, Long.toString(date)},
-                null,
-                null,
-                sortOrder
-        );
+    /*
+        A page starts at the start date or right after the date it follows, whichever is later.
+        Pages are always in date order, the sort order is ignored for them.
+     */
+    private static long getPageStart(Uri uri) {
+        long startDate = WeatherContract.WeatherEntry.getStartDateFromUri(uri);
+        long afterDate = WeatherContract.WeatherEntry.getAfterDateFromUri(uri);
+        return afterDate < 0 ? startDate : Math.max(startDate, afterDate + 1);
+    }
+
+    /*
+        Drops the cached results for the locations with the given row ids.  Weather rows only
+        carry the location id, so the settings are looked up first.
+     */
+    private void invalidateWeatherForLocationIds(SQLiteDatabase db, Set<Long> locationIds) {
+        if (locationIds.isEmpty()) {
+            mQueryCache.invalidate(WeatherQueryCache.TABLE_WEATHER, null);
+            return;
+        }
+        for (Long locationId : locationIds) {
+            Cursor cursor = db.query(WeatherContract.LocationEntry.TABLE_NAME,
+                    new String[]{WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING},
+                    WeatherContract.LocationEntry._ID + " = ?",
+                    new String[]{Long.toString(locationId)},
+                    null, null, null);
+            try {
+                if (cursor.moveToFirst()) {
+                    mQueryCache.invalidate(WeatherQueryCache.TABLE_WEATHER, cursor.getString(0));
+                } else {
+                    mQueryCache.invalidate(WeatherQueryCache.TABLE_WEATHER, null);
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+    }
+
+    private static Long getLocationId(ContentValues values) {
+        if (values == null) return null;
+        return values.getAsLong(WeatherContract.WeatherEntry.COLUMN_LOC_KEY);
     }
 
     /*
@@ -128,18 +321,30 @@ public class WeatherProvider extends ContentProvider {
         matcher.addURI(authority, WeatherContract.PATH_WEATHER, WEATHER);
         matcher.addURI(authority, WeatherContract.PATH_WEATHER + "/*", WEATHER_WITH_LOCATION);
         matcher.addURI(authority, WeatherContract.PATH_WEATHER + "/*/#", WEATHER_WITH_LOCATION_AND_DATE);
+        matcher.addURI(authority, WeatherContract.PATH_WEATHER + "/*/" +
+                WeatherContract.PATH_SUMMARY, WEATHER_SUMMARY);
 
         matcher.addURI(authority, WeatherContract.PATH_LOCATION, LOCATION);
+
+        matcher.addURI(authority, WeatherContract.PATH_HISTORY, HISTORY);
+        matcher.addURI(authority, WeatherContract.PATH_HISTORY + "/*", HISTORY_WITH_LOCATION);
+
+        matcher.addURI(authority, WeatherContract.PATH_MAINTENANCE, MAINTENANCE);
         return matcher;
     }
 
     /*
-        Students: We've coded this for you.  We just create a new WeatherDbHelper for later use
+        Students: We've coded this for you.  We just grab the WeatherDbHelper for later use
         here.
      */
     @Override
     public boolean onCreate() {
-        mOpenHelper = new WeatherDbHelper(getContext());
+        // Share the DAO's helper so that in-process readers and the provider use one connection
+        // pool and see each other's writes.
+        mOpenHelper = WeatherDao.getInstance(getContext()).getOpenHelper();
+        mStorage = new SqliteWeatherStorage(mOpenHelper);
+        mWriteScheduler = new WeatherWriteScheduler(mOpenHelper, mStorage);
+        mQueryCache = new WeatherQueryCache(QUERY_CACHE_SIZE_BYTES);
         return true;
     }
 
@@ -162,8 +367,15 @@ public class WeatherProvider extends ContentProvider {
                 return WeatherContract.WeatherEntry.CONTENT_TYPE;
             case WEATHER:
                 return WeatherContract.WeatherEntry.CONTENT_TYPE;
+            case WEATHER_SUMMARY:
+                return WeatherContract.SummaryEntry.CONTENT_TYPE;
             case LOCATION:
                 return WeatherContract.LocationEntry.CONTENT_TYPE;
+            case HISTORY:
+            case HISTORY_WITH_LOCATION:
+                return WeatherContract.HistoryEntry.CONTENT_TYPE;
+            case MAINTENANCE:
+                return WeatherContract.MaintenanceEntry.CONTENT_TYPE;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
@@ -175,22 +387,28 @@ public class WeatherProvider extends ContentProvider {
         // Here's the switch statement that, given a URI, will determine what kind of request it is,
         // and query the database accordingly.
         Cursor retCursor;
-        switch (sUriMatcher.match(uri)) {
+        final int match = sUriMatcher.match(uri);
+        switch (match) {
             // "weather/*/*"
             case WEATHER_WITH_LOCATION_AND_DATE:
-            {
-                retCursor = getWeatherByLocationSettingAndDate(uri, projection, sortOrder);
-                break;
-            }
             // "weather/*"
             case WEATHER_WITH_LOCATION: {
-                retCursor = getWeatherByLocationSetting(uri, projection, sortOrder);
+                if (projection == null) projection = sWeatherWithLocationDefaultProjection;
+                // First, so that a result cached now already holds the new last_accessed
+                touchLocation(WeatherContract.WeatherEntry.getLocationSettingFromUri(uri));
+                retCursor = getCachedWeatherByLocationSetting(uri, match, projection, sortOrder);
+                break;
+            }
+            // "weather/*/summary"
+            case WEATHER_SUMMARY: {
+                retCursor = WeatherSummaries.query(mOpenHelper.getReadableDatabase(),
+                        uri, projection, sortOrder);
                 break;
             }
             // "weather"
             case WEATHER: {
-                retCursor = mOpenHelper.getReadableDatabase().query(
-                        WeatherContract.WeatherEntry.TABLE_NAME,
+                if (projection == null) projection = sWeatherDefaultProjection;
+                retCursor = sWeatherQueryBuilder.query(mOpenHelper.getReadableDatabase(),
                         projection,
                         selection,
                         selectionArgs,
@@ -213,6 +431,37 @@ public class WeatherProvider extends ContentProvider {
                 );
                 break;
             }
+            // "history/*"
+            case HISTORY_WITH_LOCATION: {
+                retCursor = getHistoryByLocationSetting(uri, projection, sortOrder);
+                break;
+            }
+            // "history"
+            case HISTORY: {
+                retCursor = mOpenHelper.getReadableDatabase().query(
+                        WeatherContract.HistoryEntry.TABLE_NAME,
+                        projection,
+                        selection,
+                        selectionArgs,
+                        null,
+                        null,
+                        sortOrder
+                );
+                break;
+            }
+            // "maintenance"
+            case MAINTENANCE: {
+                retCursor = mOpenHelper.getReadableDatabase().query(
+                        WeatherContract.MaintenanceEntry.TABLE_NAME,
+                        projection,
+                        selection,
+                        selectionArgs,
+                        null,
+                        null,
+                        sortOrder
+                );
+                break;
+            }
 
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
@@ -233,19 +482,37 @@ public class WeatherProvider extends ContentProvider {
         switch (match) {
             case WEATHER: {
                 normalizeDate(values);
-                long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, values);
-                if ( _id > 0 )
-                    returnUri = WeatherContract.WeatherEntry.buildWeatherUri(_id);
+                long rowId = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null,
+                        ConditionDictionary.encode(db, values, null));
+                // Without a rowid insert() can only tell failure apart, the id comes from the key
+                if ( rowId != -1 )
+                    returnUri = WeatherContract.WeatherEntry.buildWeatherUri(
+                            WeatherContract.WeatherEntry.buildWeatherId(
+                                    values.getAsLong(WeatherContract.WeatherEntry.COLUMN_LOC_KEY),
+                                    values.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE)));
                 else
                     throw new android.database.SQLException("Failed to insert row into " + uri);
+                Set<Long> locationIds = new HashSet<Long>();
+                Long locationId = getLocationId(values);
+                if (locationId != null) locationIds.add(locationId);
+                invalidateWeatherForLocationIds(db, locationIds);
                 break;
             }
             case LOCATION: {
+                // A location is added because it is about to be read, count that as its first use
+                if (!values.containsKey(WeatherContract.LocationEntry.COLUMN_LAST_ACCESSED)) {
+                    values = new ContentValues(values);
+                    values.put(WeatherContract.LocationEntry.COLUMN_LAST_ACCESSED,
+                            System.currentTimeMillis());
+                }
                 long _id = db.insert(WeatherContract.LocationEntry.TABLE_NAME, null, values);
                 if ( _id > 0 )
                     returnUri = WeatherContract.LocationEntry.buildLocationUri(_id);
                 else
                     throw new android.database.SQLException("Failed to insert row into " + uri);
+                // A new location can only change results that were cached for its own setting
+                mQueryCache.invalidate(WeatherQueryCache.TABLE_LOCATION,
+                        values.getAsString(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING));
                 break;
             }
             default:
@@ -266,10 +533,20 @@ public class WeatherProvider extends ContentProvider {
             case WEATHER:
                 rowsDeleted = db.delete(
                         WeatherContract.WeatherEntry.TABLE_NAME, selection, selectionArgs);
+                if (rowsDeleted != 0) {
+                    mQueryCache.invalidate(WeatherQueryCache.TABLE_WEATHER, null);
+                }
                 break;
             case LOCATION:
                 rowsDeleted = db.delete(
                         WeatherContract.LocationEntry.TABLE_NAME, selection, selectionArgs);
+                if (rowsDeleted != 0) {
+                    mQueryCache.invalidate(WeatherQueryCache.TABLE_LOCATION, null);
+                }
+                break;
+            case HISTORY:
+                rowsDeleted = db.delete(
+                        WeatherContract.HistoryEntry.TABLE_NAME, selection, selectionArgs);
                 break;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
@@ -299,12 +576,18 @@ public class WeatherProvider extends ContentProvider {
         switch (match) {
             case WEATHER:
                 normalizeDate(values);
-                rowsUpdated = db.update(WeatherContract.WeatherEntry.TABLE_NAME, values, selection,
-                        selectionArgs);
+                rowsUpdated = db.update(WeatherContract.WeatherEntry.TABLE_NAME,
+                        ConditionDictionary.encode(db, values, null), selection, selectionArgs);
+                if (rowsUpdated != 0) {
+                    mQueryCache.invalidate(WeatherQueryCache.TABLE_WEATHER, null);
+                }
                 break;
             case LOCATION:
                 rowsUpdated = db.update(WeatherContract.LocationEntry.TABLE_NAME, values, selection,
                         selectionArgs);
+                if (rowsUpdated != 0) {
+                    mQueryCache.invalidate(WeatherQueryCache.TABLE_LOCATION, null);
+                }
                 break;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
@@ -321,20 +604,14 @@ public class WeatherProvider extends ContentProvider {
         final int match = sUriMatcher.match(uri);
         switch (match) {
             case WEATHER:
-                db.beginTransaction();
-                int returnCount = 0;
-                try {
-                    for (ContentValues value : values) {
-                        normalizeDate(value);
-                        long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
-                        if (_id != -1) {
-                            returnCount++;
-                        }
-                    }
-                    db.setTransactionSuccessful();
-                } finally {
-                    db.endTransaction();
+                Set<Long> locationIds = new HashSet<Long>();
+                for (ContentValues value : values) {
+                    normalizeDate(value);
+                    Long locationId = getLocationId(value);
+                    if (locationId != null) locationIds.add(locationId);
                 }
+                int returnCount = mWriteScheduler.bulkUpsert(values);
+                invalidateWeatherForLocationIds(db, locationIds);
                 getContext().getContentResolver().notifyChange(uri, null);
                 return returnCount;
             default:
@@ -342,13 +619,138 @@ public class WeatherProvider extends ContentProvider {
         }
     }
 
+    /*
+        METHOD_ARCHIVE moves every weather row dated on or before the date given as the argument
+        into the history and compacts the history that has aged past the retention period.  It is
+        a method call rather than a delete so that both happen in one transaction.
+     */
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+        if (WeatherContract.HistoryEntry.METHOD_ARCHIVE.equals(method)) {
+            return archive(arg, extras);
+        }
+        if (WeatherContract.LocationEntry.METHOD_EVICT.equals(method)) {
+            return evictLocations(arg, extras);
+        }
+        if (WeatherContract.METHOD_IMPORT.equals(method)) {
+            return importExport(arg);
+        }
+        return super.call(method, arg, extras);
+    }
+
+    private Bundle archive(String arg, Bundle extras) {
+        long archiveBefore = Long.parseLong(arg);
+        int retentionDays = extras == null ? DEFAULT_HISTORY_RETENTION_DAYS : extras.getInt(
+                WeatherContract.HistoryEntry.EXTRA_RETENTION_DAYS, DEFAULT_HISTORY_RETENTION_DAYS);
+        long dailyRetentionStart = archiveBefore - retentionDays * DateUtils.DAY_IN_MILLIS;
+
+        int archived = WeatherHistoryArchiver.archive(
+                mOpenHelper.getWritableDatabase(), archiveBefore, dailyRetentionStart);
+        if (archived != 0) {
+            mQueryCache.invalidate(WeatherQueryCache.TABLE_WEATHER, null);
+            getContext().getContentResolver().notifyChange(
+                    WeatherContract.WeatherEntry.CONTENT_URI, null);
+        }
+        getContext().getContentResolver().notifyChange(
+                WeatherContract.HistoryEntry.CONTENT_URI, null);
+
+        Bundle result = new Bundle();
+        result.putInt(WeatherContract.HistoryEntry.EXTRA_ARCHIVED_ROWS, archived);
+        return result;
+    }
+
+    /*
+        METHOD_EVICT deletes the least recently used locations, with their weather and history,
+        down to the maximum.  The location setting passed as the argument is always kept.
+     */
+    private Bundle evictLocations(String keepSetting, Bundle extras) {
+        int maxLocations = extras == null ? DEFAULT_MAX_LOCATIONS : extras.getInt(
+                WeatherContract.LocationEntry.EXTRA_MAX_LOCATIONS, DEFAULT_MAX_LOCATIONS);
+
+        int evicted = LocationEvictor.evict(
+                mOpenHelper.getWritableDatabase(), maxLocations, keepSetting);
+        if (evicted != 0) {
+            mQueryCache.invalidate(
+                    WeatherQueryCache.TABLE_WEATHER | WeatherQueryCache.TABLE_LOCATION, null);
+            synchronized (mLocationsTouched) {
+                mLocationsTouched.clear();
+            }
+            getContext().getContentResolver().notifyChange(
+                    WeatherContract.LocationEntry.CONTENT_URI, null);
+            getContext().getContentResolver().notifyChange(
+                    WeatherContract.WeatherEntry.CONTENT_URI, null);
+            getContext().getContentResolver().notifyChange(
+                    WeatherContract.HistoryEntry.CONTENT_URI, null);
+        }
+
+        Bundle result = new Bundle();
+        result.putInt(WeatherContract.LocationEntry.EXTRA_EVICTED_LOCATIONS, evicted);
+        return result;
+    }
+
+    /*
+        METHOD_IMPORT reads the export at the path given as the argument.  It goes through the
+        provider so that the results cached from before it are dropped along with the write.
+     */
+    private Bundle importExport(String path) {
+        int days;
+        try {
+            FileInputStream in = new FileInputStream(path);
+            try {
+                days = WeatherDbExport.read(mOpenHelper.getWritableDatabase(), in);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Couldn't import the weather from " + path, e);
+            days = -1;
+        }
+        if (days > 0) {
+            mQueryCache.invalidateAll();
+            getContext().getContentResolver().notifyChange(WeatherContract.BASE_CONTENT_URI, null);
+        }
+
+        Bundle result = new Bundle();
+        result.putInt(WeatherContract.EXTRA_IMPORTED_DAYS, days);
+        return result;
+    }
+
+    /*
+        Marks the location as used, for eviction.  Writing it once per resolution is enough to
+        rank the locations and keeps most reads from taking the database's write lock.  The
+        weather/* results carry last_accessed, so the location's cached ones go with a write.
+     */
+    private void touchLocation(String locationSetting) {
+        long now = System.currentTimeMillis();
+        synchronized (mLocationsTouched) {
+            Long touched = mLocationsTouched.get(locationSetting);
+            if (touched != null && now - touched < LOCATION_ACCESS_RESOLUTION) {
+                return;
+            }
+            mLocationsTouched.put(locationSetting, now);
+        }
+        if (LocationEvictor.touch(mOpenHelper.getWritableDatabase(), locationSetting, now)) {
+            mQueryCache.invalidate(WeatherQueryCache.TABLE_LOCATION, locationSetting);
+        }
+    }
+
     // You do not need to call this method. This is a method specifically to assist the testing
     // framework in running smoothly. You can read more at:
     // http://developer.android.com/reference/android/content/ContentProvider.html#shutdown()
     @Override
     @TargetApi(11)
     public void shutdown() {
-        mOpenHelper.close();
+        Log.d(LOG_TAG, "Query cache hits: " + mQueryCache.getHitCount()
+                + ", misses: " + mQueryCache.getMissCount()
+                + ", size: " + mQueryCache.getSizeBytes() + " bytes");
+        Log.d(LOG_TAG, "Bulk inserts: " + mWriteScheduler.getBatchCount()
+                + " in " + mWriteScheduler.getGroupCount() + " transactions"
+                + ", largest group: " + mWriteScheduler.getLargestGroup()
+                + ", largest queue: " + mWriteScheduler.getLargestQueueDepth());
+        mWriteScheduler.shutdown();
+        mQueryCache.invalidateAll();
+        // The helper is WeatherDao's, which the rest of the process keeps reading through.  An
+        // in-memory database would be gone with its connection.
         super.shutdown();
     }
 }
\ No newline at end of file
@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.util.LruCache;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * In-process read-through cache of materialized query results for the WeatherProvider.
+ *
+ * After a sync the list, the detail pane, the widgets, Muzei and the wear handler all ask for the
+ * same forecast within a few milliseconds of each other.  Rather than running the same join five
+ * times, the first query is copied into memory and every later caller gets a cheap
+ * {@link MatrixCursor} over that copy.
+ *
+ * Entries remember which tables they were read from and, for the location based URIs, which
+ * location setting they belong to, so that the provider's own writes only throw away the results
+ * they could actually have changed.
+ */
+class WeatherQueryCache {
+
+    // Tables an entry depends on.
+    static final int TABLE_WEATHER = 1;
+    static final int TABLE_LOCATION = 1 << 1;
+
+    // Rough per-value overhead used when estimating the size of an entry.
+    private static final int VALUE_OVERHEAD_BYTES = 16;
+
+    private final LruCache<String, Entry> mEntries;
+
+    // Bumped on every invalidation so that a query which raced with a write never stores a
+    // result that is already stale.
+    private long mGeneration;
+
+    WeatherQueryCache(int maxSizeBytes) {
+        mEntries = new LruCache<String, Entry>(maxSizeBytes) {
+            @Override
+            protected int sizeOf(String key, Entry entry) {
+                return entry.mSizeBytes;
+            }
+        };
+    }
+
+    static String buildKey(String uri, String[] projection, String sortOrder) {
+        return uri + '|' + Arrays.toString(projection) + '|' + sortOrder;
+    }
+
+    synchronized long getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * @return a fresh cursor over the cached rows for this key, or null on a miss.
+     */
+    Cursor get(String key) {
+        Entry entry = mEntries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        MatrixCursor cursor = new MatrixCursor(entry.mColumnNames, entry.mRows.length);
+        for (Object[] row : entry.mRows) {
+            cursor.addRow(row);
+        }
+        return cursor;
+    }
+
+    /**
+     * Copies the cursor into the cache and returns a cursor over the copy.  The passed in cursor
+     * is always closed.
+     *
+     * @param generation the value of {@link #getGeneration()} before the database was read
+     */
+    Cursor put(String key, Cursor cursor, int tables, String locationSetting, long generation) {
+        Entry entry;
+        try {
+            entry = new Entry(cursor, tables, locationSetting);
+        } finally {
+            cursor.close();
+        }
+        synchronized (this) {
+            if (generation == mGeneration) {
+                mEntries.put(key, entry);
+            }
+        }
+        MatrixCursor copy = new MatrixCursor(entry.mColumnNames, entry.mRows.length);
+        for (Object[] row : entry.mRows) {
+            copy.addRow(row);
+        }
+        return copy;
+    }
+
+    /**
+     * Drops every entry that read from one of the given tables.  If a location setting is
+     * given, entries scoped to a different location are kept.
+     */
+    synchronized void invalidate(int tables, String locationSetting) {
+        mGeneration++;
+        for (Map.Entry<String, Entry> e : mEntries.snapshot().entrySet()) {
+            Entry entry = e.getValue();
+            if ((entry.mTables & tables) == 0) {
+                continue;
+            }
+            if (locationSetting != null && entry.mLocationSetting != null
+                    && !locationSetting.equals(entry.mLocationSetting)) {
+                continue;
+            }
+            mEntries.remove(e.getKey());
+        }
+    }
+
+    synchronized void invalidateAll() {
+        mGeneration++;
+        mEntries.evictAll();
+    }
+
+    int getHitCount() {
+        return mEntries.hitCount();
+    }
+
+    int getMissCount() {
+        return mEntries.missCount();
+    }
+
+    int getSizeBytes() {
+        return mEntries.size();
+    }
+
+    private static class Entry {
+        final String[] mColumnNames;
+        final Object[][] mRows;
+        final int mTables;
+        final String mLocationSetting;
+        final int mSizeBytes;
+
+        Entry(Cursor cursor, int tables, String locationSetting) {
+            mColumnNames = cursor.getColumnNames();
+            mTables = tables;
+            mLocationSetting = locationSetting;
+
+            int columnCount = mColumnNames.length;
+            int size = 0;
+            mRows = new Object[cursor.getCount()][];
+            int position = 0;
+            while (cursor.moveToNext()) {
+                Object[] row = new Object[columnCount];
+                for (int i = 0; i < columnCount; i++) {
+                    switch (cursor.getType(i)) {
+                        case Cursor.FIELD_TYPE_INTEGER:
+                            row[i] = cursor.getLong(i);
+                            break;
+                        case Cursor.FIELD_TYPE_FLOAT:
+                            row[i] = cursor.getDouble(i);
+                            break;
+                        case Cursor.FIELD_TYPE_STRING:
+                            String value = cursor.getString(i);
+                            row[i] = value;
+                            size += value.length() * 2;
+                            break;
+                        case Cursor.FIELD_TYPE_BLOB:
+                            byte[] blob = cursor.getBlob(i);
+                            row[i] = blob;
+                            size += blob.length;
+                            break;
+                        default:
+                            row[i] = null;
+                    }
+                    size += VALUE_OVERHEAD_BYTES;
+                }
+                mRows[position++] = row;
+            }
+            mSizeBytes = Math.max(1, size);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+
+/**
+ * Where {@link WeatherProvider} keeps the forecast.
+ *
+ * Only the operations the provider runs on every sync and every screen are part of it: reading
+ * a location's forecast from a day on, reading one day, writing a batch of days and dropping
+ * the days that are over.  Locations, history and the query cache stay with the provider.
+ *
+ * Queries return the same columns as the weather/* URIs, joined with the location; a null
+ * projection returns all of them.
+ */
+interface WeatherStorageEngine {
+
+    /**
+     * @return the weather of the location on or after {@code startDate}, or all of it when
+     * {@code startDate} is 0.
+     */
+    Cursor queryFrom(String locationSetting, long startDate, String[] projection,
+                     String sortOrder);
+
+    /**
+     * @return at most {@code limit} days of the weather of the location from {@code startDate}
+     * on, in date order.  Paging by the date of the last row returned reads every page with one
+     * seek, however far into the weather it starts.
+     */
+    Cursor queryPage(String locationSetting, long startDate, int limit, String[] projection);
+
+    /**
+     * @return the weather of the location on the normalized {@code date}.
+     */
+    Cursor queryDay(String locationSetting, long date, String[] projection, String sortOrder);
+
+    /**
+     * Writes the days, replacing any that are already stored for the same location and date.
+     * Dates must already be normalized.
+     *
+     * @return the number of days written.
+     */
+    int bulkUpsert(ContentValues[] values);
+
+    /**
+     * Deletes the weather of every location dated on or before {@code lastDate}.
+     *
+     * @return the number of days deleted.
+     */
+    int prune(long lastDate);
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.net.Uri;
+
+import com.example.android.sunshine.app.data.WeatherContract.HistoryEntry;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.SummaryEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/**
+ * Builds and runs the summary queries behind weather/&lt;setting&gt;/summary.
+ *
+ * The forecast and the history of the location are combined into one stream of rows that each
+ * know how many days they cover, and SQLite groups that stream into buckets.  The caller gets one
+ * row per bucket instead of walking every day in Java.
+ */
+final class WeatherSummaries {
+
+    private static final String LOCATION_ID_BY_SETTING =
+            "(SELECT " + LocationEntry._ID + " FROM " + LocationEntry.TABLE_NAME +
+                    " WHERE " + LocationEntry.COLUMN_LOCATION_SETTING + " = ?1)";
+
+    // ?1 is the location setting, ?2 and ?3 the first and last day.  The history is also bound by
+    // its month partition so that the lookup stays on the history's primary key; an open ended
+    // last day is past the year 9999 strftime can handle, so it leaves the month unbounded.
+    private static final String SQL_DAYS =
+            "SELECT " +
+                    WeatherEntry.COLUMN_DATE + ", " +
+                    WeatherHistoryArchiver.monthOf(WeatherEntry.COLUMN_DATE) + " AS " +
+                    HistoryEntry.COLUMN_MONTH + ", " +
+                    "1 AS " + HistoryEntry.COLUMN_DAY_COUNT + ", " +
+                    WeatherEntry.COLUMN_WEATHER_ID + ", " +
+                    WeatherEntry.COLUMN_MIN_TEMP + ", " +
+                    WeatherEntry.COLUMN_MAX_TEMP + ", " +
+                    WeatherEntry.COLUMN_HUMIDITY + ", " +
+                    WeatherEntry.COLUMN_PRESSURE + ", " +
+                    WeatherEntry.COLUMN_WIND_SPEED + ", " +
+                    WeatherHistoryArchiver.IS_RAINY + " AS " + HistoryEntry.COLUMN_RAINY_DAYS +
+                    " FROM " + WeatherEntry.TABLE_NAME +
+                    " WHERE " + WeatherEntry.COLUMN_LOC_KEY + " = " + LOCATION_ID_BY_SETTING +
+                    " AND " + WeatherEntry.COLUMN_DATE + " BETWEEN ?2 AND ?3" +
+                    " UNION ALL SELECT " +
+                    HistoryEntry.COLUMN_DATE + ", " +
+                    HistoryEntry.COLUMN_MONTH + ", " +
+                    HistoryEntry.COLUMN_DAY_COUNT + ", " +
+                    HistoryEntry.COLUMN_WEATHER_ID + ", " +
+                    HistoryEntry.COLUMN_MIN_TEMP + ", " +
+                    HistoryEntry.COLUMN_MAX_TEMP + ", " +
+                    HistoryEntry.COLUMN_HUMIDITY + ", " +
+                    HistoryEntry.COLUMN_PRESSURE + ", " +
+                    HistoryEntry.COLUMN_WIND_SPEED + ", " +
+                    HistoryEntry.COLUMN_RAINY_DAYS +
+                    " FROM " + HistoryEntry.TABLE_NAME +
+                    " WHERE " + HistoryEntry.COLUMN_LOC_KEY + " = " + LOCATION_ID_BY_SETTING +
+                    " AND " + HistoryEntry.COLUMN_MONTH + " >= " +
+                    WeatherHistoryArchiver.monthOf("?2") +
+                    " AND " + HistoryEntry.COLUMN_MONTH + " <= IFNULL(" +
+                    WeatherHistoryArchiver.monthOf("?3") + ", " + HistoryEntry.COLUMN_MONTH + ")" +
+                    " AND " + HistoryEntry.COLUMN_DATE + " BETWEEN ?2 AND ?3";
+
+    private static final String SQL_AGGREGATES =
+            "SELECT " +
+                    "MIN(" + HistoryEntry.COLUMN_DATE + ") AS " + SummaryEntry.COLUMN_DATE + ", " +
+                    "SUM(" + HistoryEntry.COLUMN_DAY_COUNT + ") AS " +
+                    SummaryEntry.COLUMN_DAY_COUNT + ", " +
+                    "MIN(" + HistoryEntry.COLUMN_MIN_TEMP + ") AS " +
+                    SummaryEntry.COLUMN_MIN_TEMP + ", " +
+                    "MAX(" + HistoryEntry.COLUMN_MAX_TEMP + ") AS " +
+                    SummaryEntry.COLUMN_MAX_TEMP + ", " +
+                    WeatherHistoryArchiver.weightedAverage(HistoryEntry.COLUMN_HUMIDITY) + ", " +
+                    WeatherHistoryArchiver.weightedAverage(HistoryEntry.COLUMN_PRESSURE) + ", " +
+                    WeatherHistoryArchiver.weightedAverage(HistoryEntry.COLUMN_WIND_SPEED) + ", " +
+                    "SUM(" + HistoryEntry.COLUMN_RAINY_DAYS + ") AS " +
+                    SummaryEntry.COLUMN_RAINY_DAYS + ", " +
+                    "MIN(" + HistoryEntry.COLUMN_WEATHER_ID + ") AS " +
+                    SummaryEntry.COLUMN_WEATHER_ID +
+                    " FROM (" + SQL_DAYS + ")";
+
+    private static final String SQL_DAY_BUCKETS =
+            SQL_AGGREGATES + " GROUP BY " + HistoryEntry.COLUMN_DATE;
+
+    private static final String SQL_WEEK_BUCKETS =
+            SQL_AGGREGATES + " GROUP BY " + HistoryEntry.COLUMN_MONTH + ", " +
+                    WeatherHistoryArchiver.weekOfMonth(HistoryEntry.COLUMN_DATE);
+
+    private WeatherSummaries() {
+    }
+
+    static String buildSummarySql(String bucket) {
+        if (SummaryEntry.BUCKET_DAY.equals(bucket)) {
+            return SQL_DAY_BUCKETS;
+        } else if (SummaryEntry.BUCKET_WEEK.equals(bucket)) {
+            return SQL_WEEK_BUCKETS;
+        }
+        throw new IllegalArgumentException("Unknown summary bucket: " + bucket);
+    }
+
+    /**
+     * Runs the summary for a weather/&lt;setting&gt;/summary URI.  The buckets come back in date
+     * order unless the caller asks for a different one.
+     */
+    static Cursor query(SQLiteDatabase db, Uri uri, String[] projection, String sortOrder) {
+        SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
+        builder.setTables("(" + buildSummarySql(SummaryEntry.getBucketFromUri(uri)) + ")");
+        return builder.query(db,
+                projection,
+                null,
+                new String[]{
+                        SummaryEntry.getLocationSettingFromUri(uri),
+                        Long.toString(SummaryEntry.getFromDateFromUri(uri)),
+                        Long.toString(SummaryEntry.getToDateFromUri(uri))},
+                null,
+                null,
+                sortOrder == null ? SummaryEntry.COLUMN_DATE + " ASC" : sortOrder
+        );
+    }
+}
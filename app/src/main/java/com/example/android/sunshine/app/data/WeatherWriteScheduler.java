@@ -0,0 +1,297 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Commits the weather of concurrent bulk inserts together.
+ *
+ * SQLite has a single writer, so syncs that finish at the same time would otherwise wait for
+ * each other's transactions, and each one pays for its own commit.  Callers hand their batch to
+ * one writer thread instead and wait for it.  Whatever has queued up while the writer was
+ * committing goes into the next transaction as a group, so no batch waits longer than the
+ * commit in front of it, and the commit is paid for once per group.
+ *
+ * Batches are written in the order they were submitted, so the last write of a location's day
+ * is the one that stays, as it would be without the scheduler.
+ */
+final class WeatherWriteScheduler {
+
+    private static final String LOG_TAG = WeatherWriteScheduler.class.getSimpleName();
+
+    // Upper bound on the batches in one transaction, so one group can't hold the lock for long
+    private static final int MAX_GROUP_BATCHES = 32;
+
+    private final SQLiteOpenHelper mOpenHelper;
+    private final WeatherStorageEngine mStorage;
+    private final LinkedBlockingQueue<Batch> mQueue = new LinkedBlockingQueue<Batch>();
+
+    private Thread mWriter;
+
+    // Set by shutdown(), under the lock.  The writer checks it as well as its interrupt, which
+    // SQLite clears if it arrives while the writer waits for the database.
+    private volatile boolean mStopping;
+
+    // Statistics, guarded by this
+    private long mBatchCount;
+    private long mGroupCount;
+    private int mLargestGroup;
+    private int mLargestQueueDepth;
+
+    WeatherWriteScheduler(SQLiteOpenHelper openHelper, WeatherStorageEngine storage) {
+        mOpenHelper = openHelper;
+        mStorage = storage;
+    }
+
+    /**
+     * Queues the days for the writer thread and waits until they are committed.
+     *
+     * @return the number of days written.
+     * @throws IllegalStateException if the scheduler was shut down.
+     */
+    int bulkUpsert(ContentValues[] values) {
+        Batch batch = new Batch(values);
+        synchronized (this) {
+            if (mStopping) {
+                throw new IllegalStateException("The weather writer was shut down");
+            }
+            if (mWriter == null) {
+                startWriter();
+            }
+            mQueue.add(batch);
+            mLargestQueueDepth = Math.max(mLargestQueueDepth, mQueue.size());
+        }
+        return batch.await();
+    }
+
+    /**
+     * @return the number of batches waiting for the writer right now.
+     */
+    int getQueueDepth() {
+        return mQueue.size();
+    }
+
+    synchronized int getLargestQueueDepth() {
+        return mLargestQueueDepth;
+    }
+
+    synchronized long getBatchCount() {
+        return mBatchCount;
+    }
+
+    synchronized long getGroupCount() {
+        return mGroupCount;
+    }
+
+    synchronized int getLargestGroup() {
+        return mLargestGroup;
+    }
+
+    /**
+     * Stops the writer thread once the batches already queued are written, and waits for it.
+     * Batches submitted afterwards are rejected, so no second writer can start while the last
+     * ones are still being written out of order.
+     */
+    void shutdown() {
+        Thread writer;
+        synchronized (this) {
+            mStopping = true;
+            writer = mWriter;
+        }
+        if (writer == null) {
+            return;
+        }
+        writer.interrupt();
+        boolean interrupted = false;
+        while (writer.isAlive()) {
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Called with the lock held
+    private void startWriter() {
+        mWriter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    write();
+                } finally {
+                    onWriterExit();
+                }
+            }
+        }, "WeatherWriter");
+        mWriter.setDaemon(true);
+        mWriter.start();
+    }
+
+    /*
+        Lets the next batch start a new writer, however this one ended.  Batches queued while it
+        was on its way out would have nobody to write them, so one is started for those now.
+     */
+    private synchronized void onWriterExit() {
+        if (mWriter != Thread.currentThread()) {
+            // Already replaced
+            return;
+        }
+        mWriter = null;
+        // Nothing is queued once it is stopping, it wrote the rest before it exited
+        if (!mStopping && !mQueue.isEmpty()) {
+            startWriter();
+        }
+    }
+
+    private void write() {
+        ArrayList<Batch> group = new ArrayList<Batch>(MAX_GROUP_BATCHES);
+        while (true) {
+            boolean stopping = mStopping;
+            if (!stopping) {
+                try {
+                    group.add(mQueue.take());
+                } catch (InterruptedException e) {
+                    stopping = true;
+                }
+            }
+            if (stopping) {
+                // Shut down, but only after the batches that are still waiting, as one last group
+                mQueue.drainTo(group);
+            } else {
+                mQueue.drainTo(group, MAX_GROUP_BATCHES - group.size());
+            }
+            if (!group.isEmpty()) {
+                writeGroup(group);
+                group.clear();
+            }
+            if (stopping) {
+                return;
+            }
+        }
+    }
+
+    private void writeGroup(ArrayList<Batch> group) {
+        try {
+            commit(group);
+        } catch (Throwable t) {
+            // E.g. the database couldn't be opened.  Every caller has to hear about it, or it
+            // waits for its batch forever.
+            Log.e(LOG_TAG, "Group of " + group.size() + " batches failed", t);
+            for (Batch batch : group) {
+                batch.fail(t);
+            }
+        }
+        synchronized (this) {
+            mBatchCount += group.size();
+            mGroupCount++;
+            mLargestGroup = Math.max(mLargestGroup, group.size());
+        }
+    }
+
+    private void commit(ArrayList<Batch> group) {
+        SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        int[] results = new int[group.size()];
+        db.beginTransaction();
+        try {
+            // The engine's own transaction nests in the group's
+            for (int i = 0; i < group.size(); i++) {
+                results[i] = mStorage.bulkUpsert(group.get(i).mValues);
+            }
+            db.setTransactionSuccessful();
+        } catch (RuntimeException e) {
+            Log.w(LOG_TAG, "Group of " + group.size() + " batches failed, writing them one by one", e);
+            results = null;
+        } finally {
+            db.endTransaction();
+        }
+
+        if (results != null) {
+            for (int i = 0; i < group.size(); i++) {
+                group.get(i).done(results[i], null);
+            }
+            return;
+        }
+        // Only the batch that fails should fail
+        for (Batch batch : group) {
+            try {
+                batch.done(mStorage.bulkUpsert(batch.mValues), null);
+            } catch (RuntimeException e) {
+                batch.done(0, e);
+            }
+        }
+    }
+
+    private static final class Batch {
+        final ContentValues[] mValues;
+        private boolean mDone;
+        private int mResult;
+        private Throwable mError;
+
+        Batch(ContentValues[] values) {
+            mValues = values;
+        }
+
+        synchronized void done(int result, Throwable error) {
+            mResult = result;
+            mError = error;
+            mDone = true;
+            notifyAll();
+        }
+
+        // Unless the batch was written or failed on its own already
+        synchronized void fail(Throwable error) {
+            if (!mDone) {
+                done(0, error);
+            }
+        }
+
+        synchronized int await() {
+            boolean interrupted = false;
+            while (!mDone) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    // The batch is queued already, so wait for it anyway
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (mError instanceof RuntimeException) {
+                throw (RuntimeException) mError;
+            }
+            if (mError instanceof Error) {
+                throw (Error) mError;
+            }
+            if (mError != null) {
+                throw new RuntimeException(mError);
+            }
+            return mResult;
+        }
+    }
+}